@@ -1,8 +1,17 @@
 package com.submanager.subscriptionmanager.controller;
 
+import com.submanager.subscriptionmanager.model.NodeProtocol;
 import com.submanager.subscriptionmanager.model.ProxyNode;
 import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import com.submanager.subscriptionmanager.scheduler.NodeHealthMonitor;
+import com.submanager.subscriptionmanager.service.NodeBulkService;
+import com.submanager.subscriptionmanager.service.NodeFilter;
+import com.submanager.subscriptionmanager.service.NodeHealthCheckService;
+import com.submanager.subscriptionmanager.service.NodeIngestService;
 import com.submanager.subscriptionmanager.service.NodeParser;
+import com.submanager.subscriptionmanager.service.NodeQueryService;
+import com.submanager.subscriptionmanager.service.SubscriptionCache;
 import com.submanager.subscriptionmanager.service.SubscriptionService;
 import com.submanager.subscriptionmanager.service.NodeSaveService;
 import org.slf4j.Logger;
@@ -13,6 +22,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * REST API for managing nodes
@@ -33,6 +43,97 @@ public class NodeApiController {
     @Autowired
     private NodeSaveService nodeSaveService;
 
+    @Autowired
+    private NodeIngestService nodeIngestService;
+
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    @Autowired
+    private NodeHealthCheckService healthCheckService;
+
+    @Autowired
+    private NodeHealthMonitor nodeHealthMonitor;
+
+    @Autowired
+    private NodeQueryService nodeQueryService;
+
+    @Autowired
+    private NodeBulkService nodeBulkService;
+
+    /**
+     * List the nodes of a group, one page at a time
+     * GET /api/v1/groups/{groupId}/nodes?limit=100&sort=order&direction=asc
+     *
+     * Optional parameters:
+     *   sort      - order (default), name, latency, created or id
+     *   direction - asc (default) or desc
+     *   fields    - comma separated fields to return, e.g. id,name,server,port,stats
+     *   type      - node type, e.g. vless
+     *   health    - UP, DOWN or UNKNOWN
+     *   source    - subscription source id, or "manual" for nodes added by hand
+     *   active    - true or false
+     *   cursor    - nextCursor of the previous page
+     *
+     * Response: { "nodes": [...], "count": 100, "nextCursor": "..." }, nextCursor is null on the last page
+     */
+    @GetMapping("/groups/{groupId}/nodes")
+    public ResponseEntity<?> listNodes(
+            @PathVariable Long groupId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "order") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String health,
+            @RequestParam(required = false) String source,
+            @RequestParam(required = false) Boolean active) {
+
+        try {
+            if (subscriptionService.getGroupById(groupId).isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Group not found with id: " + groupId));
+            }
+
+            boolean descending;
+            if ("desc".equalsIgnoreCase(direction)) {
+                descending = true;
+            } else if ("asc".equalsIgnoreCase(direction)) {
+                descending = false;
+            } else {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Direction must be asc or desc"));
+            }
+
+            NodeQueryService.NodePage page = nodeQueryService.listNodes(
+                    groupId,
+                    NodeFilter.of(type, health, source, active),
+                    NodeQueryService.Sort.fromParam(sort),
+                    descending,
+                    cursor,
+                    limit,
+                    fields != null ? Arrays.asList(fields.split(",")) : null);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("groupId", groupId);
+            response.put("nodes", page.getNodes());
+            response.put("count", page.getNodes().size());
+            response.put("limit", page.getLimit());
+            response.put("nextCursor", page.getNextCursor());
+
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("API: Failed to list nodes of group {}", groupId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     /**
      * Add a single node to a group
      * POST /api/v1/groups/{groupId}/nodes
@@ -76,26 +177,15 @@ public class NodeApiController {
             node.setSubscriptionGroup(group);
 
             // Determine node type from URL
-            String lowerUrl = config.toLowerCase();
-            if (lowerUrl.startsWith("vmess://")) {
-                node.setType("vmess");
-            } else if (lowerUrl.startsWith("vless://")) {
-                node.setType("vless");
-            } else if (lowerUrl.startsWith("trojan://")) {
-                node.setType("trojan");
-            } else if (lowerUrl.startsWith("ss://")) {
-                node.setType("shadowsocks");
-            } else if (lowerUrl.startsWith("hysteria://")) {
-                node.setType("hysteria");
-            } else if (lowerUrl.startsWith("hysteria2://") || lowerUrl.startsWith("hy2://")) {
-                node.setType("hysteria2");
-            } else {
+            NodeProtocol protocol = NodeProtocol.fromUrl(config.trim());
+            if (protocol == null) {
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "Unknown node type. Supported: vmess, vless, trojan, ss, hysteria, hysteria2"));
             }
+            node.setType(protocol.getType());
 
             // Parse node details
-            nodeParser.parseAndPopulateNode(node);
+            nodeParser.parseAndPopulateNode(node, protocol);
 
             // Set name
             if (name != null && !name.trim().isEmpty()) {
@@ -168,9 +258,10 @@ public class NodeApiController {
                         .body(Map.of("error", "Nodes array is required and must not be empty"));
             }
 
-            int successCount = 0;
             int failedCount = 0;
             List<Map<String, String>> errors = new ArrayList<>();
+            List<ProxyNode> parsedNodes = new ArrayList<>(nodesList.size());
+            List<Integer> parsedIndexes = new ArrayList<>(nodesList.size());
 
             for (int i = 0; i < nodesList.size(); i++) {
                 Map<String, String> nodeData = nodesList.get(i);
@@ -189,27 +280,16 @@ public class NodeApiController {
                     node.setSubscriptionGroup(group);
 
                     // Determine node type
-                    String lowerUrl = config.toLowerCase();
-                    if (lowerUrl.startsWith("vmess://")) {
-                        node.setType("vmess");
-                    } else if (lowerUrl.startsWith("vless://")) {
-                        node.setType("vless");
-                    } else if (lowerUrl.startsWith("trojan://")) {
-                        node.setType("trojan");
-                    } else if (lowerUrl.startsWith("ss://")) {
-                        node.setType("shadowsocks");
-                    } else if (lowerUrl.startsWith("hysteria://")) {
-                        node.setType("hysteria");
-                    } else if (lowerUrl.startsWith("hysteria2://") || lowerUrl.startsWith("hy2://")) {
-                        node.setType("hysteria2");
-                    } else {
+                    NodeProtocol protocol = NodeProtocol.fromUrl(config.trim());
+                    if (protocol == null) {
                         errors.add(Map.of("index", String.valueOf(i), "error", "Unknown node type"));
                         failedCount++;
                         continue;
                     }
+                    node.setType(protocol.getType());
 
                     // Parse node
-                    nodeParser.parseAndPopulateNode(node);
+                    nodeParser.parseAndPopulateNode(node, protocol);
 
                     // Set name
                     if (name != null && !name.trim().isEmpty()) {
@@ -223,13 +303,8 @@ public class NodeApiController {
                     }
 
                     node.setIsActive(true);
-
-                    if (nodeSaveService.saveNode(node)) {
-                        successCount++;
-                    } else {
-                        errors.add(Map.of("index", String.valueOf(i), "error", "Failed to save node"));
-                        failedCount++;
-                    }
+                    parsedNodes.add(node);
+                    parsedIndexes.add(i);
 
                 } catch (Exception e) {
                     errors.add(Map.of("index", String.valueOf(i), "error", e.getMessage()));
@@ -237,6 +312,14 @@ public class NodeApiController {
                 }
             }
 
+            // Store all parsed nodes in batched inserts, mapping failures back to request positions
+            NodeIngestService.IngestResult result = nodeIngestService.ingest(groupId, parsedNodes);
+            int successCount = result.getSucceeded();
+            for (NodeIngestService.RowError error : result.getErrors()) {
+                errors.add(Map.of("index", String.valueOf(parsedIndexes.get(error.getIndex())), "error", error.getMessage()));
+                failedCount++;
+            }
+
             logger.info("API: Batch add to group {}: {} succeeded, {} failed", groupId, successCount, failedCount);
 
             Map<String, Object> response = new HashMap<>();
@@ -257,6 +340,106 @@ public class NodeApiController {
         }
     }
 
+    /**
+     * Delete nodes of a group, by id or by filter
+     * POST /api/v1/groups/{groupId}/nodes/batch-delete
+     *
+     * Request body, one of:
+     * { "nodeIds": [11, 12, 13] }
+     * { "filter": { "type": "vmess", "health": "DOWN", "source": "3", "active": false } }
+     *
+     * Filter fields are optional and combined; an empty filter matches every node of the group.
+     * Response: { "success": true, "affected": 3 }
+     */
+    @PostMapping("/groups/{groupId}/nodes/batch-delete")
+    public ResponseEntity<?> batchDeleteNodes(@PathVariable Long groupId, @RequestBody Map<String, Object> request) {
+        return applyBatch(groupId, request, "delete",
+                ids -> nodeBulkService.deleteByIds(groupId, ids),
+                filter -> nodeBulkService.deleteByFilter(groupId, filter));
+    }
+
+    /**
+     * Activate nodes of a group, by id or by filter
+     * POST /api/v1/groups/{groupId}/nodes/batch-activate
+     *
+     * Request body as for batch-delete
+     */
+    @PostMapping("/groups/{groupId}/nodes/batch-activate")
+    public ResponseEntity<?> batchActivateNodes(@PathVariable Long groupId, @RequestBody Map<String, Object> request) {
+        return applyBatch(groupId, request, "activate",
+                ids -> nodeBulkService.setActiveByIds(groupId, ids, true),
+                filter -> nodeBulkService.setActiveByFilter(groupId, filter, true));
+    }
+
+    /**
+     * Deactivate nodes of a group, by id or by filter
+     * POST /api/v1/groups/{groupId}/nodes/batch-deactivate
+     *
+     * Request body as for batch-delete, e.g. { "filter": { "health": "DOWN" } }
+     */
+    @PostMapping("/groups/{groupId}/nodes/batch-deactivate")
+    public ResponseEntity<?> batchDeactivateNodes(@PathVariable Long groupId, @RequestBody Map<String, Object> request) {
+        return applyBatch(groupId, request, "deactivate",
+                ids -> nodeBulkService.setActiveByIds(groupId, ids, false),
+                filter -> nodeBulkService.setActiveByFilter(groupId, filter, false));
+    }
+
+    /**
+     * Reorder nodes of a group
+     * POST /api/v1/groups/{groupId}/nodes/reorder
+     *
+     * Request body:
+     * {
+     *   "nodeIds": [13, 11, 12],
+     *   "position": "top"
+     * }
+     *
+     * The listed nodes get consecutive positions in list order, starting at position, which is a
+     * number (default 0), "top" (before all other nodes) or "bottom" (after all other nodes).
+     * Nodes that are not listed keep their position.
+     */
+    @PostMapping("/groups/{groupId}/nodes/reorder")
+    public ResponseEntity<?> reorderNodes(@PathVariable Long groupId, @RequestBody Map<String, Object> request) {
+        try {
+            if (subscriptionService.getGroupById(groupId).isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Group not found with id: " + groupId));
+            }
+
+            List<Long> nodeIds = toIdList(request.get("nodeIds"));
+            if (nodeIds.isEmpty()) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "nodeIds is required"));
+            }
+
+            Object position = request.get("position");
+            int affected;
+            if (position == null) {
+                affected = nodeBulkService.reorder(groupId, nodeIds, 0);
+            } else if (position instanceof Number) {
+                affected = nodeBulkService.reorder(groupId, nodeIds, ((Number) position).intValue());
+            } else if ("top".equals(position)) {
+                affected = nodeBulkService.moveToTop(groupId, nodeIds);
+            } else if ("bottom".equals(position)) {
+                affected = nodeBulkService.moveToBottom(groupId, nodeIds);
+            } else {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "position must be a number, \"top\" or \"bottom\""));
+            }
+
+            logger.info("API: Reordered {} nodes in group {}", affected, groupId);
+            return ResponseEntity.ok(Map.of("success", true, "affected", affected));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("API: Failed to reorder nodes in group {}", groupId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
     /**
      * Get group information
      * GET /api/v1/groups/{groupId}
@@ -273,7 +456,48 @@ public class NodeApiController {
             response.put("token", group.getToken());
             response.put("description", group.getDescription());
             response.put("isActive", group.getIsActive());
-            response.put("nodeCount", group.getNodes().size());
+            subscriptionService.getGroupCounts(groupId).ifPresent(counts -> putCounts(response, counts));
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Get health status counts of all groups
+     * GET /api/v1/groups/health
+     */
+    @GetMapping("/groups/health")
+    public ResponseEntity<?> getAllGroupsHealth() {
+        try {
+            Map<Long, NodeHealthCheckService.HealthSummary> summaries = healthCheckService.getAllGroupsHealthSummary();
+            return ResponseEntity.ok(Map.of("groups", summaries, "total", summaries.size()));
+
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Get health status counts and latency statistics of a group; per-node statistics come with
+     * the node list (fields=stats)
+     * GET /api/v1/groups/{groupId}/health
+     */
+    @GetMapping("/groups/{groupId}/health")
+    public ResponseEntity<?> getGroupHealth(@PathVariable Long groupId) {
+        try {
+            subscriptionService.getGroupById(groupId)
+                    .orElseThrow(() -> new RuntimeException("Group not found with id: " + groupId));
+
+            NodeHealthCheckService.HealthSummary summary = healthCheckService.getGroupHealthSummary(groupId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("groupId", groupId);
+            response.put("summary", summary);
 
             return ResponseEntity.ok(response);
 
@@ -291,6 +515,7 @@ public class NodeApiController {
     public ResponseEntity<?> listGroups() {
         try {
             List<SubscriptionGroup> groups = subscriptionService.getAllGroups();
+            Map<Long, SubscriptionGroupRepository.GroupCounts> counts = subscriptionService.getAllGroupCounts();
 
             List<Map<String, Object>> groupList = new ArrayList<>();
             for (SubscriptionGroup group : groups) {
@@ -299,7 +524,10 @@ public class NodeApiController {
                 groupData.put("name", group.getName());
                 groupData.put("token", group.getToken());
                 groupData.put("isActive", group.getIsActive());
-                groupData.put("nodeCount", group.getNodes().size());
+                SubscriptionGroupRepository.GroupCounts groupCounts = counts.get(group.getId());
+                if (groupCounts != null) {
+                    putCounts(groupData, groupCounts);
+                }
                 groupList.add(groupData);
             }
 
@@ -310,4 +538,93 @@ public class NodeApiController {
                     .body(Map.of("error", e.getMessage()));
         }
     }
+
+    /**
+     * Get subscription cache statistics
+     * GET /api/v1/subscription-cache/stats
+     */
+    @GetMapping("/subscription-cache/stats")
+    public ResponseEntity<?> getSubscriptionCacheStats() {
+        return ResponseEntity.ok(subscriptionCache.getStats());
+    }
+
+    /**
+     * Get background health monitor statistics
+     * GET /api/v1/health-monitor/stats
+     */
+    @GetMapping("/health-monitor/stats")
+    public ResponseEntity<?> getHealthMonitorStats() {
+        return ResponseEntity.ok(nodeHealthMonitor.getStats());
+    }
+
+    /**
+     * Run a batch operation on the nodes named by either the nodeIds or the filter of a request
+     */
+    private ResponseEntity<?> applyBatch(Long groupId, Map<String, Object> request, String operation,
+                                         Function<List<Long>, Integer> byIds,
+                                         Function<NodeFilter, Integer> byFilter) {
+        try {
+            if (subscriptionService.getGroupById(groupId).isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Group not found with id: " + groupId));
+            }
+
+            Object nodeIds = request.get("nodeIds");
+            Object filter = request.get("filter");
+            if ((nodeIds == null) == (filter == null)) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Either nodeIds or filter is required"));
+            }
+
+            int affected = nodeIds != null ? byIds.apply(toIdList(nodeIds)) : byFilter.apply(toFilter(filter));
+
+            logger.info("API: Batch {} in group {}: {} nodes", operation, groupId, affected);
+            return ResponseEntity.ok(Map.of("success", true, "affected", affected));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("API: Failed batch {} in group {}", operation, groupId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static List<Long> toIdList(Object value) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("nodeIds must be a list of node ids");
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (!(item instanceof Number)) {
+                throw new IllegalArgumentException("nodeIds must be a list of node ids");
+            }
+            ids.add(((Number) item).longValue());
+        }
+        return ids;
+    }
+
+    private static NodeFilter toFilter(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("filter must be an object");
+        }
+        Map<?, ?> filter = (Map<?, ?>) value;
+        Object active = filter.get("active");
+        if (active != null && !(active instanceof Boolean)) {
+            throw new IllegalArgumentException("filter.active must be true or false");
+        }
+        return NodeFilter.of(stringOrNull(filter.get("type")), stringOrNull(filter.get("health")),
+                stringOrNull(filter.get("source")), (Boolean) active);
+    }
+
+    private static String stringOrNull(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static void putCounts(Map<String, Object> groupData, SubscriptionGroupRepository.GroupCounts counts) {
+        groupData.put("nodeCount", counts.getNodeCount());
+        groupData.put("activeNodeCount", counts.getActiveNodeCount());
+        groupData.put("sourceCount", counts.getSourceCount());
+    }
 }
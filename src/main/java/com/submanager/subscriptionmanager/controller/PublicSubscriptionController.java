@@ -1,17 +1,28 @@
 package com.submanager.subscriptionmanager.controller;
 
+import com.submanager.subscriptionmanager.service.SubscriptionCache;
 import com.submanager.subscriptionmanager.service.SubscriptionService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/sub")
 public class PublicSubscriptionController {
 
+    private static final int MIN_COMPRESS_SIZE = 1024; // Smaller bodies are not worth the gzip framing
+
     @Autowired
     private SubscriptionService subscriptionService;
 
@@ -21,20 +32,69 @@ public class PublicSubscriptionController {
      * - target=clash: Clash YAML format
      * - target=v2ray: V2Ray format (base64, default)
      * - target=raw: Raw node list (no encoding)
+     *
+     * Responses carry ETag and Last-Modified derived from the group's content version, so
+     * unchanged re-polls are answered with 304 Not Modified. Clients that accept gzip get the
+     * pre-compressed variant of the rendition.
+     *
+     * Very large groups are not rendered in memory: their node configs are streamed straight
+     * to the response, compressed on the fly when the client accepts gzip.
      */
     @GetMapping("/{token}")
-    public ResponseEntity<String> getSubscription(
+    public ResponseEntity<byte[]> getSubscription(
             @PathVariable String token,
-            @RequestParam(value = "target", required = false, defaultValue = "v2ray") String target) {
+            @RequestParam(value = "target", required = false, defaultValue = "v2ray") String target,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest webRequest,
+            HttpServletResponse response) throws IOException {
+
+        SubscriptionCache.Entry entry = subscriptionService.resolveSubscription(token);
+        if (entry == null) {
+            return notFound();
+        }
+
+        String format = subscriptionService.resolveFormat(target);
+        if (subscriptionService.isStreamed(entry, format)) {
+            boolean gzip = acceptsGzip(acceptEncoding);
+            if (webRequest.checkNotModified(entry.getETag(format, gzip), entry.getLastModified())) {
+                return null;
+            }
+
+            buildHeaders(target, gzip).forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            if (gzip) {
+                GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream(), 8192);
+                subscriptionService.streamSubscription(entry.getGroupId(), format, out);
+                out.finish();
+            } else {
+                subscriptionService.streamSubscription(entry.getGroupId(), format, response.getOutputStream());
+            }
+            return null;
+        }
+
+        // A matching validator always refers to a cached rendition, so this never renders on 304
+        SubscriptionCache.Rendition rendition = subscriptionService.getRendition(entry, format);
 
-        String content = subscriptionService.generateSubscriptionByTarget(token, target);
+        if (rendition.isEmpty()) {
+            return notFound();
+        }
 
-        if (content == null || content.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body("Subscription not found or inactive");
+        boolean gzip = rendition.getBytes().length >= MIN_COMPRESS_SIZE && acceptsGzip(acceptEncoding);
+        if (webRequest.checkNotModified(entry.getETag(format, gzip), entry.getLastModified())) {
+            return null;
         }
 
+        return ResponseEntity.ok()
+                .headers(buildHeaders(target, gzip))
+                .body(gzip ? rendition.getGzipBytes() : rendition.getBytes());
+    }
+
+    private HttpHeaders buildHeaders(String target, boolean gzip) {
         HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.noCache());
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
 
         // Set content type based on target
         if ("clash".equalsIgnoreCase(target)) {
@@ -48,8 +108,45 @@ public class PublicSubscriptionController {
             headers.set("Subscription-Userinfo", "upload=0; download=0; total=10737418240; expire=0");
         }
 
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(content);
+        return headers;
+    }
+
+    private ResponseEntity<byte[]> notFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body("Subscription not found or inactive".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Check whether an Accept-Encoding header allows gzip, honouring q=0 exclusions
+     */
+    private boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return false;
+        }
+
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                return accepted;
+            } else if ("*".equals(name)) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
     }
 }
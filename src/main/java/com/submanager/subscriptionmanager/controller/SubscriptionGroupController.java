@@ -1,9 +1,15 @@
 package com.submanager.subscriptionmanager.controller;
 
+import com.submanager.subscriptionmanager.model.NodeProtocol;
 import com.submanager.subscriptionmanager.model.ProxyNode;
 import com.submanager.subscriptionmanager.model.SubscriptionGroup;
 import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
 import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
+import com.submanager.subscriptionmanager.scheduler.SubscriptionUpdateScheduler;
+import com.submanager.subscriptionmanager.service.NodeBulkService;
+import com.submanager.subscriptionmanager.service.NodeFilter;
+import com.submanager.subscriptionmanager.service.NodeIngestService;
 import com.submanager.subscriptionmanager.service.NodeParser;
 import com.submanager.subscriptionmanager.service.NodeHealthCheckService;
 import com.submanager.subscriptionmanager.service.SubscriptionService;
@@ -17,6 +23,7 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Controller
@@ -38,12 +45,23 @@ public class SubscriptionGroupController {
     @Autowired
     private SubscriptionFetchService subscriptionFetchService;
 
+    @Autowired
+    private NodeIngestService nodeIngestService;
+
+    @Autowired
+    private SubscriptionUpdateScheduler subscriptionUpdateScheduler;
+
+    @Autowired
+    private NodeBulkService nodeBulkService;
+
     @GetMapping
     public String listGroups(Model model, HttpServletRequest request) {
         List<SubscriptionGroup> groups = subscriptionService.getAllGroups();
         String baseUrl = getBaseUrl(request);
 
         model.addAttribute("groups", groups);
+        model.addAttribute("groupCounts", subscriptionService.getAllGroupCounts());
+        model.addAttribute("groupHealth", healthCheckService.getAllGroupsHealthSummary());
         model.addAttribute("baseUrl", baseUrl);
         model.addAttribute("group", new SubscriptionGroup());
         return "groups";
@@ -90,7 +108,11 @@ public class SubscriptionGroupController {
 
     @PostMapping("/{id}/delete")
     public String deleteGroup(@PathVariable Long id, RedirectAttributes redirectAttributes) {
+        List<SubscriptionSource> sources = subscriptionSourceRepository.findBySubscriptionGroupId(id);
         subscriptionService.deleteGroup(id);
+        for (SubscriptionSource source : sources) {
+            subscriptionUpdateScheduler.sourceRemoved(source.getId());
+        }
         redirectAttributes.addFlashAttribute("success", "Subscription group deleted successfully");
         return "redirect:/groups";
     }
@@ -100,12 +122,12 @@ public class SubscriptionGroupController {
         SubscriptionGroup group = subscriptionService.getGroupById(id)
                 .orElseThrow(() -> new RuntimeException("Group not found"));
 
-        List<ProxyNode> nodes = subscriptionService.getNodesByGroupId(id);
+        // The node list itself is loaded page by page from /api/v1/groups/{id}/nodes
         List<SubscriptionSource> subscriptionSources = subscriptionSourceRepository.findBySubscriptionGroupId(id);
         String baseUrl = getBaseUrl(request);
 
         model.addAttribute("group", group);
-        model.addAttribute("nodes", nodes);
+        model.addAttribute("nodeCount", getNodeCount(id));
         model.addAttribute("node", new ProxyNode());
         model.addAttribute("subscriptionSources", subscriptionSources);
         model.addAttribute("subscriptionSource", new SubscriptionSource());
@@ -162,52 +184,36 @@ public class SubscriptionGroupController {
 
             // Split by newlines and filter valid node URLs
             String[] lines = decodedContent.split("\\r?\\n");
-            int successCount = 0;
             int errorCount = 0;
+            List<ProxyNode> parsedNodes = new ArrayList<>();
 
             for (String line : lines) {
                 line = line.trim();
                 if (line.isEmpty()) continue;
 
-                // Check if line is a valid node URL
-                if (line.startsWith("vmess://") || line.startsWith("vless://") ||
-                    line.startsWith("trojan://") || line.startsWith("ss://") ||
-                    line.startsWith("hysteria://") || line.startsWith("hysteria2://")) {
+                // Check if line is a valid node URL and determine its type
+                NodeProtocol protocol = NodeProtocol.fromUrl(line);
+                if (protocol != null) {
 
                     try {
                         ProxyNode node = new ProxyNode();
                         node.setConfig(line);
                         node.setSubscriptionGroup(group);
-
-                        // Determine node type from URL
-                        if (line.startsWith("vmess://")) {
-                            node.setType("vmess");
-                        } else if (line.startsWith("vless://")) {
-                            node.setType("vless");
-                        } else if (line.startsWith("trojan://")) {
-                            node.setType("trojan");
-                        } else if (line.startsWith("ss://")) {
-                            node.setType("shadowsocks");
-                        } else if (line.startsWith("hysteria://")) {
-                            node.setType("hysteria");
-                        } else if (line.startsWith("hysteria2://")) {
-                            node.setType("hysteria2");
-                        }
+                        node.setType(protocol.getType());
 
                         // Parse node URL to extract detailed information
-                        nodeParser.parseAndPopulateNode(node);
+                        nodeParser.parseAndPopulateNode(node, protocol);
 
                         // Ensure node has a name (fallback to server:port or type+index)
                         if (node.getName() == null || node.getName().isEmpty()) {
                             if (node.getServer() != null && !node.getServer().isEmpty()) {
                                 node.setName(node.getServer() + ":" + node.getPort());
                             } else {
-                                node.setName(node.getType() + "-node-" + (successCount + 1));
+                                node.setName(node.getType() + "-node-" + (parsedNodes.size() + 1));
                             }
                         }
 
-                        subscriptionService.createNode(node);
-                        successCount++;
+                        parsedNodes.add(node);
                     } catch (Exception e) {
                         System.err.println("Failed to import node: " + line + " - " + e.getMessage());
                         errorCount++;
@@ -215,6 +221,11 @@ public class SubscriptionGroupController {
                 }
             }
 
+            // Store all parsed nodes in batched inserts
+            NodeIngestService.IngestResult result = nodeIngestService.ingest(groupId, parsedNodes);
+            int successCount = result.getSucceeded();
+            errorCount += result.getFailed();
+
             if (successCount > 0) {
                 redirectAttributes.addFlashAttribute("success",
                     "Successfully imported " + successCount + " node(s)" +
@@ -235,12 +246,13 @@ public class SubscriptionGroupController {
         ProxyNode node = subscriptionService.getNodeById(id)
                 .orElseThrow(() -> new RuntimeException("Node not found"));
 
-        SubscriptionGroup group = node.getSubscriptionGroup();
-        List<ProxyNode> nodes = subscriptionService.getNodesByGroupId(group.getId());
+        // The node's group is a lazy proxy outside the session; load it for the view
+        SubscriptionGroup group = subscriptionService.getGroupById(node.getSubscriptionGroup().getId())
+                .orElseThrow(() -> new RuntimeException("Group not found"));
         String baseUrl = getBaseUrl(request);
 
         model.addAttribute("group", group);
-        model.addAttribute("nodes", nodes);
+        model.addAttribute("nodeCount", getNodeCount(group.getId()));
         model.addAttribute("node", node);
         model.addAttribute("editMode", true);
         model.addAttribute("baseUrl", baseUrl);
@@ -315,21 +327,79 @@ public class SubscriptionGroupController {
             return "redirect:/groups/" + groupId + "/nodes";
         }
 
-        int deletedCount = 0;
-        for (Long nodeId : nodeIds) {
-            try {
-                subscriptionService.deleteNode(nodeId);
-                deletedCount++;
-            } catch (Exception e) {
-                System.err.println("Failed to delete node " + nodeId + ": " + e.getMessage());
+        try {
+            int deletedCount = nodeBulkService.deleteByIds(groupId, nodeIds);
+            if (deletedCount > 0) {
+                redirectAttributes.addFlashAttribute("success",
+                    "Successfully deleted " + deletedCount + " node(s)");
+            } else {
+                redirectAttributes.addFlashAttribute("error", "No nodes were deleted");
             }
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Failed to delete nodes: " + e.getMessage());
         }
 
-        if (deletedCount > 0) {
-            redirectAttributes.addFlashAttribute("success",
-                "Successfully deleted " + deletedCount + " node(s)");
-        } else {
-            redirectAttributes.addFlashAttribute("error", "Failed to delete nodes");
+        return "redirect:/groups/" + groupId + "/nodes";
+    }
+
+    @PostMapping("/{groupId}/nodes/batch-update")
+    public String batchUpdateNodes(@PathVariable Long groupId,
+                                   @RequestParam("nodeIds") List<Long> nodeIds,
+                                   @RequestParam("action") String action,
+                                   RedirectAttributes redirectAttributes) {
+        if (nodeIds == null || nodeIds.isEmpty()) {
+            redirectAttributes.addFlashAttribute("error", "No nodes selected");
+            return "redirect:/groups/" + groupId + "/nodes";
+        }
+
+        try {
+            String message = switch (action) {
+                case "activate" -> "Activated " + nodeBulkService.setActiveByIds(groupId, nodeIds, true) + " node(s)";
+                case "deactivate" -> "Deactivated " + nodeBulkService.setActiveByIds(groupId, nodeIds, false) + " node(s)";
+                case "move-top" -> "Moved " + nodeBulkService.moveToTop(groupId, nodeIds) + " node(s) to the top";
+                case "move-bottom" -> "Moved " + nodeBulkService.moveToBottom(groupId, nodeIds) + " node(s) to the bottom";
+                default -> null;
+            };
+            if (message == null) {
+                redirectAttributes.addFlashAttribute("error", "Unknown action: " + action);
+            } else {
+                redirectAttributes.addFlashAttribute("success", message);
+            }
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Failed to update nodes: " + e.getMessage());
+        }
+
+        return "redirect:/groups/" + groupId + "/nodes";
+    }
+
+    /**
+     * Delete, activate or deactivate every node of a group matching the list filters,
+     * including nodes not loaded on the page
+     */
+    @PostMapping("/{groupId}/nodes/filter-action")
+    public String applyToFilteredNodes(@PathVariable Long groupId,
+                                       @RequestParam("action") String action,
+                                       @RequestParam(value = "type", required = false) String type,
+                                       @RequestParam(value = "health", required = false) String health,
+                                       @RequestParam(value = "source", required = false) String source,
+                                       RedirectAttributes redirectAttributes) {
+        try {
+            NodeFilter filter = NodeFilter.of(type, health, source, null);
+            String message = switch (action) {
+                case "delete" -> "Deleted " + nodeBulkService.deleteByFilter(groupId, filter) + " node(s)";
+                case "activate" -> "Activated " + nodeBulkService.setActiveByFilter(groupId, filter, true) + " node(s)";
+                case "deactivate" -> "Deactivated " + nodeBulkService.setActiveByFilter(groupId, filter, false) + " node(s)";
+                default -> null;
+            };
+            if (message == null) {
+                redirectAttributes.addFlashAttribute("error", "Unknown action: " + action);
+            } else {
+                redirectAttributes.addFlashAttribute("success", message);
+            }
+        } catch (IllegalArgumentException e) {
+            redirectAttributes.addFlashAttribute("error", e.getMessage());
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Failed to update nodes: " + e.getMessage());
         }
 
         return "redirect:/groups/" + groupId + "/nodes";
@@ -376,6 +446,7 @@ public class SubscriptionGroupController {
                                        @RequestParam("name") String name,
                                        @RequestParam(value = "autoUpdate", required = false, defaultValue = "true") Boolean autoUpdate,
                                        @RequestParam(value = "updateInterval", required = false, defaultValue = "24") Integer updateInterval,
+                                       @RequestParam(value = "requestHeaders", required = false) String requestHeaders,
                                        RedirectAttributes redirectAttributes) {
         try {
             SubscriptionGroup group = subscriptionService.getGroupById(groupId)
@@ -386,11 +457,13 @@ public class SubscriptionGroupController {
             source.setName(name);
             source.setAutoUpdate(autoUpdate);
             source.setUpdateInterval(updateInterval);
+            source.setRequestHeaders(requestHeaders != null && !requestHeaders.isBlank() ? requestHeaders.trim() : null);
             source.setSubscriptionGroup(group);
             source.setIsActive(true);
             source.setLastUpdateStatus("PENDING");
 
             subscriptionSourceRepository.save(source);
+            subscriptionUpdateScheduler.sourceChanged(source.getId());
 
             redirectAttributes.addFlashAttribute("success", "Subscription source added successfully");
         } catch (Exception e) {
@@ -410,6 +483,7 @@ public class SubscriptionGroupController {
             Long groupId = source.getSubscriptionGroup().getId();
 
             subscriptionSourceRepository.delete(source);
+            subscriptionUpdateScheduler.sourceRemoved(id);
 
             redirectAttributes.addFlashAttribute("success", "Subscription source deleted successfully");
             return "redirect:/groups/" + groupId + "/nodes";
@@ -428,10 +502,16 @@ public class SubscriptionGroupController {
 
             Long groupId = source.getSubscriptionGroup().getId();
 
-            int addedCount = subscriptionFetchService.updateNodesFromSubscription(id);
+            int nodeCount;
+            try {
+                nodeCount = subscriptionFetchService.updateNodesFromSubscription(id, true);
+            } finally {
+                // The refresh moved lastUpdated, and with it the next automatic update
+                subscriptionUpdateScheduler.sourceChanged(id);
+            }
 
             redirectAttributes.addFlashAttribute("success",
-                "Subscription refreshed successfully. Added " + addedCount + " node(s)");
+                "Subscription refreshed successfully. " + nodeCount + " node(s) in this subscription");
 
             return "redirect:/groups/" + groupId + "/nodes";
         } catch (Exception e) {
@@ -461,6 +541,7 @@ public class SubscriptionGroupController {
 
             source.setIsActive(!source.getIsActive());
             subscriptionSourceRepository.save(source);
+            subscriptionUpdateScheduler.sourceChanged(id);
 
             redirectAttributes.addFlashAttribute("success",
                 "Subscription source " + (source.getIsActive() ? "activated" : "deactivated"));
@@ -473,6 +554,12 @@ public class SubscriptionGroupController {
         }
     }
 
+    private long getNodeCount(Long groupId) {
+        return subscriptionService.getGroupCounts(groupId)
+                .map(SubscriptionGroupRepository.GroupCounts::getNodeCount)
+                .orElse(0L);
+    }
+
     private String getBaseUrl(HttpServletRequest request) {
         String scheme = request.getScheme();
         String serverName = request.getServerName();
@@ -0,0 +1,39 @@
+package com.submanager.subscriptionmanager.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One health probe of a node. Written in batches by the health history, never through JPA;
+ * the entity only defines the table.
+ */
+@Entity
+@Table(name = "node_health_samples", indexes = {
+        @Index(name = "idx_node_health_samples_node", columnList = "node_id, checked_at"),
+        @Index(name = "idx_node_health_samples_time", columnList = "checked_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodeHealthSample {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "node_id", nullable = false)
+    private Long nodeId;
+
+    @Column(name = "checked_at", nullable = false)
+    private LocalDateTime checkedAt;
+
+    @Column(name = "reachable", nullable = false)
+    private Boolean reachable;
+
+    @Column(name = "latency_micros")
+    private Integer latencyMicros; // Connect time in microseconds, null when unreachable
+}
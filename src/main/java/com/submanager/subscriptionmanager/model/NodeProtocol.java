@@ -0,0 +1,75 @@
+package com.submanager.subscriptionmanager.model;
+
+/**
+ * Supported node protocols and the URL schemes that identify them.
+ *
+ * This is the single place where share links are recognised: import, parsing and Clash rendering
+ * all dispatch on the protocol returned by {@link #fromUrl(String)}, which only looks at the
+ * scheme and never case-converts the whole URL.
+ */
+public enum NodeProtocol {
+    VMESS("vmess", "vmess"),
+    VLESS("vless", "vless"),
+    TROJAN("trojan", "trojan"),
+    SHADOWSOCKS("shadowsocks", "ss"),
+    HYSTERIA("hysteria", "hysteria"),
+    HYSTERIA2("hysteria2", "hysteria2", "hy2");
+
+    private static final int MAX_SCHEME_LENGTH = 9;
+
+    private final String type;
+    private final String[] schemes;
+
+    NodeProtocol(String type, String... schemes) {
+        this.type = type;
+        this.schemes = schemes;
+    }
+
+    /**
+     * Node type stored in ProxyNode.type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Identify the protocol of a share link by its scheme (case-insensitive), or null if unsupported
+     */
+    public static NodeProtocol fromUrl(String url) {
+        int schemeLength = schemeLength(url);
+        if (schemeLength < 0) {
+            return null;
+        }
+
+        for (NodeProtocol protocol : values()) {
+            for (String scheme : protocol.schemes) {
+                if (scheme.length() == schemeLength && url.regionMatches(true, 0, scheme, 0, schemeLength)) {
+                    return protocol;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Index of the first character after "scheme://" in a share link, or -1 if there is no scheme
+     */
+    public static int contentStart(String url) {
+        int schemeLength = schemeLength(url);
+        return schemeLength < 0 ? -1 : schemeLength + 3;
+    }
+
+    private static int schemeLength(String url) {
+        if (url == null) {
+            return -1;
+        }
+
+        int limit = Math.min(url.length(), MAX_SCHEME_LENGTH + 1);
+        for (int i = 1; i < limit; i++) {
+            if (url.charAt(i) == ':') {
+                return url.startsWith("//", i + 1) ? i : -1;
+            }
+        }
+        return -1;
+    }
+}
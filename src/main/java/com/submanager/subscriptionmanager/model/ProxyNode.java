@@ -11,7 +11,9 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "proxy_nodes")
+@Table(name = "proxy_nodes", indexes = {
+        @Index(name = "idx_proxy_nodes_source", columnList = "subscription_source_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -33,6 +35,9 @@ public class ProxyNode {
     @Column(nullable = false, columnDefinition = "TEXT")
     private String config; // Store full node URL (vmess://, vless://, etc.)
 
+    @Column(name = "content_key", length = 64)
+    private String contentKey; // SHA-256 of config, identifies the node across subscription refreshes
+
     // Parsed node information for visualization and editing
     @Column(length = 255)
     private String server; // Server address/hostname
@@ -83,6 +88,13 @@ public class ProxyNode {
     @Column(length = 50)
     private String fingerprint; // Browser fingerprint (fp)
 
+    // Pre-rendered Clash proxy entry, refreshed whenever the node is saved
+    @Column(name = "clash_proxy", columnDefinition = "TEXT")
+    private String clashProxy; // Empty if the node has no Clash form, null until rendered
+
+    @Column(name = "clash_render_version")
+    private Integer clashRenderVersion; // Renderer version of clashProxy, null for entries stored before versioning
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "subscription_group_id", nullable = false)
     private SubscriptionGroup subscriptionGroup;
@@ -41,6 +41,27 @@ public class SubscriptionSource {
     @Column(name = "node_count")
     private Integer nodeCount = 0;
 
+    @Column(name = "consecutive_failures")
+    private Integer consecutiveFailures = 0; // Failed refreshes since the last successful one
+
+    @Column(name = "circuit_state", length = 20)
+    private String circuitState = "CLOSED"; // CLOSED, OPEN, HALF_OPEN
+
+    @Column(name = "retry_after")
+    private LocalDateTime retryAfter; // No automatic refresh before this time while failing
+
+    @Column(name = "request_headers", columnDefinition = "TEXT")
+    private String requestHeaders; // Extra request headers, one "Name: value" per line
+
+    @Column(name = "upstream_etag", length = 255)
+    private String upstreamEtag; // ETag of the last successfully imported body
+
+    @Column(name = "upstream_last_modified", length = 100)
+    private String upstreamLastModified; // Last-Modified of the last successfully imported body
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash; // SHA-256 of the last successfully imported body
+
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
@@ -147,6 +168,62 @@ public class SubscriptionSource {
         this.nodeCount = nodeCount;
     }
 
+    public Integer getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public void setConsecutiveFailures(Integer consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public String getCircuitState() {
+        return circuitState;
+    }
+
+    public void setCircuitState(String circuitState) {
+        this.circuitState = circuitState;
+    }
+
+    public LocalDateTime getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(LocalDateTime retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public String getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    public void setRequestHeaders(String requestHeaders) {
+        this.requestHeaders = requestHeaders;
+    }
+
+    public String getUpstreamEtag() {
+        return upstreamEtag;
+    }
+
+    public void setUpstreamEtag(String upstreamEtag) {
+        this.upstreamEtag = upstreamEtag;
+    }
+
+    public String getUpstreamLastModified() {
+        return upstreamLastModified;
+    }
+
+    public void setUpstreamLastModified(String upstreamLastModified) {
+        this.upstreamLastModified = upstreamLastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -1,7 +1,10 @@
 package com.submanager.subscriptionmanager.repository;
 
 import com.submanager.subscriptionmanager.model.ProxyNode;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,6 +14,140 @@ public interface ProxyNodeRepository extends JpaRepository<ProxyNode, Long> {
     List<ProxyNode> findBySubscriptionGroupIdOrderByOrderAsc(Long groupId);
     List<ProxyNode> findBySubscriptionGroupIdAndIsActiveTrueOrderByOrderAsc(Long groupId);
 
+    /**
+     * Configs of the active nodes of a group, in subscription order, without hydrating entities
+     */
+    @Query("SELECT n.config FROM ProxyNode n " +
+           "WHERE n.subscriptionGroup.id = :groupId AND n.isActive = true " +
+           "ORDER BY COALESCE(n.order, 0) ASC, n.id ASC")
+    List<String> findActiveConfigsByGroupId(@Param("groupId") Long groupId);
+
+    /**
+     * Keyset-paginated chunk of active node configs, in subscription order.
+     * Pass the position and id of the last row of the previous chunk (or Integer.MIN_VALUE and 0).
+     */
+    @Query("SELECT n.id AS id, COALESCE(n.order, 0) AS position, n.config AS config FROM ProxyNode n " +
+           "WHERE n.subscriptionGroup.id = :groupId AND n.isActive = true " +
+           "AND (COALESCE(n.order, 0) > :afterPosition OR (COALESCE(n.order, 0) = :afterPosition AND n.id > :afterId)) " +
+           "ORDER BY COALESCE(n.order, 0) ASC, n.id ASC")
+    List<ConfigRow> findActiveConfigChunk(@Param("groupId") Long groupId,
+                                          @Param("afterPosition") Integer afterPosition,
+                                          @Param("afterId") Long afterId,
+                                          Pageable pageable);
+
+    /**
+     * Names and pre-rendered Clash entries of the active nodes of a group, in subscription order
+     */
+    @Query("SELECT n.id AS id, n.name AS name, n.clashProxy AS clashProxy, n.clashRenderVersion AS clashRenderVersion FROM ProxyNode n " +
+           "WHERE n.subscriptionGroup.id = :groupId AND n.isActive = true " +
+           "ORDER BY COALESCE(n.order, 0) ASC, n.id ASC")
+    List<ClashRow> findActiveClashRowsByGroupId(@Param("groupId") Long groupId);
+
+    /**
+     * Nodes whose Clash entry is missing or was rendered by another renderer version, including
+     * entries stored before versioning, oldest first
+     */
+    @Query("SELECT n FROM ProxyNode n WHERE n.clashProxy IS NULL OR n.clashRenderVersion IS NULL " +
+           "OR n.clashRenderVersion <> :version ORDER BY n.id ASC")
+    List<ProxyNode> findWithStaleClashProxy(@Param("version") int version, Pageable pageable);
+
+    /**
+     * Identity of the nodes imported from a subscription source, used to reconcile a refresh
+     */
+    @Query("SELECT n.id AS id, n.name AS name, n.config AS config, n.contentKey AS contentKey FROM ProxyNode n " +
+           "WHERE n.subscriptionSourceId = :sourceId ORDER BY n.id ASC")
+    List<SourceNodeRow> findSourceNodeRows(@Param("sourceId") Long sourceId);
+
+    /**
+     * Probe targets of the nodes of a group
+     */
+    @Query("SELECT n.id AS id, n.subscriptionGroup.id AS groupId, n.name AS name, n.server AS server, n.port AS port " +
+           "FROM ProxyNode n " +
+           "WHERE n.subscriptionGroup.id = :groupId ORDER BY n.id ASC")
+    List<HealthTargetRow> findHealthTargetsByGroupId(@Param("groupId") Long groupId);
+
+    /**
+     * Probe targets of the given nodes
+     */
+    @Query("SELECT n.id AS id, n.subscriptionGroup.id AS groupId, n.name AS name, n.server AS server, n.port AS port " +
+           "FROM ProxyNode n " +
+           "WHERE n.id IN :ids ORDER BY n.id ASC")
+    List<HealthTargetRow> findHealthTargetsByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * Keyset-paginated shard of active node probe targets, in id order.
+     * Pass the id of the last row of the previous shard (or 0).
+     */
+    @Query("SELECT n.id AS id, n.subscriptionGroup.id AS groupId, n.name AS name, n.server AS server, n.port AS port " +
+           "FROM ProxyNode n " +
+           "WHERE n.isActive = true AND n.id > :afterId ORDER BY n.id ASC")
+    List<HealthTargetRow> findActiveHealthTargets(@Param("afterId") Long afterId, Pageable pageable);
+
+    long countByIsActiveTrue();
+
+    /**
+     * Node count per health status of one group
+     */
+    @Query("SELECT n.subscriptionGroup.id AS groupId, n.healthStatus AS status, COUNT(n) AS nodeCount " +
+           "FROM ProxyNode n WHERE n.subscriptionGroup.id = :groupId " +
+           "GROUP BY n.subscriptionGroup.id, n.healthStatus")
+    List<HealthCountRow> countHealthByGroupId(@Param("groupId") Long groupId);
+
+    /**
+     * Node count per group and health status, for all groups at once
+     */
+    @Query("SELECT n.subscriptionGroup.id AS groupId, n.healthStatus AS status, COUNT(n) AS nodeCount " +
+           "FROM ProxyNode n GROUP BY n.subscriptionGroup.id, n.healthStatus")
+    List<HealthCountRow> countHealthByGroup();
+
     List<ProxyNode> findBySubscriptionSourceId(Long subscriptionSourceId);
-    void deleteBySubscriptionSourceId(Long subscriptionSourceId);
+
+    /**
+     * Config-only projection used when streaming subscriptions
+     */
+    interface ConfigRow {
+        Long getId();
+        Integer getPosition();
+        String getConfig();
+    }
+
+    /**
+     * Clash projection used when rendering Clash subscriptions
+     */
+    interface ClashRow {
+        Long getId();
+        String getName();
+        String getClashProxy();
+        Integer getClashRenderVersion();
+    }
+
+    /**
+     * Projection of a source node used when reconciling a refresh
+     */
+    interface SourceNodeRow {
+        Long getId();
+        String getName();
+        String getConfig();
+        String getContentKey();
+    }
+
+    /**
+     * Number of nodes of a group with one health status
+     */
+    interface HealthCountRow {
+        Long getGroupId();
+        String getStatus();
+        Long getNodeCount();
+    }
+
+    /**
+     * Address of a node used by health checks
+     */
+    interface HealthTargetRow {
+        Long getId();
+        Long getGroupId();
+        String getName();
+        String getServer();
+        Integer getPort();
+    }
 }
@@ -2,6 +2,8 @@ package com.submanager.subscriptionmanager.repository;
 
 import com.submanager.subscriptionmanager.model.SubscriptionGroup;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,4 +14,44 @@ public interface SubscriptionGroupRepository extends JpaRepository<SubscriptionG
     Optional<SubscriptionGroup> findByToken(String token);
     List<SubscriptionGroup> findAllByOrderByCreatedAtDesc();
     List<SubscriptionGroup> findByIsActiveOrderByCreatedAtDesc(Boolean isActive);
+
+    /**
+     * Resolve an active group by token together with its active node count in one query
+     */
+    @Query("SELECT g.id AS id, " +
+           "(SELECT COUNT(n) FROM ProxyNode n WHERE n.subscriptionGroup = g AND n.isActive = true) AS activeNodeCount " +
+           "FROM SubscriptionGroup g WHERE g.token = :token AND g.isActive = true")
+    Optional<ActiveGroupRef> findActiveGroupRefByToken(@Param("token") String token);
+
+    /**
+     * Node, active node and source counts of every group in one query
+     */
+    @Query("SELECT g.id AS id, " +
+           "(SELECT COUNT(n) FROM ProxyNode n WHERE n.subscriptionGroup = g) AS nodeCount, " +
+           "(SELECT COUNT(n) FROM ProxyNode n WHERE n.subscriptionGroup = g AND n.isActive = true) AS activeNodeCount, " +
+           "(SELECT COUNT(s) FROM SubscriptionSource s WHERE s.subscriptionGroup = g) AS sourceCount " +
+           "FROM SubscriptionGroup g")
+    List<GroupCounts> findAllGroupCounts();
+
+    /**
+     * Node, active node and source counts of one group
+     */
+    @Query("SELECT g.id AS id, " +
+           "(SELECT COUNT(n) FROM ProxyNode n WHERE n.subscriptionGroup = g) AS nodeCount, " +
+           "(SELECT COUNT(n) FROM ProxyNode n WHERE n.subscriptionGroup = g AND n.isActive = true) AS activeNodeCount, " +
+           "(SELECT COUNT(s) FROM SubscriptionSource s WHERE s.subscriptionGroup = g) AS sourceCount " +
+           "FROM SubscriptionGroup g WHERE g.id = :id")
+    Optional<GroupCounts> findGroupCountsById(@Param("id") Long id);
+
+    interface ActiveGroupRef {
+        Long getId();
+        Long getActiveNodeCount();
+    }
+
+    interface GroupCounts {
+        Long getId();
+        Long getNodeCount();
+        Long getActiveNodeCount();
+        Long getSourceCount();
+    }
 }
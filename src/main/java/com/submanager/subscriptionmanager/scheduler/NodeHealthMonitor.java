@@ -0,0 +1,195 @@
+package com.submanager.subscriptionmanager.scheduler;
+
+import com.submanager.subscriptionmanager.repository.ProxyNodeRepository;
+import com.submanager.subscriptionmanager.service.NodeHealthCheckService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Health checks all active nodes in the background.
+ *
+ * A sweep walks the active nodes in id order, one shard of shard-size nodes per tick. At the
+ * start of a sweep the shards are spread over the sweep period, and every tick is shifted by a
+ * random jitter, so probes go out in small waves instead of one burst. When a sweep is done the
+ * next one starts once the sweep period is over, or right away if the sweep overran it.
+ * Sweep duration and probe throughput are kept for {@link #getStats()}.
+ */
+@Component
+public class NodeHealthMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeHealthMonitor.class);
+
+    // Delay before retrying after a failed tick, so a database outage does not spin the timer
+    private static final long ERROR_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @Autowired
+    private NodeHealthCheckService healthCheckService;
+
+    @Autowired
+    private ProxyNodeRepository proxyNodeRepository;
+
+    @Value("${app.health.monitor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.health.monitor.sweep-minutes:10}")
+    private int sweepMinutes;
+
+    @Value("${app.health.monitor.shard-size:2000}")
+    private int shardSize;
+
+    @Value("${app.health.monitor.jitter-percent:20}")
+    private int jitterPercent;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "node-health-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Sweep state, only touched on the timer thread
+    private long afterId;
+    private long sweepStartedAt;
+    private long sweepNodes;
+    private long shardDelayMillis;
+
+    // Statistics, written on the timer thread and read by getStats
+    private volatile long sweepsCompleted;
+    private volatile long lastSweepMillis;
+    private volatile long lastSweepNodes;
+    private volatile long lastShardMillis;
+    private volatile long lastShardNodes;
+    private volatile long totalNodesChecked;
+    private volatile long totalProbeMillis;
+    private volatile long currentSweepNodes;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("Node health monitor is disabled");
+            return;
+        }
+        long firstDelay = ThreadLocalRandom.current().nextLong(Math.max(1, sweepPeriodMillis() / 10));
+        timer.schedule(this::tick, firstDelay, TimeUnit.MILLISECONDS);
+        logger.info("Node health monitor started: sweep every {} minutes in shards of {} nodes",
+                sweepMinutes, shardSize);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void tick() {
+        long nextDelay = shardDelayMillis;
+        try {
+            if (afterId == 0) {
+                startSweep();
+            }
+
+            long shardStartedAt = System.nanoTime();
+            List<ProxyNodeRepository.HealthTargetRow> shard =
+                    proxyNodeRepository.findActiveHealthTargets(afterId, PageRequest.of(0, Math.max(1, shardSize)));
+            healthCheckService.checkTargets(shard);
+            long shardMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - shardStartedAt);
+
+            lastShardMillis = shardMillis;
+            lastShardNodes = shard.size();
+            totalNodesChecked += shard.size();
+            totalProbeMillis += shardMillis;
+            sweepNodes += shard.size();
+            currentSweepNodes = sweepNodes;
+
+            if (shard.size() < Math.max(1, shardSize)) {
+                nextDelay = finishSweep();
+            } else {
+                afterId = shard.get(shard.size() - 1).getId();
+                nextDelay = Math.max(0, shardDelayMillis - shardMillis);
+            }
+        } catch (Exception e) {
+            logger.error("Node health monitor shard after node {} failed", afterId, e);
+            nextDelay = Math.max(nextDelay, ERROR_RETRY_MILLIS);
+        } finally {
+            if (!timer.isShutdown()) {
+                timer.schedule(this::tick, jittered(nextDelay), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void startSweep() {
+        long activeNodes = proxyNodeRepository.countByIsActiveTrue();
+        long shards = Math.max(1, (activeNodes + Math.max(1, shardSize) - 1) / Math.max(1, shardSize));
+        shardDelayMillis = sweepPeriodMillis() / shards;
+        sweepStartedAt = System.nanoTime();
+        sweepNodes = 0;
+        logger.debug("Starting health sweep of {} active nodes in {} shards", activeNodes, shards);
+    }
+
+    /**
+     * Record the finished sweep and return the delay until the next one starts
+     */
+    private long finishSweep() {
+        long sweepMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sweepStartedAt);
+        lastSweepMillis = sweepMillis;
+        lastSweepNodes = sweepNodes;
+        sweepsCompleted++;
+        afterId = 0;
+        logger.info("Health sweep of {} nodes finished in {}s", sweepNodes, sweepMillis / 1000);
+
+        if (sweepMillis > sweepPeriodMillis()) {
+            logger.warn("Health sweep took {}s, longer than the {} minute sweep period",
+                    sweepMillis / 1000, sweepMinutes);
+        }
+        return Math.max(0, sweepPeriodMillis() - sweepMillis);
+    }
+
+    private long jittered(long delayMillis) {
+        long spread = delayMillis * Math.max(0, jitterPercent) / 100;
+        if (spread <= 0) {
+            return delayMillis;
+        }
+        return Math.max(0, delayMillis + ThreadLocalRandom.current().nextLong(-spread, spread + 1));
+    }
+
+    private long sweepPeriodMillis() {
+        return TimeUnit.MINUTES.toMillis(Math.max(1, sweepMinutes));
+    }
+
+    /**
+     * Monitor statistics. Probe throughput is nodes checked per second spent probing; the
+     * largest sweep the monitor can keep up with is roughly that times the sweep period.
+     */
+    public Map<String, Object> getStats() {
+        long probeMillis = totalProbeMillis;
+        double throughput = probeMillis > 0 ? totalNodesChecked * 1000.0 / probeMillis : 0;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sweepPeriodSeconds", sweepPeriodMillis() / 1000);
+        stats.put("shardSize", shardSize);
+        stats.put("sweepsCompleted", sweepsCompleted);
+        stats.put("lastSweepSeconds", lastSweepMillis / 1000.0);
+        stats.put("lastSweepNodes", lastSweepNodes);
+        stats.put("currentSweepNodes", currentSweepNodes);
+        stats.put("lastShardSeconds", lastShardMillis / 1000.0);
+        stats.put("lastShardNodes", lastShardNodes);
+        stats.put("totalNodesChecked", totalNodesChecked);
+        stats.put("probeThroughputPerSecond", throughput);
+        stats.put("sweepCapacityNodes", (long) (throughput * sweepPeriodMillis() / 1000));
+        return stats;
+    }
+}
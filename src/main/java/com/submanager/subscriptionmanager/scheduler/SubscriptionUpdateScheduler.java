@@ -1,30 +1,233 @@
 package com.submanager.subscriptionmanager.scheduler;
 
+import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
 import com.submanager.subscriptionmanager.service.SubscriptionFetchService;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes auto-update subscription sources when they are due.
+ *
+ * Due times (lastUpdated + updateInterval, or the retry time of a failing source, plus a random
+ * jitter) are kept in a priority queue and a single timer is armed for the earliest one, so
+ * sources are refreshed on time without polling the table. The queue is rebuilt from the
+ * database on startup and kept in sync through {@link #sourceChanged(Long)} and
+ * {@link #sourceRemoved(Long)}.
+ */
 @Component
 public class SubscriptionUpdateScheduler {
 
     private static final Logger logger = LoggerFactory.getLogger(SubscriptionUpdateScheduler.class);
 
+    // Lower bound for rescheduling a source that was just refreshed, so a source whose
+    // lastUpdated did not move cannot be refreshed in a tight loop
+    private static final Duration MIN_RESCHEDULE_DELAY = Duration.ofMinutes(1);
+
     @Autowired
     private SubscriptionFetchService subscriptionFetchService;
 
+    @Autowired
+    private SubscriptionSourceRepository subscriptionSourceRepository;
+
+    @Value("${app.subscription.refresh-jitter-seconds:300}")
+    private int jitterSeconds;
+
+    private final PriorityQueue<DueSource> queue = new PriorityQueue<>(Comparator.comparing(DueSource::getDueAt));
+
+    // Current queue entry per source; entries that are no longer in here are stale and skipped
+    private final Map<Long, DueSource> scheduled = new HashMap<>();
+
+    private final Set<Long> running = new HashSet<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "subscription-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ScheduledFuture<?> wakeUp;
+
+    /**
+     * Load the due times of all auto-update sources
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<SubscriptionSource> sources = subscriptionSourceRepository.findByAutoUpdateTrueAndIsActiveTrue();
+        Instant now = Instant.now();
+
+        synchronized (this) {
+            queue.clear();
+            scheduled.clear();
+            for (SubscriptionSource source : sources) {
+                if (!running.contains(source.getId())) {
+                    enqueue(source, now);
+                }
+            }
+            armTimer();
+        }
+        logger.info("Scheduled {} subscription sources for automatic update", sources.size());
+    }
+
+    /**
+     * Re-read a source after it was added, edited, toggled or refreshed, and reschedule it
+     */
+    public void sourceChanged(Long sourceId) {
+        SubscriptionSource source = subscriptionSourceRepository.findById(sourceId).orElse(null);
+        reschedule(sourceId, source, Instant.now());
+    }
+
+    /**
+     * Stop scheduling a deleted source
+     */
+    public void sourceRemoved(Long sourceId) {
+        reschedule(sourceId, null, Instant.now());
+    }
+
+    /**
+     * Instant a source is next due, or null if it is not scheduled
+     */
+    synchronized Instant dueAt(Long sourceId) {
+        DueSource entry = scheduled.get(sourceId);
+        return entry != null ? entry.getDueAt() : null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private synchronized void reschedule(Long sourceId, SubscriptionSource source, Instant earliest) {
+        scheduled.remove(sourceId);
+        if (source != null && !running.contains(sourceId)) {
+            enqueue(source, earliest);
+        }
+        armTimer();
+    }
+
+    private void enqueue(SubscriptionSource source, Instant earliest) {
+        if (!Boolean.TRUE.equals(source.getAutoUpdate()) || !Boolean.TRUE.equals(source.getIsActive())) {
+            return;
+        }
+
+        Instant dueAt = earliest;
+        if (source.getRetryAfter() != null && source.getConsecutiveFailures() != null
+                && source.getConsecutiveFailures() > 0) {
+            // A failing source is backed off (or its circuit is open) until its retry time
+            Instant retryAt = source.getRetryAfter().atZone(ZoneId.systemDefault()).toInstant();
+            if (retryAt.isAfter(dueAt)) {
+                dueAt = retryAt;
+            }
+        } else if (source.getLastUpdated() != null) {
+            int intervalHours = source.getUpdateInterval() != null && source.getUpdateInterval() > 0
+                    ? source.getUpdateInterval() : 24;
+            Instant next = source.getLastUpdated().atZone(ZoneId.systemDefault()).toInstant()
+                    .plus(Duration.ofHours(intervalHours));
+            if (next.isAfter(dueAt)) {
+                dueAt = next;
+            }
+        }
+        if (jitterSeconds > 0) {
+            dueAt = dueAt.plusMillis(ThreadLocalRandom.current().nextLong(jitterSeconds * 1000L));
+        }
+
+        DueSource entry = new DueSource(source, dueAt);
+        scheduled.put(source.getId(), entry);
+        queue.add(entry);
+    }
+
     /**
-     * Check and update subscriptions every hour
+     * Point the timer at the earliest due source
      */
-    @Scheduled(fixedRate = 3600000) // 1 hour = 3600000 milliseconds
-    public void updateSubscriptions() {
-        logger.info("Running scheduled subscription update task");
-        try {
-            subscriptionFetchService.updateAllDueSubscriptions();
-        } catch (Exception e) {
-            logger.error("Error in scheduled subscription update", e);
+    private void armTimer() {
+        while (!queue.isEmpty() && scheduled.get(queue.peek().getSource().getId()) != queue.peek()) {
+            queue.poll();
+        }
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+            wakeUp = null;
         }
+        if (!queue.isEmpty()) {
+            long delay = Math.max(0, Duration.between(Instant.now(), queue.peek().getDueAt()).toMillis());
+            wakeUp = timer.schedule(this::refreshDueSources, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refreshDueSources() {
+        List<SubscriptionSource> due = new ArrayList<>();
+        synchronized (this) {
+            Instant now = Instant.now();
+            while (!queue.isEmpty() && !queue.peek().getDueAt().isAfter(now)) {
+                DueSource entry = queue.poll();
+                Long sourceId = entry.getSource().getId();
+                if (scheduled.get(sourceId) == entry) {
+                    scheduled.remove(sourceId);
+                    running.add(sourceId);
+                    due.add(entry.getSource());
+                }
+            }
+            armTimer();
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+
+        logger.info("Running scheduled update of {} subscription sources", due.size());
+        subscriptionFetchService.refreshSources(due).whenComplete((result, error) -> {
+            if (error != null) {
+                logger.error("Error in scheduled subscription update", error);
+            }
+            for (SubscriptionSource source : due) {
+                Long sourceId = source.getId();
+                synchronized (this) {
+                    running.remove(sourceId);
+                }
+                try {
+                    SubscriptionSource current = subscriptionSourceRepository.findById(sourceId).orElse(null);
+                    reschedule(sourceId, current, Instant.now().plus(MIN_RESCHEDULE_DELAY));
+                } catch (Exception e) {
+                    logger.error("Failed to reschedule subscription source {}", sourceId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * A source and the instant it is next due
+     */
+    private static class DueSource {
+        private final SubscriptionSource source;
+        private final Instant dueAt;
+
+        private DueSource(SubscriptionSource source, Instant dueAt) {
+            this.source = source;
+            this.dueAt = dueAt;
+        }
+
+        SubscriptionSource getSource() { return source; }
+        Instant getDueAt() { return dueAt; }
     }
 }
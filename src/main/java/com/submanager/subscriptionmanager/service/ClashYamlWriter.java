@@ -0,0 +1,331 @@
+package com.submanager.subscriptionmanager.service;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes Clash configuration YAML directly to a Writer, section by section.
+ *
+ * The output is byte-for-byte what SnakeYAML produces when dumping the same maps in block style
+ * with pretty flow, which is how Clash subscriptions used to be rendered. Values that SnakeYAML
+ * writes plain or single-quoted are emitted directly. The rare values it would fold, escape or
+ * write as a block scalar (long names with spaces, control characters, line breaks, empty
+ * collections) make that one proxy or section fall back to SnakeYAML itself.
+ */
+final class ClashYamlWriter {
+
+    private static final int BEST_WIDTH = 80;
+
+    private static final String HEADER = "port: 7890\n"
+            + "socks-port: 7891\n"
+            + "allow-lan: false\n"
+            + "mode: Rule\n"
+            + "log-level: info\n"
+            + "external-controller: 127.0.0.1:9090\n";
+
+    private static final String RULES = "rules:\n"
+            + "- DOMAIN-SUFFIX,google.com,PROXY\n"
+            + "- DOMAIN-KEYWORD,google,PROXY\n"
+            + "- DOMAIN,google.com,PROXY\n"
+            + "- DOMAIN-SUFFIX,github.com,PROXY\n"
+            + "- GEOIP,CN,DIRECT\n"
+            + "- MATCH,PROXY\n";
+
+    private static final String PROXIES_KEY = "proxies:\n";
+    private static final String EMPTY_PROXIES = "proxies: [\n  ]\n";
+    private static final String SELECT_GROUP_NAME = "PROXY";
+    private static final String DIRECT = "DIRECT";
+
+    private static final String INDICATORS_AT_START = "#,[]{}&*!|>'\"%@`";
+    private static final String WHITESPACE_OR_END = "\0 \t\r\n\u0085\u2028\u2029";
+
+    // Read-only after construction, so it can be shared between threads
+    private static final Resolver RESOLVER = new Resolver();
+
+    private ClashYamlWriter() {
+    }
+
+    /**
+     * Port, mode and controller settings that open every Clash config
+     */
+    static void writeHeader(Writer out) throws IOException {
+        out.write(HEADER);
+    }
+
+    /**
+     * Start of the proxies section, written before the first proxy
+     */
+    static void writeProxiesKey(Writer out) throws IOException {
+        out.write(PROXIES_KEY);
+    }
+
+    /**
+     * Proxies section of a config without any proxy
+     */
+    static void writeEmptyProxies(Writer out) throws IOException {
+        out.write(EMPTY_PROXIES);
+    }
+
+    /**
+     * Format one entry of the proxies section, including the trailing line break
+     */
+    static String formatProxy(Map<String, Object> proxy) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("- ");
+        if (appendMapping(sb, proxy, 2, true)) {
+            return sb.toString();
+        }
+
+        String dumped = dump(Map.of("proxies", List.of(proxy)));
+        return dumped.substring(PROXIES_KEY.length());
+    }
+
+    /**
+     * Write the select group listing DIRECT followed by every proxy name
+     */
+    static void writeProxyGroups(Writer out, List<String> proxyNames) throws IOException {
+        StringBuilder sb = new StringBuilder(64 + proxyNames.size() * 32);
+        sb.append("proxy-groups:\n- name: ").append(SELECT_GROUP_NAME)
+                .append("\n  type: select\n  proxies:\n  - ").append(DIRECT).append('\n');
+
+        for (String name : proxyNames) {
+            sb.append("  - ");
+            if (!appendScalar(sb, name, 4)) {
+                out.write(dumpProxyGroups(proxyNames));
+                return;
+            }
+            sb.append('\n');
+        }
+        out.write(sb.toString());
+    }
+
+    /**
+     * Basic routing rules that close every Clash config
+     */
+    static void writeRules(Writer out) throws IOException {
+        out.write(RULES);
+    }
+
+    private static String dumpProxyGroups(List<String> proxyNames) {
+        Map<String, Object> selectGroup = new LinkedHashMap<>();
+        selectGroup.put("name", SELECT_GROUP_NAME);
+        selectGroup.put("type", "select");
+        List<String> names = new ArrayList<>(proxyNames.size() + 1);
+        names.add(DIRECT);
+        names.addAll(proxyNames);
+        selectGroup.put("proxies", names);
+        return dump(Map.of("proxy-groups", List.of(selectGroup)));
+    }
+
+    private static String dump(Object data) {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setPrettyFlow(true);
+        return new Yaml(options).dump(data);
+    }
+
+    /**
+     * Append a block mapping whose entries start at the given indent. The first entry continues
+     * the current line when the mapping is a sequence item. Returns false if anything in it
+     * needs the SnakeYAML fallback.
+     */
+    private static boolean appendMapping(StringBuilder sb, Map<?, ?> map, int indent, boolean continueLine) {
+        if (map.isEmpty()) {
+            return false;
+        }
+
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String key) || !isPlainKey(key)) {
+                return false;
+            }
+            if (!(first && continueLine)) {
+                appendIndent(sb, indent);
+            }
+            first = false;
+
+            sb.append(key).append(':');
+            if (!appendValue(sb, entry.getValue(), indent, indent + key.length() + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean appendValue(StringBuilder sb, Object value, int indent, int column) {
+        if (value instanceof Map<?, ?> map) {
+            sb.append('\n');
+            return appendMapping(sb, map, indent + 2, false);
+        }
+
+        if (value instanceof List<?> list) {
+            if (list.isEmpty()) {
+                return false;
+            }
+            // Block sequences inside a mapping are not indented relative to their key
+            sb.append('\n');
+            for (Object item : list) {
+                appendIndent(sb, indent);
+                sb.append("- ");
+                if (!appendScalar(sb, item, indent + 2)) {
+                    return false;
+                }
+                sb.append('\n');
+            }
+            return true;
+        }
+
+        sb.append(' ');
+        if (!appendScalar(sb, value, column + 1)) {
+            return false;
+        }
+        sb.append('\n');
+        return true;
+    }
+
+    /**
+     * Append a scalar starting at the given column, without line break
+     */
+    private static boolean appendScalar(StringBuilder sb, Object value, int column) {
+        if (value == null) {
+            sb.append("null");
+            return true;
+        }
+        if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            sb.append(value);
+            return true;
+        }
+        if (value instanceof String text) {
+            return appendString(sb, text, column);
+        }
+        return false;
+    }
+
+    private static boolean appendString(StringBuilder sb, String text, int column) {
+        if (text.isEmpty()) {
+            sb.append("''");
+            return true;
+        }
+
+        // SnakeYAML folds plain and single-quoted scalars at spaces past the best width.
+        // Quoting can add the two quotes plus one per embedded quote.
+        if (text.indexOf(' ') >= 0 && column + text.length() + 2 + countQuotes(text) > BEST_WIDTH) {
+            return false;
+        }
+
+        switch (analyze(text)) {
+            case PLAIN:
+                if (resolvesToString(text)) {
+                    sb.append(text);
+                    return true;
+                }
+                // Would read back as a number, boolean, null, date, ...
+                appendSingleQuoted(sb, text);
+                return true;
+            case SINGLE_QUOTED:
+                appendSingleQuoted(sb, text);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int countQuotes(String text) {
+        int count = 0;
+        for (int i = text.indexOf('\''); i >= 0; i = text.indexOf('\'', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void appendSingleQuoted(StringBuilder sb, String text) {
+        sb.append('\'');
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\'') {
+                sb.append('\'');
+            }
+            sb.append(ch);
+        }
+        sb.append('\'');
+    }
+
+    private enum Style { PLAIN, SINGLE_QUOTED, FALLBACK }
+
+    /**
+     * The subset of SnakeYAML's scalar analysis that matters for single line printable text.
+     * Anything outside that subset is left to SnakeYAML.
+     */
+    private static Style analyze(String text) {
+        boolean indicators = text.startsWith("---") || text.startsWith("...");
+        boolean onlySpaces = true;
+        boolean precededByWhitespace = true;
+
+        for (int i = 0; i < text.length(); ) {
+            int ch = text.codePointAt(i);
+            int next = i + Character.charCount(ch);
+            if (!isSimplePrintable(ch)) {
+                return Style.FALLBACK;
+            }
+            boolean followedByWhitespace = next >= text.length()
+                    || WHITESPACE_OR_END.indexOf(text.charAt(next)) >= 0;
+
+            if (i == 0) {
+                if (INDICATORS_AT_START.indexOf(ch) >= 0
+                        || ((ch == '?' || ch == ':' || ch == '-') && followedByWhitespace)) {
+                    indicators = true;
+                }
+            } else if ((ch == ':' && followedByWhitespace) || (ch == '#' && precededByWhitespace)) {
+                indicators = true;
+            }
+
+            onlySpaces &= ch == ' ';
+            precededByWhitespace = ch == ' ';
+            i = next;
+        }
+
+        if (onlySpaces) {
+            return Style.FALLBACK;
+        }
+        if (indicators || text.charAt(0) == ' ' || text.charAt(text.length() - 1) == ' ') {
+            return Style.SINGLE_QUOTED;
+        }
+        return Style.PLAIN;
+    }
+
+    /**
+     * Printable characters that SnakeYAML never escapes, breaks or treats as whitespace other than space
+     */
+    private static boolean isSimplePrintable(int ch) {
+        if (ch >= 0x20 && ch <= 0x7E) {
+            return true;
+        }
+        return (ch >= 0xA0 && ch <= 0xD7FF && ch != 0x2028 && ch != 0x2029)
+                || (ch >= 0xE000 && ch <= 0xFFFD && ch != 0xFEFF)
+                || (ch >= 0x10000 && ch <= 0x10FFFF);
+    }
+
+    private static boolean isPlainKey(String key) {
+        return !key.isEmpty() && key.indexOf(' ') < 0 && analyze(key) == Style.PLAIN && resolvesToString(key);
+    }
+
+    private static boolean resolvesToString(String text) {
+        return Tag.STR.equals(RESOLVER.resolve(NodeId.scalar, text, true));
+    }
+
+    private static void appendIndent(StringBuilder sb, int indent) {
+        for (int i = 0; i < indent; i++) {
+            sb.append(' ');
+        }
+    }
+}
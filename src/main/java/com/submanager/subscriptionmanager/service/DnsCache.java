@@ -0,0 +1,66 @@
+package com.submanager.subscriptionmanager.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host name resolution cache for health checks.
+ *
+ * Successful lookups are kept for ttl, failed ones for the shorter negativeTtl, so an endpoint
+ * shared by many nodes is resolved once per TTL instead of once per node and check. Literal IP
+ * addresses are never looked up.
+ */
+final class DnsCache {
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    DnsCache(long ttlSeconds, long negativeTtlSeconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, ttlSeconds));
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, negativeTtlSeconds));
+    }
+
+    /**
+     * Address of a host, or null if it does not resolve
+     */
+    InetAddress resolve(String host) {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt - now > 0) {
+            return entry.address;
+        }
+
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(host);
+        } catch (UnknownHostException | SecurityException e) {
+            address = null;
+        }
+        entries.put(key, new Entry(address, now + (address != null ? ttlNanos : negativeTtlNanos)));
+        return address;
+    }
+
+    /**
+     * Drop expired entries so hosts that disappeared do not pile up
+     */
+    void evictExpired() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.expiresAt - now <= 0);
+    }
+
+    private static final class Entry {
+        private final InetAddress address;
+        private final long expiresAt;
+
+        private Entry(InetAddress address, long expiresAt) {
+            this.address = address;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.submanager.subscriptionmanager.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Set-based writes on many nodes of a group at once: delete, activate or deactivate by id list
+ * or by filter, and reorder by a list of ids.
+ *
+ * Each operation runs as a few statements over chunks of ids, one transaction per chunk, instead
+ * of loading and saving one entity per node. Filter operations walk the matching ids in keyset
+ * chunks, so a filter matching most of a large group never holds one long transaction. Every
+ * statement is scoped to the group, so ids of other groups are ignored.
+ */
+@Service
+public class NodeBulkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeBulkService.class);
+
+    private static final String DELETE_SQL = "DELETE FROM proxy_nodes";
+
+    private static final String SET_ACTIVE_SQL = "UPDATE proxy_nodes SET is_active = ?, updated_at = ?";
+
+    private static final String SET_ORDER_SQL =
+            "UPDATE proxy_nodes SET sort_order = ?, updated_at = ? WHERE subscription_group_id = ? AND id = ?";
+
+    @Value("${app.nodes.bulk-chunk-size:1000}")
+    private int chunkSize;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    @Autowired
+    private NodeHealthHistory nodeHealthHistory;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public NodeBulkService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Delete the given nodes of a group and return how many were deleted
+     */
+    public int deleteByIds(Long groupId, List<Long> nodeIds) {
+        int deleted = 0;
+        for (List<Long> chunk : chunks(distinct(nodeIds))) {
+            deleted += deleteChunk(groupId, chunk);
+        }
+        logger.info("Deleted {} nodes of group {} by id", deleted, groupId);
+        return deleted;
+    }
+
+    /**
+     * Delete the nodes of a group matching a filter, all of them for an empty filter
+     */
+    public int deleteByFilter(Long groupId, NodeFilter filter) {
+        int deleted = 0;
+        long afterId = 0;
+        List<Long> chunk;
+        do {
+            chunk = findIds(groupId, filter, afterId);
+            if (!chunk.isEmpty()) {
+                deleted += deleteChunk(groupId, chunk);
+                afterId = chunk.get(chunk.size() - 1);
+            }
+        } while (chunk.size() == chunkSize());
+        logger.info("Deleted {} nodes of group {} by filter", deleted, groupId);
+        return deleted;
+    }
+
+    /**
+     * Delete every node of a group with one statement in the caller's transaction, so they go
+     * together with whatever else the caller deletes, such as the group itself. Unlike the other
+     * operations this is one transaction for the whole group, which holds its locks until the
+     * caller commits.
+     */
+    public int deleteAllOfGroup(Long groupId) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM proxy_nodes WHERE subscription_group_id = ?", Long.class, groupId);
+        int deleted = jdbcTemplate.update(DELETE_SQL + " WHERE subscription_group_id = ?", groupId);
+        nodeHealthHistory.forget(ids);
+        logger.info("Deleted all {} nodes of group {}", deleted, groupId);
+        return deleted;
+    }
+
+    /**
+     * Activate or deactivate the given nodes of a group and return how many were changed
+     */
+    public int setActiveByIds(Long groupId, List<Long> nodeIds, boolean active) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int updated = 0;
+        for (List<Long> chunk : chunks(distinct(nodeIds))) {
+            updated += applyToChunk(groupId, chunk, SET_ACTIVE_SQL, active, now);
+        }
+        logger.info("{} {} nodes of group {} by id", active ? "Activated" : "Deactivated", updated, groupId);
+        return updated;
+    }
+
+    /**
+     * Activate or deactivate the nodes of a group matching a filter
+     */
+    public int setActiveByFilter(Long groupId, NodeFilter filter, boolean active) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int updated = 0;
+        long afterId = 0;
+        List<Long> chunk;
+        do {
+            chunk = findIds(groupId, filter, afterId);
+            if (!chunk.isEmpty()) {
+                updated += applyToChunk(groupId, chunk, SET_ACTIVE_SQL, active, now);
+                afterId = chunk.get(chunk.size() - 1);
+            }
+        } while (chunk.size() == chunkSize());
+        logger.info("{} {} nodes of group {} by filter", active ? "Activated" : "Deactivated", updated, groupId);
+        return updated;
+    }
+
+    /**
+     * Give the listed nodes consecutive positions starting at firstPosition, in list order.
+     * Nodes that are not listed keep their position.
+     */
+    public int reorder(Long groupId, List<Long> nodeIds, int firstPosition) {
+        List<Long> ids = distinct(nodeIds);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int updated = 0;
+        int offset = 0;
+        for (List<Long> chunk : chunks(ids)) {
+            int chunkPosition = firstPosition + offset;
+            int[] counts = transactionTemplate.execute(status -> {
+                int[] result = jdbcTemplate.batchUpdate(SET_ORDER_SQL, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setInt(1, chunkPosition + i);
+                        ps.setTimestamp(2, now);
+                        ps.setLong(3, groupId);
+                        ps.setLong(4, chunk.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return chunk.size();
+                    }
+                });
+                subscriptionCache.evictGroup(groupId);
+                return result;
+            });
+            for (int count : counts) {
+                updated += Math.max(0, count);
+            }
+            offset += chunk.size();
+        }
+        logger.info("Reordered {} nodes of group {} from position {}", updated, groupId, firstPosition);
+        return updated;
+    }
+
+    /**
+     * Move the listed nodes, in list order, before all other nodes of the group
+     */
+    public int moveToTop(Long groupId, List<Long> nodeIds) {
+        Integer first = jdbcTemplate.queryForObject(
+                "SELECT MIN(COALESCE(sort_order, 0)) FROM proxy_nodes WHERE subscription_group_id = ?",
+                Integer.class, groupId);
+        return reorder(groupId, nodeIds, (first != null ? first : 0) - distinct(nodeIds).size());
+    }
+
+    /**
+     * Move the listed nodes, in list order, after all other nodes of the group
+     */
+    public int moveToBottom(Long groupId, List<Long> nodeIds) {
+        Integer last = jdbcTemplate.queryForObject(
+                "SELECT MAX(COALESCE(sort_order, 0)) FROM proxy_nodes WHERE subscription_group_id = ?",
+                Integer.class, groupId);
+        return reorder(groupId, nodeIds, (last != null ? last : 0) + 1);
+    }
+
+    private int deleteChunk(Long groupId, List<Long> chunk) {
+        int deleted = applyToChunk(groupId, chunk, DELETE_SQL);
+        nodeHealthHistory.forget(chunk);
+        return deleted;
+    }
+
+    /**
+     * Run one statement over a chunk of ids in its own transaction. The statement is completed
+     * with the group and id list condition; leading arguments bind its own placeholders.
+     */
+    private int applyToChunk(Long groupId, List<Long> chunk, String statement, Object... leadingArgs) {
+        StringBuilder sql = new StringBuilder(statement).append(" WHERE subscription_group_id = ? AND id IN (");
+        List<Object> args = new ArrayList<>(leadingArgs.length + chunk.size() + 1);
+        Collections.addAll(args, leadingArgs);
+        args.add(groupId);
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            args.add(chunk.get(i));
+        }
+        sql.append(')');
+
+        Integer count = transactionTemplate.execute(status -> {
+            int affected = jdbcTemplate.update(sql.toString(), args.toArray());
+            subscriptionCache.evictGroup(groupId);
+            return affected;
+        });
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Next chunk of ids of the group's nodes matching a filter, in id order after afterId
+     */
+    private List<Long> findIds(Long groupId, NodeFilter filter, long afterId) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT id FROM proxy_nodes WHERE subscription_group_id = ?");
+        args.add(groupId);
+        filter.appendTo(sql, args);
+        sql.append(" AND id > ? ORDER BY id ASC LIMIT ?");
+        args.add(afterId);
+        args.add(chunkSize());
+        return jdbcTemplate.queryForList(sql.toString(), Long.class, args.toArray());
+    }
+
+    private List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += chunkSize()) {
+            chunks.add(ids.subList(from, Math.min(from + chunkSize(), ids.size())));
+        }
+        return chunks;
+    }
+
+    private static List<Long> distinct(List<Long> ids) {
+        LinkedHashSet<Long> unique = new LinkedHashSet<>(ids);
+        unique.remove(null);
+        return new ArrayList<>(unique);
+    }
+
+    private int chunkSize() {
+        return Math.max(1, chunkSize);
+    }
+}
@@ -0,0 +1,109 @@
+package com.submanager.subscriptionmanager.service;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Filter on the nodes of a group, by type, health status, subscription source and active flag.
+ * Empty criteria match every node. Conditions are appended to plain SQL over proxy_nodes.
+ */
+public class NodeFilter {
+
+    public static final String SOURCE_MANUAL = "manual";
+
+    private static final List<String> HEALTH_STATUSES = List.of("UP", "DOWN", "UNKNOWN");
+
+    private final String type;
+    private final String health;
+    private final Long sourceId;
+    private final boolean manualOnly;
+    private final Boolean active;
+
+    private NodeFilter(String type, String health, Long sourceId, boolean manualOnly, Boolean active) {
+        this.type = type;
+        this.health = health;
+        this.sourceId = sourceId;
+        this.manualOnly = manualOnly;
+        this.active = active;
+    }
+
+    /**
+     * Build a filter from request parameters, any of which may be null or blank.
+     * source is a subscription source id, or "manual" for nodes added by hand.
+     *
+     * @throws IllegalArgumentException if health or source is not valid
+     */
+    public static NodeFilter of(String type, String health, String source, Boolean active) {
+        String normalizedType = isBlank(type) ? null : type.trim().toLowerCase(Locale.ROOT);
+
+        String normalizedHealth = null;
+        if (!isBlank(health)) {
+            normalizedHealth = health.trim().toUpperCase(Locale.ROOT);
+            if (!HEALTH_STATUSES.contains(normalizedHealth)) {
+                throw new IllegalArgumentException("Unknown health status: " + health + ". Supported: " + HEALTH_STATUSES);
+            }
+        }
+
+        Long sourceId = null;
+        boolean manualOnly = false;
+        if (!isBlank(source)) {
+            if (SOURCE_MANUAL.equalsIgnoreCase(source.trim())) {
+                manualOnly = true;
+            } else {
+                try {
+                    sourceId = Long.valueOf(source.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Source must be a subscription source id or '" + SOURCE_MANUAL + "'");
+                }
+            }
+        }
+
+        return new NodeFilter(normalizedType, normalizedHealth, sourceId, manualOnly, active);
+    }
+
+    public static NodeFilter none() {
+        return new NodeFilter(null, null, null, false, null);
+    }
+
+    public boolean isEmpty() {
+        return type == null && health == null && sourceId == null && !manualOnly && active == null;
+    }
+
+    /**
+     * Append the conditions of this filter to a WHERE clause, each starting with AND
+     */
+    void appendTo(StringBuilder sql, List<Object> args) {
+        if (type != null) {
+            sql.append(" AND type = ?");
+            args.add(type);
+        }
+        if (health != null) {
+            if ("UNKNOWN".equals(health)) {
+                sql.append(" AND (health_status = ? OR health_status IS NULL)");
+            } else {
+                sql.append(" AND health_status = ?");
+            }
+            args.add(health);
+        }
+        if (sourceId != null) {
+            sql.append(" AND subscription_source_id = ?");
+            args.add(sourceId);
+        }
+        if (manualOnly) {
+            sql.append(" AND subscription_source_id IS NULL");
+        }
+        if (active != null) {
+            sql.append(active ? " AND is_active = TRUE" : " AND (is_active = FALSE OR is_active IS NULL)");
+        }
+    }
+
+    public String getType() { return type; }
+    public String getHealth() { return health; }
+    public Long getSourceId() { return sourceId; }
+    public boolean isManualOnly() { return manualOnly; }
+    public Boolean getActive() { return active; }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -1,18 +1,27 @@
 package com.submanager.subscriptionmanager.service;
 
-import com.submanager.subscriptionmanager.model.ProxyNode;
 import com.submanager.subscriptionmanager.repository.ProxyNodeRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -21,46 +30,67 @@ public class NodeHealthCheckService {
 
     private final ProxyNodeRepository proxyNodeRepository;
 
-    private static final int TIMEOUT_MS = 5000; // 5 seconds timeout
+    private final NodeHealthHistory nodeHealthHistory;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.health.timeout-ms:5000}")
+    private int timeoutMs;
+
+    @Value("${app.health.max-in-flight:1024}")
+    private int maxInFlight;
+
+    @Value("${app.health.max-per-host:8}")
+    private int maxPerHost;
+
+    @Value("${app.health.write-batch-size:1000}")
+    private int writeBatchSize;
+
+    @Value("${app.health.dns-ttl-seconds:300}")
+    private long dnsTtlSeconds;
+
+    @Value("${app.health.dns-negative-ttl-seconds:60}")
+    private long dnsNegativeTtlSeconds;
+
+    private DnsCache dnsCache;
+
     private static final String STATUS_UP = "UP";
     private static final String STATUS_DOWN = "DOWN";
     private static final String STATUS_UNKNOWN = "UNKNOWN";
 
+    private static final String UPDATE_HEALTH_SQL =
+            "UPDATE proxy_nodes SET health_status = ?, response_time = ?, last_check_time = ? WHERE id = ?";
+
+    @PostConstruct
+    void createDnsCache() {
+        dnsCache = new DnsCache(dnsTtlSeconds, dnsNegativeTtlSeconds);
+    }
+
     /**
      * Check health of a single node by attempting to connect to its server:port
      */
-    @Transactional
     public void checkNodeHealth(Long nodeId) {
-        ProxyNode node = proxyNodeRepository.findById(nodeId).orElse(null);
-        if (node == null) {
+        List<ProxyNodeRepository.HealthTargetRow> nodes = proxyNodeRepository.findHealthTargetsByIds(List.of(nodeId));
+        if (nodes.isEmpty()) {
             log.warn("Node not found: {}", nodeId);
             return;
         }
 
-        performHealthCheck(node);
-        proxyNodeRepository.save(node);
+        checkTargets(nodes);
     }
 
     /**
      * Check health of multiple nodes
      */
-    @Transactional
     public void checkNodesHealth(List<Long> nodeIds) {
-        for (Long nodeId : nodeIds) {
-            checkNodeHealth(nodeId);
-        }
+        checkTargets(proxyNodeRepository.findHealthTargetsByIds(nodeIds));
     }
 
     /**
      * Check health of all nodes in a subscription group
      */
-    @Transactional
     public void checkGroupNodesHealth(Long groupId) {
-        List<ProxyNode> nodes = proxyNodeRepository.findBySubscriptionGroupIdOrderByOrderAsc(groupId);
-        for (ProxyNode node : nodes) {
-            performHealthCheck(node);
-        }
-        proxyNodeRepository.saveAll(nodes);
+        checkTargets(proxyNodeRepository.findHealthTargetsByGroupId(groupId));
     }
 
     /**
@@ -82,73 +112,195 @@ public class NodeHealthCheckService {
     }
 
     /**
-     * Perform the actual health check by attempting TCP connection
+     * Perform the actual health checks by attempting TCP connections. Nodes are collapsed to
+     * their unique resolved endpoints, each endpoint is probed once, and all probes run in one
+     * non-blocking batch, so the batch takes about one timeout however many nodes are down.
+     * Samples go to the health history, and the health columns of the nodes are updated in JDBC
+     * batches that leave the rest of the row, including updated_at, alone.
      */
-    private void performHealthCheck(ProxyNode node) {
-        if (node.getServer() == null || node.getPort() == null) {
-            node.setHealthStatus(STATUS_UNKNOWN);
-            node.setLastCheckTime(LocalDateTime.now());
-            node.setResponseTime(null);
-            log.warn("Node {} has no server/port configured", node.getId());
+    public void checkTargets(List<ProxyNodeRepository.HealthTargetRow> nodes) {
+        List<ProxyNodeRepository.HealthTargetRow> probed = new ArrayList<>(nodes.size());
+        List<Integer> endpointOfNode = new ArrayList<>(nodes.size());
+        Map<String, Integer> endpoints = new HashMap<>();
+        List<InetSocketAddress> targets = new ArrayList<>();
+        List<HealthUpdate> updates = new ArrayList<>(nodes.size());
+        LocalDateTime startedAt = LocalDateTime.now();
+        for (ProxyNodeRepository.HealthTargetRow node : nodes) {
+            if (node.getServer() == null || node.getPort() == null) {
+                updates.add(new HealthUpdate(node.getId(), STATUS_UNKNOWN, null, startedAt));
+                log.warn("Node {} has no server/port configured", node.getId());
+                continue;
+            }
+
+            InetSocketAddress target = address(node);
+            String endpoint = target != null && !target.isUnresolved()
+                    ? target.getAddress().getHostAddress() + ":" + target.getPort()
+                    : node.getServer() + ":" + node.getPort();
+            Integer index = endpoints.get(endpoint);
+            if (index == null) {
+                index = targets.size();
+                endpoints.put(endpoint, index);
+                targets.add(target);
+            }
+            probed.add(node);
+            endpointOfNode.add(index);
+        }
+        if (probed.isEmpty()) {
+            writeHealthColumns(updates);
             return;
         }
 
-        long startTime = System.currentTimeMillis();
-        boolean isReachable = false;
+        long startTime = System.nanoTime();
+        List<TcpProber.Result> results;
+        try {
+            results = new TcpProber(maxInFlight, maxPerHost, timeoutMs).probe(targets);
+        } catch (IOException e) {
+            log.error("Health check of {} nodes could not run", probed.size(), e);
+            // Nodes without a server/port were settled before probing and are still written
+            writeHealthColumns(updates);
+            return;
+        }
 
-        try (Socket socket = new Socket()) {
-            // Attempt to connect to the server
-            InetSocketAddress address = new InetSocketAddress(node.getServer(), node.getPort());
-            socket.connect(address, TIMEOUT_MS);
-            isReachable = socket.isConnected();
+        // Fan each endpoint's result out to every node on it
+        LocalDateTime checkTime = LocalDateTime.now();
+        nodeHealthHistory.preload(probed.stream().map(ProxyNodeRepository.HealthTargetRow::getId).toList());
+        for (int i = 0; i < probed.size(); i++) {
+            ProxyNodeRepository.HealthTargetRow node = probed.get(i);
+            TcpProber.Result result = results.get(endpointOfNode.get(i));
+            long responseTime = TimeUnit.NANOSECONDS.toMillis(result.getLatencyNanos());
+            nodeHealthHistory.record(node.getId(), node.getGroupId(), checkTime, result.isReachable(), result.getLatencyNanos());
 
-            long responseTime = System.currentTimeMillis() - startTime;
-            node.setResponseTime(responseTime);
-            node.setHealthStatus(STATUS_UP);
+            if (result.isReachable()) {
+                updates.add(new HealthUpdate(node.getId(), STATUS_UP, responseTime, checkTime));
+                log.debug("Node {} ({}) is UP - Response time: {}ms", node.getId(), node.getName(), responseTime);
+            } else {
+                updates.add(new HealthUpdate(node.getId(), STATUS_DOWN, responseTime, checkTime));
+                log.debug("Node {} ({}) is DOWN - Error: {}",
+                         node.getId(), node.getName(), result.getError());
+            }
+        }
+        writeHealthColumns(updates);
+        dnsCache.evictExpired();
+        log.info("Health checked {} nodes on {} unique endpoints in {}ms", probed.size(), targets.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    private void writeHealthColumns(List<HealthUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_HEALTH_SQL, updates, writeBatchSize, (ps, update) -> {
+            ps.setString(1, update.status);
+            if (update.responseTime != null) {
+                ps.setLong(2, update.responseTime);
+            } else {
+                ps.setNull(2, Types.BIGINT);
+            }
+            ps.setTimestamp(3, Timestamp.valueOf(update.checkTime));
+            ps.setLong(4, update.nodeId);
+        });
+    }
 
-            log.debug("Node {} ({}) is UP - Response time: {}ms",
-                     node.getId(), node.getName(), responseTime);
+    /**
+     * Socket address of a node through the DNS cache; unresolved if the host does not resolve,
+     * null if the port is out of range
+     */
+    private InetSocketAddress address(ProxyNodeRepository.HealthTargetRow node) {
+        if (node.getPort() < 0 || node.getPort() > 0xFFFF) {
+            return null;
+        }
+        InetAddress address = dnsCache.resolve(node.getServer());
+        return address != null
+                ? new InetSocketAddress(address, node.getPort())
+                : InetSocketAddress.createUnresolved(node.getServer(), node.getPort());
+    }
 
-        } catch (Exception e) {
-            long responseTime = System.currentTimeMillis() - startTime;
-            node.setResponseTime(responseTime);
-            node.setHealthStatus(STATUS_DOWN);
+    /**
+     * Get health status summary for a group. The status counts come from one grouped count query;
+     * latency percentiles, availability and jitter come from the group's running statistics in
+     * the health history. Neither depends on the size of the group.
+     */
+    public HealthSummary getGroupHealthSummary(Long groupId) {
+        Counts counts = new Counts();
+        for (ProxyNodeRepository.HealthCountRow row : proxyNodeRepository.countHealthByGroupId(groupId)) {
+            counts.add(row);
+        }
+        return counts.toSummary(nodeHealthHistory.getGroupStats(groupId));
+    }
 
-            log.debug("Node {} ({}) is DOWN - Error: {}",
-                     node.getId(), node.getName(), e.getMessage());
+    /**
+     * Status counts of every group, by group id, from a single grouped count query. Meant for
+     * dashboards, so it carries no sample statistics.
+     */
+    public Map<Long, HealthSummary> getAllGroupsHealthSummary() {
+        Map<Long, Counts> countsByGroup = new LinkedHashMap<>();
+        for (ProxyNodeRepository.HealthCountRow row : proxyNodeRepository.countHealthByGroup()) {
+            countsByGroup.computeIfAbsent(row.getGroupId(), id -> new Counts()).add(row);
         }
 
-        node.setLastCheckTime(LocalDateTime.now());
+        Map<Long, HealthSummary> summaries = new LinkedHashMap<>();
+        countsByGroup.forEach((groupId, counts) -> summaries.put(groupId, counts.toSummary(null)));
+        return summaries;
     }
 
     /**
-     * Get health status summary for a group
+     * Running totals of status count rows; statuses other than UP and DOWN count as unknown
      */
-    public HealthSummary getGroupHealthSummary(Long groupId) {
-        List<ProxyNode> nodes = proxyNodeRepository.findBySubscriptionGroupIdOrderByOrderAsc(groupId);
+    private static final class Counts {
+        private long total;
+        private long up;
+        private long down;
 
-        long totalNodes = nodes.size();
-        long upNodes = nodes.stream().filter(n -> STATUS_UP.equals(n.getHealthStatus())).count();
-        long downNodes = nodes.stream().filter(n -> STATUS_DOWN.equals(n.getHealthStatus())).count();
-        long unknownNodes = nodes.stream().filter(n -> STATUS_UNKNOWN.equals(n.getHealthStatus())).count();
+        void add(ProxyNodeRepository.HealthCountRow row) {
+            long count = row.getNodeCount() != null ? row.getNodeCount() : 0;
+            total += count;
+            if (STATUS_UP.equals(row.getStatus())) {
+                up += count;
+            } else if (STATUS_DOWN.equals(row.getStatus())) {
+                down += count;
+            }
+        }
 
-        return new HealthSummary(totalNodes, upNodes, downNodes, unknownNodes);
+        HealthSummary toSummary(NodeHealthHistory.GroupHealthStats samples) {
+            return new HealthSummary(total, up, down, total - up - down, samples);
+        }
+    }
+
+    /**
+     * New health columns of one node
+     */
+    private static final class HealthUpdate {
+        private final Long nodeId;
+        private final String status;
+        private final Long responseTime;
+        private final LocalDateTime checkTime;
+
+        private HealthUpdate(Long nodeId, String status, Long responseTime, LocalDateTime checkTime) {
+            this.nodeId = nodeId;
+            this.status = status;
+            this.responseTime = responseTime;
+            this.checkTime = checkTime;
+        }
     }
 
     /**
-     * Health summary data class
+     * Health summary data class. Latency percentiles, availability and jitter cover the recent
+     * samples of all probed nodes in the group and are null when none has been probed.
      */
     public static class HealthSummary {
         private final long total;
         private final long up;
         private final long down;
         private final long unknown;
+        private final NodeHealthHistory.GroupHealthStats samples;
 
-        public HealthSummary(long total, long up, long down, long unknown) {
+        public HealthSummary(long total, long up, long down, long unknown,
+                             NodeHealthHistory.GroupHealthStats samples) {
             this.total = total;
             this.up = up;
             this.down = down;
             this.unknown = unknown;
+            this.samples = samples;
         }
 
         public long getTotal() { return total; }
@@ -158,5 +310,9 @@ public class NodeHealthCheckService {
         public double getUpPercentage() {
             return total > 0 ? (up * 100.0 / total) : 0;
         }
+        public Double getAvailability() { return samples != null ? samples.getAvailability() : null; }
+        public Double getP50Ms() { return samples != null ? samples.getP50Ms() : null; }
+        public Double getP95Ms() { return samples != null ? samples.getP95Ms() : null; }
+        public Double getJitterMs() { return samples != null ? samples.getJitterMs() : null; }
     }
 }
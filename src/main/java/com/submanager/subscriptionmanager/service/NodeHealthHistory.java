@@ -0,0 +1,619 @@
+package com.submanager.subscriptionmanager.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent health probe samples per node.
+ *
+ * Each node keeps a fixed-size ring of its last samples in memory, from which latency
+ * percentiles, availability and jitter are computed, so one probe no longer defines a node.
+ * Only a downsampled part of the samples is written to node_health_samples, in JDBC batches:
+ * a sample is stored when the node went up or down since its last stored sample, or when that
+ * one is older than the store interval. Rings of nodes that are not in memory yet are loaded
+ * from that table on first use, so after a restart they start from the coarser stored history.
+ *
+ * Each group keeps running statistics over the rings of its nodes, updated as samples enter and
+ * leave them, so group statistics cost the same however many nodes the group has. Group latency
+ * percentiles come from a histogram whose buckets are within 1% of the latencies they hold. A
+ * node's ring joins its group's statistics the first time the node is probed after a restart.
+ */
+@Service
+public class NodeHealthHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeHealthHistory.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO node_health_samples (node_id, checked_at, reachable, latency_micros) VALUES (?, ?, ?, ?)";
+
+    private static final String PURGE_SQL = "DELETE FROM node_health_samples WHERE id IN ("
+            + "SELECT id FROM node_health_samples WHERE checked_at < ? ORDER BY id LIMIT ?)";
+
+    // Unreachable samples are stored in the ring as this latency
+    private static final int DOWN = -1;
+
+    private static final int LOAD_CHUNK_SIZE = 500;
+
+    // Latencies below 2^(SUB_BUCKET_BITS + 1) microseconds get a bucket each; each power of two
+    // above is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HISTOGRAM_BUCKETS = (32 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+    @Value("${app.health.history-size:32}")
+    private int historySize;
+
+    @Value("${app.health.history-retention-days:7}")
+    private int retentionDays;
+
+    @Value("${app.health.history-batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.health.history-store-interval-minutes:60}")
+    private int storeIntervalMinutes;
+
+    @Value("${app.health.history-purge-chunk-size:5000}")
+    private int purgeChunkSize;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, Ring> rings = new ConcurrentHashMap<>();
+
+    private final Map<Long, GroupStats> groups = new ConcurrentHashMap<>();
+
+    private final Queue<PendingSample> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Bring the stored samples of nodes into memory before new ones are recorded for them, so
+     * their rings continue where they left off
+     */
+    public void preload(Collection<Long> nodeIds) {
+        ringsOf(nodeIds);
+    }
+
+    /**
+     * Record one probe of a node of a group; it is queued for storage only if it is a status
+     * change or the node's last stored sample is older than the store interval
+     */
+    public void record(Long nodeId, Long groupId, LocalDateTime checkedAt, boolean reachable, long latencyNanos) {
+        int latencyMicros = reachable
+                ? (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(latencyNanos))
+                : DOWN;
+        GroupStats group = groupId != null ? groups.computeIfAbsent(groupId, id -> new GroupStats()) : null;
+        Ring ring = rings.computeIfAbsent(nodeId, id -> new Ring(historySize));
+        if (ring.add(latencyMicros, checkedAt, checkedAt.minusMinutes(storeIntervalMinutes), group)) {
+            pending.add(new PendingSample(nodeId, checkedAt, latencyMicros));
+        }
+    }
+
+    /**
+     * Drop the in-memory samples of deleted nodes; their stored samples age out with the retention
+     */
+    public void forget(Collection<Long> nodeIds) {
+        for (Long nodeId : nodeIds) {
+            Ring ring = rings.remove(nodeId);
+            if (ring != null) {
+                ring.retire();
+            }
+        }
+    }
+
+    /**
+     * Statistics of each of the given nodes that has at least one sample
+     */
+    public Map<Long, NodeHealthStats> getNodeStats(Collection<Long> nodeIds) {
+        Map<Long, NodeHealthStats> stats = new HashMap<>();
+        for (Map.Entry<Long, Ring> entry : ringsOf(nodeIds).entrySet()) {
+            NodeHealthStats nodeStats = entry.getValue().stats();
+            if (nodeStats != null) {
+                stats.put(entry.getKey(), nodeStats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Statistics over the samples of all probed nodes of a group, or null if none has samples
+     */
+    public GroupHealthStats getGroupStats(Long groupId) {
+        GroupStats group = groups.get(groupId);
+        return group != null ? group.toStats() : null;
+    }
+
+    /**
+     * Write queued samples in batches
+     */
+    @Scheduled(fixedDelayString = "${app.health.history-flush-ms:10000}")
+    public void flush() {
+        List<PendingSample> batch = new ArrayList<>();
+        PendingSample sample;
+        while ((sample = pending.poll()) != null) {
+            batch.add(sample);
+            if (batch.size() == batchSize) {
+                insert(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert(batch);
+        }
+    }
+
+    /**
+     * Drop samples past the retention period, on disk and in memory. Stored samples are deleted
+     * in chunks of purge-chunk-size rows, each its own statement, so a large backlog never turns
+     * into one long delete holding its locks and undo log.
+     */
+    @Scheduled(fixedDelayString = "${app.health.history-purge-ms:3600000}", initialDelay = 60000)
+    public void purge() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        Timestamp before = Timestamp.valueOf(cutoff);
+        long deleted = 0;
+        int chunk;
+        do {
+            chunk = jdbcTemplate.update(PURGE_SQL, before, purgeChunkSize);
+            deleted += chunk;
+        } while (chunk == purgeChunkSize);
+        rings.values().removeIf(ring -> ring.retireIfOlderThan(cutoff));
+        logger.debug("Purged {} health samples older than {}", deleted, cutoff);
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private void insert(List<PendingSample> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, sample) -> {
+                ps.setLong(1, sample.nodeId);
+                ps.setTimestamp(2, Timestamp.valueOf(sample.checkedAt));
+                ps.setBoolean(3, sample.latencyMicros != DOWN);
+                if (sample.latencyMicros != DOWN) {
+                    ps.setInt(4, sample.latencyMicros);
+                } else {
+                    ps.setNull(4, Types.INTEGER);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Samples of deleted nodes or a database hiccup; the rings still have them
+            logger.warn("Failed to store {} health samples: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Rings of the given nodes, loading the missing ones from the samples table
+     */
+    private Map<Long, Ring> ringsOf(Collection<Long> nodeIds) {
+        Map<Long, Ring> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long nodeId : nodeIds) {
+            Ring ring = rings.get(nodeId);
+            if (ring != null) {
+                found.put(nodeId, ring);
+            } else {
+                missing.add(nodeId);
+            }
+        }
+
+        for (int from = 0; from < missing.size(); from += LOAD_CHUNK_SIZE) {
+            List<Long> chunk = missing.subList(from, Math.min(from + LOAD_CHUNK_SIZE, missing.size()));
+            Map<Long, Ring> loaded = loadRings(chunk);
+            for (Long nodeId : chunk) {
+                // Nodes without stored samples get an empty ring so they are not looked up again
+                Ring ring = rings.computeIfAbsent(nodeId, id -> loaded.getOrDefault(id, new Ring(historySize)));
+                found.put(nodeId, ring);
+            }
+        }
+        return found;
+    }
+
+    private Map<Long, Ring> loadRings(List<Long> nodeIds) {
+        String placeholders = String.join(", ", Collections.nCopies(nodeIds.size(), "?"));
+        String sql = "SELECT node_id, checked_at, latency_micros FROM ("
+                + "SELECT node_id, checked_at, latency_micros, "
+                + "ROW_NUMBER() OVER (PARTITION BY node_id ORDER BY checked_at DESC) AS rn "
+                + "FROM node_health_samples WHERE node_id IN (" + placeholders + ")) recent "
+                + "WHERE rn <= ? ORDER BY node_id, checked_at ASC";
+        Object[] args = new Object[nodeIds.size() + 1];
+        for (int i = 0; i < nodeIds.size(); i++) {
+            args[i] = nodeIds.get(i);
+        }
+        args[nodeIds.size()] = historySize;
+
+        Map<Long, Ring> loaded = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            int latency = rs.getInt("latency_micros");
+            if (rs.wasNull()) {
+                latency = DOWN;
+            }
+            loaded.computeIfAbsent(rs.getLong("node_id"), id -> new Ring(historySize))
+                    .addStored(latency, rs.getTimestamp("checked_at").toLocalDateTime());
+        }, args);
+        return loaded;
+    }
+
+    /**
+     * Fixed-size ring of a node's last latencies in microseconds, oldest overwritten first, with
+     * the time and status of the node's last stored sample. While the ring belongs to a group,
+     * every sample entering or leaving it is also added to or removed from the group's statistics.
+     */
+    private static final class Ring {
+        private final int[] latencies;
+        private int next;
+        private int size;
+        private LocalDateTime lastCheckedAt;
+        private LocalDateTime lastStoredAt;
+        private boolean lastStoredUp;
+        private GroupStats group;
+        private boolean retired;
+
+        private Ring(int capacity) {
+            this.latencies = new int[Math.max(1, capacity)];
+        }
+
+        /**
+         * Add a new sample; true if it should be stored, because the node has no stored sample
+         * after storeCutoff or its status differs from the last stored one
+         */
+        synchronized boolean add(int latencyMicros, LocalDateTime checkedAt, LocalDateTime storeCutoff,
+                                 GroupStats group) {
+            if (!retired) {
+                moveTo(group);
+            }
+            push(latencyMicros, checkedAt);
+            boolean up = latencyMicros != DOWN;
+            if (lastStoredAt != null && lastStoredAt.isAfter(storeCutoff) && lastStoredUp == up) {
+                return false;
+            }
+            lastStoredAt = checkedAt;
+            lastStoredUp = up;
+            return true;
+        }
+
+        /**
+         * Add a sample loaded from the samples table
+         */
+        synchronized void addStored(int latencyMicros, LocalDateTime checkedAt) {
+            push(latencyMicros, checkedAt);
+            lastStoredAt = checkedAt;
+            lastStoredUp = latencyMicros != DOWN;
+        }
+
+        /**
+         * Take the samples out of the group statistics for good, once the ring is dropped
+         */
+        synchronized void retire() {
+            retired = true;
+            moveTo(null);
+        }
+
+        synchronized boolean retireIfOlderThan(LocalDateTime cutoff) {
+            if (lastCheckedAt != null && !lastCheckedAt.isBefore(cutoff)) {
+                return false;
+            }
+            retire();
+            return true;
+        }
+
+        private void moveTo(GroupStats target) {
+            if (group == target) {
+                return;
+            }
+            if (group != null) {
+                contribute(group, -1);
+            }
+            group = target;
+            if (group != null) {
+                contribute(group, 1);
+            }
+        }
+
+        /**
+         * Add (sign 1) or remove (sign -1) every sample of the ring to or from group statistics
+         */
+        private void contribute(GroupStats target, int sign) {
+            int previous = DOWN;
+            for (int i = 0; i < size; i++) {
+                int latency = latencies[(start() + i) % latencies.length];
+                target.sample(latency, sign);
+                if (latency != DOWN) {
+                    if (previous != DOWN) {
+                        target.jitter(Math.abs(latency - previous), sign);
+                    }
+                    previous = latency;
+                }
+            }
+        }
+
+        private void push(int latencyMicros, LocalDateTime checkedAt) {
+            boolean full = size == latencies.length;
+            if (group != null) {
+                if (full) {
+                    // The oldest sample leaves, and with it the jitter to the next up sample
+                    int oldest = latencies[next];
+                    group.sample(oldest, -1);
+                    int following = upAfterOldest();
+                    if (oldest != DOWN && following != DOWN) {
+                        group.jitter(Math.abs(following - oldest), -1);
+                    }
+                }
+                int previous = latestUp(full ? size - 1 : size);
+                if (latencyMicros != DOWN && previous != DOWN) {
+                    group.jitter(Math.abs(latencyMicros - previous), 1);
+                }
+                group.sample(latencyMicros, 1);
+            }
+            latencies[next] = latencyMicros;
+            next = (next + 1) % latencies.length;
+            size = Math.min(size + 1, latencies.length);
+            lastCheckedAt = checkedAt;
+        }
+
+        private int start() {
+            return (next - size + latencies.length) % latencies.length;
+        }
+
+        /**
+         * First up latency after the oldest sample
+         */
+        private int upAfterOldest() {
+            for (int i = 1; i < size; i++) {
+                int latency = latencies[(start() + i) % latencies.length];
+                if (latency != DOWN) {
+                    return latency;
+                }
+            }
+            return DOWN;
+        }
+
+        /**
+         * Last up latency among the newest count samples
+         */
+        private int latestUp(int count) {
+            for (int i = 1; i <= count; i++) {
+                int latency = latencies[(next - i + latencies.length) % latencies.length];
+                if (latency != DOWN) {
+                    return latency;
+                }
+            }
+            return DOWN;
+        }
+
+        synchronized NodeHealthStats stats() {
+            if (size == 0) {
+                return null;
+            }
+            Accumulator accumulator = new Accumulator(size);
+            int previous = DOWN;
+            for (int i = 0; i < size; i++) {
+                int latency = latencies[(start() + i) % latencies.length];
+                accumulator.add(latency, previous);
+                if (latency != DOWN) {
+                    previous = latency;
+                }
+            }
+            return accumulator.toStats(latencies[(next - 1 + latencies.length) % latencies.length], lastCheckedAt);
+        }
+    }
+
+    /**
+     * Collects the samples of one node in chronological order and turns them into statistics
+     */
+    private static final class Accumulator {
+        private final int[] upLatencies;
+        private int upCount;
+        private int sampleCount;
+        private long jitterSum;
+        private int jitterCount;
+
+        private Accumulator(int capacity) {
+            this.upLatencies = new int[capacity];
+        }
+
+        void add(int latency, int previousUpLatency) {
+            sampleCount++;
+            if (latency == DOWN) {
+                return;
+            }
+            upLatencies[upCount++] = latency;
+            if (previousUpLatency != DOWN) {
+                jitterSum += Math.abs(latency - previousUpLatency);
+                jitterCount++;
+            }
+        }
+
+        NodeHealthStats toStats(int latestLatency, LocalDateTime latestCheckedAt) {
+            int[] sorted = Arrays.copyOf(upLatencies, upCount);
+            Arrays.sort(sorted);
+            return new NodeHealthStats(
+                    latestLatency != DOWN ? "UP" : "DOWN",
+                    latestLatency != DOWN ? millis(latestLatency) : null,
+                    latestCheckedAt,
+                    sampleCount,
+                    upCount * 100.0 / sampleCount,
+                    upCount > 0 ? millis(percentile(sorted, 50)) : null,
+                    upCount > 0 ? millis(percentile(sorted, 95)) : null,
+                    jitterCount > 0 ? millis(jitterSum / (double) jitterCount) : null);
+        }
+
+        private static int percentile(int[] sorted, int percent) {
+            // Nearest-rank percentile
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    /**
+     * Running statistics over the rings of one group's nodes. Up latencies are counted in a
+     * log-linear histogram, allocated only while the group has up samples.
+     */
+    private static final class GroupStats {
+        private long sampleCount;
+        private long upCount;
+        private long jitterSum;
+        private long jitterCount;
+        private int[] histogram;
+
+        synchronized void sample(int latency, int sign) {
+            sampleCount += sign;
+            if (latency == DOWN) {
+                return;
+            }
+            upCount += sign;
+            if (histogram == null) {
+                histogram = new int[HISTOGRAM_BUCKETS];
+            }
+            histogram[bucket(latency)] += sign;
+            if (upCount == 0) {
+                histogram = null;
+            }
+        }
+
+        synchronized void jitter(int jitter, int sign) {
+            jitterSum += (long) sign * jitter;
+            jitterCount += sign;
+        }
+
+        synchronized GroupHealthStats toStats() {
+            if (sampleCount == 0) {
+                return null;
+            }
+            return new GroupHealthStats(
+                    sampleCount,
+                    upCount * 100.0 / sampleCount,
+                    upCount > 0 ? millis(percentile(50)) : null,
+                    upCount > 0 ? millis(percentile(95)) : null,
+                    jitterCount > 0 ? millis(jitterSum / (double) jitterCount) : null);
+        }
+
+        private int percentile(int percent) {
+            // Nearest-rank percentile, read as the middle of the bucket holding that rank
+            long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * upCount));
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return value(i);
+                }
+            }
+            return value(histogram.length - 1);
+        }
+
+        static int bucket(int latency) {
+            int shift = 31 - Integer.numberOfLeadingZeros(latency) - SUB_BUCKET_BITS;
+            if (shift <= 0) {
+                return latency;
+            }
+            return (shift << SUB_BUCKET_BITS) + (latency >>> shift);
+        }
+
+        static int value(int bucket) {
+            int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+            if (shift <= 0) {
+                return bucket;
+            }
+            int mantissa = bucket - (shift << SUB_BUCKET_BITS);
+            return (mantissa << shift) + (1 << (shift - 1));
+        }
+    }
+
+    private static final class PendingSample {
+        private final Long nodeId;
+        private final LocalDateTime checkedAt;
+        private final int latencyMicros;
+
+        private PendingSample(Long nodeId, LocalDateTime checkedAt, int latencyMicros) {
+            this.nodeId = nodeId;
+            this.checkedAt = checkedAt;
+            this.latencyMicros = latencyMicros;
+        }
+    }
+
+    private static double millis(double micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+
+    /**
+     * Health statistics over recent samples. Latencies are in milliseconds; availability is the
+     * percentage of samples that reached the node.
+     */
+    public static class NodeHealthStats {
+        private final String status;
+        private final Double latestLatencyMs;
+        private final LocalDateTime lastCheckTime;
+        private final int samples;
+        private final double availability;
+        private final Double p50Ms;
+        private final Double p95Ms;
+        private final Double jitterMs;
+
+        public NodeHealthStats(String status, Double latestLatencyMs, LocalDateTime lastCheckTime, int samples,
+                               double availability, Double p50Ms, Double p95Ms, Double jitterMs) {
+            this.status = status;
+            this.latestLatencyMs = latestLatencyMs;
+            this.lastCheckTime = lastCheckTime;
+            this.samples = samples;
+            this.availability = availability;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.jitterMs = jitterMs;
+        }
+
+        public String getStatus() { return status; }
+        public Double getLatestLatencyMs() { return latestLatencyMs; }
+        public LocalDateTime getLastCheckTime() { return lastCheckTime; }
+        public int getSamples() { return samples; }
+        public double getAvailability() { return availability; }
+        public Double getP50Ms() { return p50Ms; }
+        public Double getP95Ms() { return p95Ms; }
+        public Double getJitterMs() { return jitterMs; }
+    }
+
+    /**
+     * Health statistics over the recent samples of all probed nodes of a group. Latencies are in
+     * milliseconds; availability is the percentage of samples that reached their node.
+     */
+    public static class GroupHealthStats {
+        private final long samples;
+        private final double availability;
+        private final Double p50Ms;
+        private final Double p95Ms;
+        private final Double jitterMs;
+
+        public GroupHealthStats(long samples, double availability, Double p50Ms, Double p95Ms, Double jitterMs) {
+            this.samples = samples;
+            this.availability = availability;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.jitterMs = jitterMs;
+        }
+
+        public long getSamples() { return samples; }
+        public double getAvailability() { return availability; }
+        public Double getP50Ms() { return p50Ms; }
+        public Double getP95Ms() { return p95Ms; }
+        public Double getJitterMs() { return jitterMs; }
+    }
+}
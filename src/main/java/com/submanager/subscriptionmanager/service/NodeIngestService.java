@@ -0,0 +1,283 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Bulk writes of imported nodes.
+ *
+ * Nodes are validated and rendered up front, then written with JDBC batch inserts, one
+ * transaction per chunk, so importing thousands of nodes costs a handful of commits instead of
+ * one per node. If a chunk fails, it is retried row by row so that only the offending rows are
+ * reported as failed.
+ */
+@Service
+public class NodeIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeIngestService.class);
+
+    private static final String INSERT_SQL = "INSERT INTO proxy_nodes (name, type, config, content_key, server, "
+            + "port, uuid, alter_id, cipher, network, network_settings, tls, sni, host, path, flow, security, "
+            + "public_key, short_id, fingerprint, clash_proxy, clash_render_version, subscription_group_id, "
+            + "subscription_source_id, is_active, sort_order, health_status, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String RENAME_SQL =
+            "UPDATE proxy_nodes SET name = ?, content_key = ?, clash_proxy = ?, clash_render_version = ?, updated_at = ? WHERE id = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM proxy_nodes WHERE id = ?";
+
+    @Value("${app.subscription.ingest-batch-size:500}")
+    private int batchSize;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SubscriptionConverter subscriptionConverter;
+
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public NodeIngestService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Insert parsed nodes into a group. Every node must already carry its config, type and name;
+     * failures are reported by position in the given list.
+     */
+    public IngestResult ingest(Long groupId, List<ProxyNode> nodes) {
+        IngestResult result = new IngestResult(nodes.size());
+        List<Integer> pending = new ArrayList<>(Math.min(nodes.size(), batchSize));
+
+        for (int i = 0; i < nodes.size(); i++) {
+            ProxyNode node = nodes.get(i);
+            String error = validate(node);
+            if (error != null) {
+                result.fail(i, error);
+                continue;
+            }
+            if (node.getContentKey() == null) {
+                node.setContentKey(contentKey(node.getConfig()));
+            }
+            subscriptionConverter.renderClashProxy(node);
+
+            pending.add(i);
+            if (pending.size() == batchSize) {
+                insertChunk(groupId, nodes, pending, result);
+                pending.clear();
+            }
+        }
+        if (!pending.isEmpty()) {
+            insertChunk(groupId, nodes, pending, result);
+        }
+
+        logger.info("Ingested {} of {} nodes into group {}", result.getSucceeded(), nodes.size(), groupId);
+        return result;
+    }
+
+    /**
+     * Store the new name of existing nodes, together with their content key and re-rendered Clash
+     * entry. Nodes must carry their id. Everything else, including health data, is left untouched.
+     */
+    public void rename(Long groupId, List<ProxyNode> nodes) {
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < nodes.size(); from += batchSize) {
+            List<ProxyNode> chunk = nodes.subList(from, Math.min(from + batchSize, nodes.size()));
+            for (ProxyNode node : chunk) {
+                subscriptionConverter.renderClashProxy(node);
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(RENAME_SQL, chunk, chunk.size(), (ps, node) -> {
+                    ps.setString(1, node.getName());
+                    ps.setString(2, node.getContentKey());
+                    ps.setString(3, node.getClashProxy());
+                    ps.setInt(4, node.getClashRenderVersion());
+                    ps.setTimestamp(5, Timestamp.valueOf(now));
+                    ps.setLong(6, node.getId());
+                });
+                subscriptionCache.evictGroup(groupId);
+            });
+        }
+    }
+
+    /**
+     * Delete nodes of a group by id, in batches
+     */
+    public void delete(Long groupId, List<Long> nodeIds) {
+        for (int from = 0; from < nodeIds.size(); from += batchSize) {
+            List<Long> chunk = nodeIds.subList(from, Math.min(from + batchSize, nodeIds.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(DELETE_SQL, chunk, chunk.size(), (ps, id) -> ps.setLong(1, id));
+                subscriptionCache.evictGroup(groupId);
+            });
+        }
+    }
+
+    /**
+     * Stable identity of a node's content: the SHA-256 of its config, in hex
+     */
+    public static String contentKey(String config) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(config.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void insertChunk(Long groupId, List<ProxyNode> nodes, List<Integer> indexes, IngestResult result) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_SQL, indexes, indexes.size(),
+                        (ps, index) -> bind(ps, nodes.get(index), groupId, now));
+                subscriptionCache.evictGroup(groupId);
+            });
+            result.succeeded += indexes.size();
+        } catch (RuntimeException e) {
+            logger.warn("Batch insert of {} nodes failed, retrying row by row: {}", indexes.size(), e.getMessage());
+            for (Integer index : indexes) {
+                insertRow(groupId, nodes.get(index), index, now, result);
+            }
+        }
+    }
+
+    private void insertRow(Long groupId, ProxyNode node, int index, LocalDateTime now, IngestResult result) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, node, groupId, now));
+                subscriptionCache.evictGroup(groupId);
+            });
+            result.succeeded++;
+        } catch (RuntimeException e) {
+            logger.error("Failed to save node: {}", node.getConfig(), e);
+            result.fail(index, "Failed to save node");
+        }
+    }
+
+    private String validate(ProxyNode node) {
+        if (node.getConfig() == null || node.getConfig().isBlank()) {
+            return "Config is required";
+        }
+        if (node.getType() == null || node.getType().isBlank()) {
+            return "Unknown node type";
+        }
+        if (node.getName() == null || node.getName().isBlank()) {
+            return "Name is required";
+        }
+        return null;
+    }
+
+    private void bind(PreparedStatement ps, ProxyNode node, Long groupId, LocalDateTime now) throws SQLException {
+        int i = 1;
+        ps.setString(i++, node.getName());
+        ps.setString(i++, node.getType());
+        ps.setString(i++, node.getConfig());
+        ps.setString(i++, node.getContentKey());
+        ps.setString(i++, node.getServer());
+        setInteger(ps, i++, node.getPort());
+        ps.setString(i++, node.getUuid());
+        setInteger(ps, i++, node.getAlterId());
+        ps.setString(i++, node.getCipher());
+        ps.setString(i++, node.getNetwork());
+        ps.setString(i++, node.getNetworkSettings());
+        if (node.getTls() != null) {
+            ps.setBoolean(i++, node.getTls());
+        } else {
+            ps.setNull(i++, Types.BOOLEAN);
+        }
+        ps.setString(i++, node.getSni());
+        ps.setString(i++, node.getHost());
+        ps.setString(i++, node.getPath());
+        ps.setString(i++, node.getFlow());
+        ps.setString(i++, node.getSecurity());
+        ps.setString(i++, node.getPublicKey());
+        ps.setString(i++, node.getShortId());
+        ps.setString(i++, node.getFingerprint());
+        ps.setString(i++, node.getClashProxy());
+        ps.setInt(i++, node.getClashRenderVersion());
+        ps.setLong(i++, groupId);
+        if (node.getSubscriptionSourceId() != null) {
+            ps.setLong(i++, node.getSubscriptionSourceId());
+        } else {
+            ps.setNull(i++, Types.BIGINT);
+        }
+        ps.setBoolean(i++, !Boolean.FALSE.equals(node.getIsActive()));
+        ps.setInt(i++, node.getOrder() != null ? node.getOrder() : 0);
+        ps.setString(i++, node.getHealthStatus() != null ? node.getHealthStatus() : "UNKNOWN");
+        ps.setTimestamp(i++, Timestamp.valueOf(now));
+        ps.setTimestamp(i, Timestamp.valueOf(now));
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+
+    /**
+     * Outcome of an ingest: how many nodes were stored and why the others were not
+     */
+    public static class IngestResult {
+        private final int total;
+        private int succeeded;
+        private final List<RowError> errors = new ArrayList<>();
+
+        private IngestResult(int total) {
+            this.total = total;
+        }
+
+        private void fail(int index, String message) {
+            errors.add(new RowError(index, message));
+        }
+
+        public int getTotal() { return total; }
+        public int getSucceeded() { return succeeded; }
+        public int getFailed() { return errors.size(); }
+        public List<RowError> getErrors() { return Collections.unmodifiableList(errors); }
+    }
+
+    /**
+     * A node that could not be stored, by its position in the ingested list
+     */
+    public static class RowError {
+        private final int index;
+        private final String message;
+
+        private RowError(int index, String message) {
+            this.index = index;
+            this.message = message;
+        }
+
+        public int getIndex() { return index; }
+        public String getMessage() { return message; }
+    }
+}
@@ -1,11 +1,11 @@
 package com.submanager.subscriptionmanager.service;
 
+import com.submanager.subscriptionmanager.model.NodeProtocol;
 import com.submanager.subscriptionmanager.model.ProxyNode;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
-import java.util.HashMap;
 import java.util.Map;
 
 @Service
@@ -15,6 +15,16 @@ public class NodeParser {
      * Parse node URL and populate ProxyNode fields
      */
     public void parseAndPopulateNode(ProxyNode node) {
+        NodeProtocol protocol = NodeProtocol.fromUrl(node.getConfig());
+        if (protocol != null) {
+            parseAndPopulateNode(node, protocol);
+        }
+    }
+
+    /**
+     * Parse node URL and populate ProxyNode fields, for callers that already identified the protocol
+     */
+    public void parseAndPopulateNode(ProxyNode node, NodeProtocol protocol) {
         String config = node.getConfig();
 
         if (config == null || config.isEmpty()) {
@@ -22,14 +32,13 @@ public class NodeParser {
         }
 
         try {
-            if (config.startsWith("vmess://")) {
-                parseVMessNode(node, config);
-            } else if (config.startsWith("vless://")) {
-                parseVLESSNode(node, config);
-            } else if (config.startsWith("trojan://")) {
-                parseTrojanNode(node, config);
-            } else if (config.startsWith("ss://")) {
-                parseShadowsocksNode(node, config);
+            switch (protocol) {
+                case VMESS -> parseVMessNode(node, config);
+                case VLESS -> parseVLESSNode(node, config);
+                case TROJAN -> parseTrojanNode(node, config);
+                case SHADOWSOCKS -> parseShadowsocksNode(node, config);
+                case HYSTERIA -> parseHysteriaNode(node, config);
+                case HYSTERIA2 -> parseHysteria2Node(node, config);
             }
         } catch (Exception e) {
             System.err.println("Failed to parse node: " + config + ", error: " + e.getMessage());
@@ -40,11 +49,11 @@ public class NodeParser {
     private void parseVMessNode(ProxyNode node, String vmessUrl) {
         try {
             // Decode vmess:// URL
-            String encoded = vmessUrl.substring(8); // Remove "vmess://"
+            String encoded = vmessUrl.substring(NodeProtocol.contentStart(vmessUrl)); // Remove "vmess://"
             String decoded = new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
 
             // Parse JSON
-            Map<String, Object> vmess = parseJson(decoded);
+            Map<String, String> vmess = NodeUriScanner.parseJson(decoded);
 
             // Parse node name from "ps" field if not already set
             if (node.getName() == null || node.getName().isEmpty()) {
@@ -89,100 +98,56 @@ public class NodeParser {
     private void parseVLESSNode(ProxyNode node, String vlessUrl) {
         // Format: vless://uuid@server:port?parameters#name
         try {
-            String url = vlessUrl.substring(8); // Remove "vless://"
+            NodeUriScanner.NodeUri uri = NodeUriScanner.scanUri(vlessUrl, NodeProtocol.contentStart(vlessUrl)); // Skip "vless://"
 
             // Extract name from fragment (part after #)
-            int fragmentIndex = url.indexOf('#');
-            if (fragmentIndex > 0 && (node.getName() == null || node.getName().isEmpty())) {
-                String nodeName = url.substring(fragmentIndex + 1);
-                nodeName = java.net.URLDecoder.decode(nodeName, StandardCharsets.UTF_8);
-                if (!nodeName.isEmpty()) {
-                    node.setName(nodeName);
-                }
-                url = url.substring(0, fragmentIndex); // Remove fragment for further parsing
-            }
+            applyName(node, uri);
 
             // Basic parsing
-            int atIndex = url.indexOf('@');
-            if (atIndex > 0) {
-                String uuid = url.substring(0, atIndex);
-                node.setUuid(uuid);
-
-                String remaining = url.substring(atIndex + 1);
-                int queryIndex = remaining.indexOf('?');
-
-                String serverPort;
-                Map<String, String> params = new HashMap<>();
-                if (queryIndex > 0) {
-                    serverPort = remaining.substring(0, queryIndex);
-                    // Parse query parameters
-                    String queryString = remaining.substring(queryIndex + 1);
-                    String[] pairs = queryString.split("&");
-                    for (String pair : pairs) {
-                        int eqIndex = pair.indexOf('=');
-                        if (eqIndex > 0) {
-                            String key = pair.substring(0, eqIndex);
-                            String value = java.net.URLDecoder.decode(pair.substring(eqIndex + 1), StandardCharsets.UTF_8);
-                            params.put(key, value);
-                        }
-                    }
-                } else {
-                    serverPort = remaining;
-                }
-
-                int colonIndex = serverPort.lastIndexOf(':');
-                if (colonIndex > 0) {
-                    node.setServer(serverPort.substring(0, colonIndex));
-                    try {
-                        node.setPort(Integer.parseInt(serverPort.substring(colonIndex + 1)));
-                    } catch (NumberFormatException e) {
-                        // Ignore
-                    }
-                }
+            if (uri.getUserInfo() != null) {
+                node.setUuid(uri.getUserInfo());
+                applyServerPort(node, uri);
 
                 // Parse additional parameters
-                if (params.containsKey("type")) {
-                    node.setNetwork(params.get("type"));
+                if (uri.hasParam("type")) {
+                    node.setNetwork(uri.getParam("type"));
                 }
-                if (params.containsKey("host")) {
-                    node.setHost(params.get("host"));
+                if (uri.hasParam("host")) {
+                    node.setHost(uri.getParam("host"));
                 }
-                if (params.containsKey("path")) {
-                    node.setPath(params.get("path"));
+                if (uri.hasParam("path")) {
+                    node.setPath(uri.getParam("path"));
                 }
 
                 // Security and TLS parameters
-                if (params.containsKey("security")) {
-                    String securityValue = params.get("security");
+                if (uri.hasParam("security")) {
+                    String securityValue = uri.getParam("security");
                     node.setSecurity(securityValue);
                     // Set TLS flag based on security type
                     node.setTls("tls".equals(securityValue) || "reality".equals(securityValue));
                 }
 
-                if (params.containsKey("sni")) {
-                    node.setSni(params.get("sni"));
+                if (uri.hasParam("sni")) {
+                    node.setSni(uri.getParam("sni"));
                 }
 
                 // Reality protocol specific parameters
-                if (params.containsKey("flow")) {
-                    node.setFlow(params.get("flow"));
+                if (uri.hasParam("flow")) {
+                    node.setFlow(uri.getParam("flow"));
                 }
-                if (params.containsKey("pbk")) {
-                    node.setPublicKey(params.get("pbk"));
+                if (uri.hasParam("pbk")) {
+                    node.setPublicKey(uri.getParam("pbk"));
                 }
-                if (params.containsKey("sid")) {
-                    node.setShortId(params.get("sid"));
+                if (uri.hasParam("sid")) {
+                    node.setShortId(uri.getParam("sid"));
                 }
-                if (params.containsKey("fp")) {
-                    node.setFingerprint(params.get("fp"));
+                if (uri.hasParam("fp")) {
+                    node.setFingerprint(uri.getParam("fp"));
                 }
 
                 // Other encryption parameters
-                if (params.containsKey("encryption")) {
-                    node.setCipher(params.get("encryption"));
-                }
-                if (params.containsKey("headerType")) {
-                    // Store in network settings if needed
+                if (uri.hasParam("encryption")) {
+                    node.setCipher(uri.getParam("encryption"));
                 }
             }
         } catch (Exception e) {
@@ -193,71 +158,30 @@ public class NodeParser {
     private void parseTrojanNode(ProxyNode node, String trojanUrl) {
         // Format: trojan://password@server:port?parameters#name
         try {
-            String url = trojanUrl.substring(9); // Remove "trojan://"
+            NodeUriScanner.NodeUri uri = NodeUriScanner.scanUri(trojanUrl, NodeProtocol.contentStart(trojanUrl)); // Skip "trojan://"
 
             // Extract name from fragment (part after #)
-            int fragmentIndex = url.indexOf('#');
-            if (fragmentIndex > 0 && (node.getName() == null || node.getName().isEmpty())) {
-                String nodeName = url.substring(fragmentIndex + 1);
-                nodeName = java.net.URLDecoder.decode(nodeName, StandardCharsets.UTF_8);
-                if (!nodeName.isEmpty()) {
-                    node.setName(nodeName);
-                }
-                url = url.substring(0, fragmentIndex); // Remove fragment for further parsing
-            }
+            applyName(node, uri);
 
-            int atIndex = url.indexOf('@');
-            if (atIndex > 0) {
-                String password = url.substring(0, atIndex);
-                node.setUuid(password); // Store password in uuid field
-
-                String remaining = url.substring(atIndex + 1);
-                int queryIndex = remaining.indexOf('?');
-
-                String serverPort;
-                Map<String, String> params = new HashMap<>();
-                if (queryIndex > 0) {
-                    serverPort = remaining.substring(0, queryIndex);
-                    // Parse query parameters
-                    String queryString = remaining.substring(queryIndex + 1);
-                    String[] pairs = queryString.split("&");
-                    for (String pair : pairs) {
-                        int eqIndex = pair.indexOf('=');
-                        if (eqIndex > 0) {
-                            String key = pair.substring(0, eqIndex);
-                            String value = java.net.URLDecoder.decode(pair.substring(eqIndex + 1), StandardCharsets.UTF_8);
-                            params.put(key, value);
-                        }
-                    }
-                } else {
-                    serverPort = remaining;
-                }
-
-                int colonIndex = serverPort.lastIndexOf(':');
-                if (colonIndex > 0) {
-                    node.setServer(serverPort.substring(0, colonIndex));
-                    try {
-                        node.setPort(Integer.parseInt(serverPort.substring(colonIndex + 1)));
-                    } catch (NumberFormatException e) {
-                        // Ignore
-                    }
-                }
+            if (uri.getUserInfo() != null) {
+                node.setUuid(uri.getUserInfo()); // Store password in uuid field
+                applyServerPort(node, uri);
 
                 // Parse additional parameters
-                if (params.containsKey("type")) {
-                    node.setNetwork(params.get("type"));
+                if (uri.hasParam("type")) {
+                    node.setNetwork(uri.getParam("type"));
                 }
-                if (params.containsKey("host")) {
-                    node.setHost(params.get("host"));
+                if (uri.hasParam("host")) {
+                    node.setHost(uri.getParam("host"));
                 }
-                if (params.containsKey("path")) {
-                    node.setPath(params.get("path"));
+                if (uri.hasParam("path")) {
+                    node.setPath(uri.getParam("path"));
                 }
-                if (params.containsKey("security")) {
-                    node.setTls("tls".equals(params.get("security")));
+                if (uri.hasParam("security")) {
+                    node.setTls("tls".equals(uri.getParam("security")));
                 }
-                if (params.containsKey("sni")) {
-                    node.setSni(params.get("sni"));
+                if (uri.hasParam("sni")) {
+                    node.setSni(uri.getParam("sni"));
                 }
             }
         } catch (Exception e) {
@@ -268,23 +192,13 @@ public class NodeParser {
     private void parseShadowsocksNode(ProxyNode node, String ssUrl) {
         // Format: ss://base64(method:password)@server:port#name
         try {
-            String url = ssUrl.substring(5); // Remove "ss://"
+            NodeUriScanner.NodeUri uri = NodeUriScanner.scanUri(ssUrl, NodeProtocol.contentStart(ssUrl)); // Skip "ss://"
 
             // Extract name from fragment (part after #)
-            int fragmentIndex = url.indexOf('#');
-            if (fragmentIndex > 0 && (node.getName() == null || node.getName().isEmpty())) {
-                String nodeName = url.substring(fragmentIndex + 1);
-                nodeName = java.net.URLDecoder.decode(nodeName, StandardCharsets.UTF_8);
-                if (!nodeName.isEmpty()) {
-                    node.setName(nodeName);
-                }
-                url = url.substring(0, fragmentIndex); // Remove fragment for further parsing
-            }
+            applyName(node, uri);
 
-            int atIndex = url.indexOf('@');
-            if (atIndex > 0) {
-                String encoded = url.substring(0, atIndex);
-                String decoded = new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
+            if (uri.getUserInfo() != null) {
+                String decoded = new String(Base64.getDecoder().decode(uri.getUserInfo()), StandardCharsets.UTF_8);
 
                 int colonIndex = decoded.indexOf(':');
                 if (colonIndex > 0) {
@@ -292,43 +206,76 @@ public class NodeParser {
                     node.setUuid(decoded.substring(colonIndex + 1)); // Store password in uuid
                 }
 
-                String serverPort = url.substring(atIndex + 1);
-                colonIndex = serverPort.lastIndexOf(':');
-                if (colonIndex > 0) {
-                    node.setServer(serverPort.substring(0, colonIndex));
-                    try {
-                        node.setPort(Integer.parseInt(serverPort.substring(colonIndex + 1)));
-                    } catch (NumberFormatException e) {
-                        // Ignore
-                    }
-                }
+                applyServerPort(node, uri);
             }
         } catch (Exception e) {
             System.err.println("Failed to parse Shadowsocks: " + e.getMessage());
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> parseJson(String json) {
-        // Simple JSON parser for VMess config
-        json = json.trim();
-        if (!json.startsWith("{") || !json.endsWith("}")) {
-            throw new IllegalArgumentException("Invalid JSON");
+    private void parseHysteriaNode(ProxyNode node, String hysteriaUrl) {
+        // Format: hysteria://server:port?protocol=udp&auth=...&peer=sni&insecure=1&upmbps=..&downmbps=..#name
+        try {
+            NodeUriScanner.NodeUri uri = NodeUriScanner.scanUri(hysteriaUrl, NodeProtocol.contentStart(hysteriaUrl));
+
+            applyName(node, uri);
+            applyServerPort(node, uri);
+
+            if (uri.hasParam("auth")) {
+                node.setUuid(uri.getParam("auth")); // Store auth string in uuid field
+            }
+            if (uri.hasParam("protocol")) {
+                node.setNetwork(uri.getParam("protocol"));
+            }
+            if (uri.hasParam("peer")) {
+                node.setSni(uri.getParam("peer"));
+            }
+            // Hysteria always runs over TLS (QUIC)
+            node.setTls(true);
+        } catch (Exception e) {
+            System.err.println("Failed to parse Hysteria: " + e.getMessage());
         }
+    }
 
-        Map<String, Object> result = new HashMap<>();
-        json = json.substring(1, json.length() - 1); // Remove { }
+    private void parseHysteria2Node(ProxyNode node, String hysteria2Url) {
+        // Format: hysteria2://auth@server:port/?sni=..&insecure=1&obfs=salamander&obfs-password=..#name
+        // (hy2:// is an alias)
+        try {
+            NodeUriScanner.NodeUri uri = NodeUriScanner.scanUri(hysteria2Url, NodeProtocol.contentStart(hysteria2Url));
+
+            applyName(node, uri);
+            applyServerPort(node, uri);
+            if (node.getServer() != null && node.getPort() == null) {
+                node.setPort(443); // Hysteria2 clients default to 443 when the link has no port
+            }
 
-        String[] pairs = json.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)"); // Split by comma not in quotes
-        for (String pair : pairs) {
-            String[] kv = pair.split(":", 2);
-            if (kv.length == 2) {
-                String key = kv[0].trim().replaceAll("\"", "");
-                String value = kv[1].trim().replaceAll("\"", "");
-                result.put(key, value);
+            if (uri.getUserInfo() != null) {
+                String auth = uri.getUserInfo();
+                node.setUuid(NodeUriScanner.decode(auth, 0, auth.length())); // Store password in uuid field
             }
+            if (uri.hasParam("sni")) {
+                node.setSni(uri.getParam("sni"));
+            }
+            // Hysteria2 always runs over TLS (QUIC)
+            node.setTls(true);
+        } catch (Exception e) {
+            System.err.println("Failed to parse Hysteria2: " + e.getMessage());
         }
+    }
 
-        return result;
+    private void applyName(ProxyNode node, NodeUriScanner.NodeUri uri) {
+        if ((node.getName() == null || node.getName().isEmpty())
+                && uri.getName() != null && !uri.getName().isEmpty()) {
+            node.setName(uri.getName());
+        }
+    }
+
+    private void applyServerPort(ProxyNode node, NodeUriScanner.NodeUri uri) {
+        if (uri.getHost() != null) {
+            node.setServer(uri.getHost());
+            if (uri.getPort() != null) {
+                node.setPort(uri.getPort());
+            }
+        }
     }
 }
@@ -0,0 +1,280 @@
+package com.submanager.subscriptionmanager.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keyset-paginated listing of the nodes of a group.
+ *
+ * A page is ordered by one sort key with the node id as tie breaker, and its cursor carries the
+ * key and id of the last row; the next page starts strictly after them. A page deep into a large
+ * group costs the same as the first one, and nodes added or removed between requests do not
+ * shift later pages. Only the requested columns are selected, with plain JDBC, so a page never
+ * hydrates entities.
+ */
+@Service
+@RequiredArgsConstructor
+public class NodeQueryService {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 500;
+
+    // Pseudo field: probe statistics from the health history instead of a column
+    public static final String STATS_FIELD = "stats";
+
+    public static final List<String> DEFAULT_FIELDS = List.of(
+            "id", "name", "type", "server", "port", "network", "tls", "isActive", "healthStatus", "responseTime");
+
+    // Selectable fields, in response order, with the column each one reads
+    private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("id", "id");
+        COLUMNS.put("name", "name");
+        COLUMNS.put("type", "type");
+        COLUMNS.put("server", "server");
+        COLUMNS.put("port", "port");
+        COLUMNS.put("network", "network");
+        COLUMNS.put("tls", "tls");
+        COLUMNS.put("security", "security");
+        COLUMNS.put("sni", "sni");
+        COLUMNS.put("host", "host");
+        COLUMNS.put("path", "path");
+        COLUMNS.put("cipher", "cipher");
+        COLUMNS.put("uuid", "uuid");
+        COLUMNS.put("config", "config");
+        COLUMNS.put("isActive", "is_active");
+        COLUMNS.put("order", "sort_order");
+        COLUMNS.put("subscriptionSourceId", "subscription_source_id");
+        COLUMNS.put("healthStatus", "health_status");
+        COLUMNS.put("responseTime", "response_time");
+        COLUMNS.put("lastCheckTime", "last_check_time");
+        COLUMNS.put("createdAt", "created_at");
+        COLUMNS.put("updatedAt", "updated_at");
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NodeHealthHistory nodeHealthHistory;
+
+    /**
+     * Sort keys. Nullable columns are coalesced so every row has a key to page on;
+     * nodes never probed sort after all others by latency.
+     */
+    public enum Sort {
+        ORDER("COALESCE(sort_order, 0)"),
+        NAME("name"),
+        LATENCY("COALESCE(response_time, " + Long.MAX_VALUE + ")"),
+        CREATED("created_at"),
+        ID("id");
+
+        private final String expression;
+
+        Sort(String expression) {
+            this.expression = expression;
+        }
+
+        public static Sort fromParam(String value) {
+            for (Sort sort : values()) {
+                if (sort.name().equalsIgnoreCase(value.trim())) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sort: " + value + ". Supported: order, name, latency, created, id");
+        }
+
+        private String param() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        private Object readKey(ResultSet rs) throws SQLException {
+            switch (this) {
+                case NAME:
+                    return rs.getString("sort_key");
+                case CREATED:
+                    return rs.getTimestamp("sort_key");
+                case ORDER:
+                    return rs.getInt("sort_key");
+                default:
+                    return rs.getLong("sort_key");
+            }
+        }
+
+        private Object parseKey(String value) {
+            switch (this) {
+                case NAME:
+                    return value;
+                case CREATED:
+                    return Timestamp.valueOf(value);
+                case ORDER:
+                    return Integer.valueOf(value);
+                default:
+                    return Long.valueOf(value);
+            }
+        }
+    }
+
+    /**
+     * List one page of the nodes of a group
+     *
+     * @param cursor  nextCursor of the previous page, or null for the first page
+     * @param fields  fields to return, null for {@link #DEFAULT_FIELDS}; id is always returned
+     * @throws IllegalArgumentException if a field is unknown or the cursor does not match the sort
+     */
+    public NodePage listNodes(Long groupId, NodeFilter filter, Sort sort, boolean descending,
+                              String cursor, int limit, List<String> fields) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+        Set<String> selected = resolveFields(fields);
+
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (String field : selected) {
+            String column = COLUMNS.get(field);
+            if (column != null) {
+                sql.append(column).append(", ");
+            }
+        }
+        sql.append(sort.expression).append(" AS sort_key FROM proxy_nodes WHERE subscription_group_id = ?");
+        args.add(groupId);
+        filter.appendTo(sql, args);
+
+        if (cursor != null && !cursor.isEmpty()) {
+            Cursor after = Cursor.decode(cursor, sort, descending);
+            String comparison = descending ? " < " : " > ";
+            sql.append(" AND (").append(sort.expression).append(comparison).append("?")
+               .append(" OR (").append(sort.expression).append(" = ? AND id").append(comparison).append("?))");
+            args.add(after.key);
+            args.add(after.key);
+            args.add(after.id);
+        }
+
+        String direction = descending ? " DESC" : " ASC";
+        sql.append(" ORDER BY ").append(sort.expression).append(direction).append(", id").append(direction);
+        // One extra row tells whether another page follows
+        sql.append(" LIMIT ?");
+        args.add(pageSize + 1);
+
+        List<Object> keys = new ArrayList<>();
+        List<Map<String, Object>> rows = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : selected) {
+                String column = COLUMNS.get(field);
+                if (column != null) {
+                    Object value = rs.getObject(column);
+                    row.put(field, value instanceof Timestamp ? ((Timestamp) value).toLocalDateTime() : value);
+                }
+            }
+            keys.add(sort.readKey(rs));
+            return row;
+        }, args.toArray());
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            Map<String, Object> last = rows.get(pageSize - 1);
+            nextCursor = new Cursor(sort, descending, keys.get(pageSize - 1), ((Number) last.get("id")).longValue()).encode();
+        }
+
+        if (selected.contains(STATS_FIELD) && !rows.isEmpty()) {
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                ids.add(((Number) row.get("id")).longValue());
+            }
+            Map<Long, NodeHealthHistory.NodeHealthStats> stats = nodeHealthHistory.getNodeStats(ids);
+            for (Map<String, Object> row : rows) {
+                row.put(STATS_FIELD, stats.get(((Number) row.get("id")).longValue()));
+            }
+        }
+
+        return new NodePage(new ArrayList<>(rows), nextCursor, pageSize);
+    }
+
+    private static Set<String> resolveFields(List<String> fields) {
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add("id");
+        for (String field : fields != null && !fields.isEmpty() ? fields : DEFAULT_FIELDS) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!COLUMNS.containsKey(name) && !STATS_FIELD.equals(name)) {
+                throw new IllegalArgumentException("Unknown field: " + name + ". Supported: " + COLUMNS.keySet() + " and " + STATS_FIELD);
+            }
+            selected.add(name);
+        }
+        return selected;
+    }
+
+    /**
+     * Position after the last row of a page, passed to clients as an opaque string.
+     * It names its sort so a cursor is not reused with a different ordering.
+     */
+    private static final class Cursor {
+        private final Sort sort;
+        private final boolean descending;
+        private final Object key;
+        private final long id;
+
+        private Cursor(Sort sort, boolean descending, Object key, long id) {
+            this.sort = sort;
+            this.descending = descending;
+            this.key = key;
+            this.id = id;
+        }
+
+        private String encode() {
+            String raw = sort.param() + ',' + (descending ? "desc" : "asc") + ',' + id + ',' + key;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Cursor decode(String cursor, Sort sort, boolean descending) {
+            String[] parts;
+            try {
+                parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",", 4);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            if (parts.length != 4 || !parts[0].equals(sort.param()) || !parts[1].equals(descending ? "desc" : "asc")) {
+                throw new IllegalArgumentException("Cursor does not match the requested sort");
+            }
+            try {
+                return new Cursor(sort, descending, sort.parseKey(parts[3]), Long.parseLong(parts[2]));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    /**
+     * One page of nodes, with the cursor of the next page or null on the last one
+     */
+    public static class NodePage {
+        private final List<Map<String, Object>> nodes;
+        private final String nextCursor;
+        private final int limit;
+
+        public NodePage(List<Map<String, Object>> nodes, String nextCursor, int limit) {
+            this.nodes = nodes;
+            this.nextCursor = nextCursor;
+            this.limit = limit;
+        }
+
+        public List<Map<String, Object>> getNodes() { return nodes; }
+        public String getNextCursor() { return nextCursor; }
+        public int getLimit() { return limit; }
+    }
+}
@@ -1,7 +1,6 @@
 package com.submanager.subscriptionmanager.service;
 
 import com.submanager.subscriptionmanager.model.ProxyNode;
-import com.submanager.subscriptionmanager.model.SubscriptionGroup;
 import com.submanager.subscriptionmanager.model.SubscriptionSource;
 import com.submanager.subscriptionmanager.repository.ProxyNodeRepository;
 import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
@@ -9,11 +8,13 @@ import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepositor
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Helper service to save nodes in separate transactions
@@ -33,23 +34,30 @@ public class NodeSaveService {
     @Autowired
     private SubscriptionGroupRepository subscriptionGroupRepository;
 
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    @Autowired
+    private SubscriptionConverter subscriptionConverter;
+
+    @Autowired
+    private NodeParser nodeParser;
+
     /**
      * Save a single node in a separate transaction
-     * This method also ensures the bidirectional relationship is maintained
+     * The node owns the group relationship, so the group's lazy node collection is left untouched
      */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public boolean saveNode(ProxyNode node) {
         try {
+            node.setContentKey(NodeIngestService.contentKey(node.getConfig()));
+            subscriptionConverter.renderClashProxy(node);
+
             // Save the node (this will persist the foreign key relationship)
             ProxyNode savedNode = proxyNodeRepository.save(node);
 
-            // Maintain bidirectional relationship by adding node to group's collection
             if (savedNode.getSubscriptionGroup() != null) {
-                SubscriptionGroup group = savedNode.getSubscriptionGroup();
-                // Only add if not already in the list (to avoid duplicates)
-                if (!group.getNodes().contains(savedNode)) {
-                    group.getNodes().add(savedNode);
-                }
+                subscriptionCache.evictGroup(savedNode.getSubscriptionGroup().getId());
             }
 
             logger.debug("Successfully saved node: {}", node.getName());
@@ -60,12 +68,93 @@ public class NodeSaveService {
         }
     }
 
+    /**
+     * Render and store the Clash entries of up to {@code limit} nodes whose entry is missing or was
+     * rendered by another renderer version. Nodes stored without parsed fields (hysteria links
+     * saved before they were parsed) are parsed first. Returns the number of nodes updated, so
+     * callers can loop until it reaches zero.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int renderStaleClashProxies(int limit) {
+        List<ProxyNode> nodes = proxyNodeRepository.findWithStaleClashProxy(
+                SubscriptionConverter.CLASH_RENDER_VERSION, PageRequest.of(0, limit));
+        for (ProxyNode node : nodes) {
+            if (node.getServer() == null) {
+                nodeParser.parseAndPopulateNode(node);
+            }
+            subscriptionConverter.renderClashProxy(node);
+        }
+        return nodes.size();
+    }
+
     /**
      * Update subscription source status in a separate transaction
      */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void updateSubscriptionSourceStatus(Long sourceId, String status, String errorMessage,
                                                Integer nodeCount, LocalDateTime lastUpdated) {
+        updateSubscriptionSource(sourceId, status, errorMessage, nodeCount, lastUpdated, false, null, null, null);
+    }
+
+    /**
+     * Update subscription source status together with the upstream validators of the body it was
+     * built from, in a separate transaction. Null validators make the next fetch unconditional.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void updateSubscriptionSourceStatus(Long sourceId, String status, String errorMessage,
+                                               Integer nodeCount, LocalDateTime lastUpdated,
+                                               String etag, String lastModified, String contentHash) {
+        updateSubscriptionSource(sourceId, status, errorMessage, nodeCount, lastUpdated, true, etag, lastModified, contentHash);
+    }
+
+    /**
+     * Record a failed refresh together with the source's failure streak and circuit state, in a
+     * separate transaction. The validators are cleared so the next fetch is unconditional.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void recordSubscriptionSourceFailure(Long sourceId, String errorMessage, LocalDateTime lastUpdated,
+                                                int consecutiveFailures, String circuitState,
+                                                LocalDateTime retryAfter) {
+        try {
+            SubscriptionSource source = subscriptionSourceRepository.findById(sourceId).orElse(null);
+            if (source != null) {
+                source.setLastUpdateStatus("FAILED");
+                source.setLastErrorMessage(errorMessage);
+                source.setNodeCount(0);
+                source.setLastUpdated(lastUpdated);
+                source.setUpstreamEtag(null);
+                source.setUpstreamLastModified(null);
+                source.setContentHash(null);
+                source.setConsecutiveFailures(consecutiveFailures);
+                source.setCircuitState(circuitState);
+                source.setRetryAfter(retryAfter);
+                subscriptionSourceRepository.save(source);
+                logger.debug("Recorded failure {} of subscription source {}, circuit {}",
+                        consecutiveFailures, sourceId, circuitState);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to update subscription source status", e);
+        }
+    }
+
+    /**
+     * Update only the circuit state of a subscription source, in a separate transaction
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void updateSubscriptionSourceCircuit(Long sourceId, String circuitState) {
+        try {
+            subscriptionSourceRepository.findById(sourceId).ifPresent(source -> {
+                source.setCircuitState(circuitState);
+                subscriptionSourceRepository.save(source);
+            });
+        } catch (Exception e) {
+            logger.error("Failed to update subscription source circuit state", e);
+        }
+    }
+
+    private void updateSubscriptionSource(Long sourceId, String status, String errorMessage, Integer nodeCount,
+                                          LocalDateTime lastUpdated, boolean setValidators,
+                                          String etag, String lastModified, String contentHash) {
         try {
             SubscriptionSource source = subscriptionSourceRepository.findById(sourceId).orElse(null);
             if (source != null) {
@@ -73,6 +162,17 @@ public class NodeSaveService {
                 source.setLastErrorMessage(errorMessage);
                 source.setNodeCount(nodeCount);
                 source.setLastUpdated(lastUpdated);
+                if ("SUCCESS".equals(status)) {
+                    // Any successful refresh ends a failure streak and closes the circuit
+                    source.setConsecutiveFailures(0);
+                    source.setCircuitState("CLOSED");
+                    source.setRetryAfter(null);
+                }
+                if (setValidators) {
+                    source.setUpstreamEtag(etag);
+                    source.setUpstreamLastModified(lastModified);
+                    source.setContentHash(contentHash);
+                }
                 subscriptionSourceRepository.save(source);
                 logger.debug("Updated subscription source status: {}", status);
             }
@@ -0,0 +1,466 @@
+package com.submanager.subscriptionmanager.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Single-pass scanner for the two encodings found in node share links: the JSON object inside
+ * vmess:// links, and the scheme://userinfo@host:port?query#fragment form used by vless, trojan
+ * and ss. Fields are emitted as they are found; nothing is split or matched with a regex.
+ * Shared by NodeParser and SubscriptionConverter.
+ */
+final class NodeUriScanner {
+
+    private NodeUriScanner() {
+    }
+
+    /**
+     * Parse the top-level fields of a JSON object into a map. String values are unescaped,
+     * numbers and booleans are kept as their literal text, nested objects and arrays as their
+     * raw JSON, and null values are left out.
+     *
+     * Like the regex parser this replaces, it is lenient with the JSON found in real vmess links:
+     * a pair that cannot be read is skipped and the next one is tried, keys and string values may
+     * be unquoted, unknown escapes are kept, and whatever follows the object is ignored. Only
+     * input without a '{' is rejected.
+     */
+    static Map<String, String> parseJson(String json) {
+        Map<String, String> fields = new HashMap<>();
+        scanJson(json, fields::put);
+        return fields;
+    }
+
+    /**
+     * Walk the top-level fields of a JSON object once, passing each key and value to the consumer
+     */
+    static void scanJson(String json, BiConsumer<String, String> consumer) {
+        new JsonScanner(json).scanObject(consumer);
+    }
+
+    /**
+     * Split a share link into its parts. {@code start} is the index just past "scheme://".
+     */
+    static NodeUri scanUri(String url, int start) {
+        int end = url.length();
+        String name = null;
+        int hashIndex = url.indexOf('#', start);
+        if (hashIndex >= 0) {
+            name = decode(url, hashIndex + 1, end);
+            end = hashIndex;
+        }
+
+        Map<String, String> params = new HashMap<>();
+        int authorityEnd = end;
+        int queryIndex = url.indexOf('?', start);
+        if (queryIndex >= 0 && queryIndex < end) {
+            scanQuery(url, queryIndex + 1, end, params::put);
+            authorityEnd = queryIndex;
+        }
+
+        String userInfo = null;
+        int hostStart = start;
+        int atIndex = url.lastIndexOf('@', authorityEnd - 1);
+        if (atIndex > start) {
+            userInfo = url.substring(start, atIndex);
+            hostStart = atIndex + 1;
+        }
+
+        // An optional path ("host:port/?query") ends the authority too
+        int slashIndex = url.indexOf('/', hostStart);
+        if (slashIndex >= 0 && slashIndex < authorityEnd) {
+            authorityEnd = slashIndex;
+        }
+
+        String host = null;
+        Integer port = null;
+        int colonIndex = url.lastIndexOf(':', authorityEnd - 1);
+        if (colonIndex > hostStart) {
+            host = url.substring(hostStart, colonIndex);
+            port = parsePort(url, colonIndex + 1, authorityEnd);
+        } else if (authorityEnd > hostStart) {
+            // No port; the protocol decides whether it has a default
+            host = url.substring(hostStart, authorityEnd);
+        }
+
+        return new NodeUri(userInfo, host, port, name, params);
+    }
+
+    /**
+     * Walk a query string once, passing each decoded key=value pair to the consumer.
+     * Pairs without '=' or with an empty key are skipped.
+     */
+    static void scanQuery(String s, int from, int to, BiConsumer<String, String> consumer) {
+        int pairStart = from;
+        while (pairStart < to) {
+            int pairEnd = s.indexOf('&', pairStart);
+            if (pairEnd < 0 || pairEnd > to) {
+                pairEnd = to;
+            }
+
+            int eqIndex = s.indexOf('=', pairStart);
+            if (eqIndex > pairStart && eqIndex < pairEnd) {
+                consumer.accept(s.substring(pairStart, eqIndex), decode(s, eqIndex + 1, pairEnd));
+            }
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    /**
+     * Decode a form-encoded range the way URLDecoder does ('+' is a space, %XX runs are UTF-8),
+     * without copying when there is nothing to decode. Malformed escapes are kept as they are.
+     */
+    static String decode(String s, int from, int to) {
+        int i = from;
+        while (i < to && s.charAt(i) != '%' && s.charAt(i) != '+') {
+            i++;
+        }
+        if (i == to) {
+            return s.substring(from, to);
+        }
+
+        StringBuilder sb = new StringBuilder(to - from);
+        sb.append(s, from, i);
+        byte[] bytes = null;
+        while (i < to) {
+            char ch = s.charAt(i);
+            if (ch == '+') {
+                sb.append(' ');
+                i++;
+            } else if (ch == '%') {
+                if (bytes == null) {
+                    bytes = new byte[(to - i) / 3];
+                }
+                int count = 0;
+                while (i + 2 < to && s.charAt(i) == '%') {
+                    int high = Character.digit(s.charAt(i + 1), 16);
+                    int low = Character.digit(s.charAt(i + 2), 16);
+                    if (high < 0 || low < 0) {
+                        break;
+                    }
+                    bytes[count++] = (byte) ((high << 4) + low);
+                    i += 3;
+                }
+                if (count > 0) {
+                    sb.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+                } else {
+                    sb.append(ch);
+                    i++;
+                }
+            } else {
+                sb.append(ch);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Integer parsePort(String s, int from, int to) {
+        if (from >= to || to - from > 5) {
+            return null;
+        }
+        int port = 0;
+        for (int i = from; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            port = port * 10 + digit;
+        }
+        return port;
+    }
+
+    /**
+     * Parts of a share link; any of them may be null when absent
+     */
+    static final class NodeUri {
+        private final String userInfo;
+        private final String host;
+        private final Integer port;
+        private final String name;
+        private final Map<String, String> params;
+
+        private NodeUri(String userInfo, String host, Integer port, String name, Map<String, String> params) {
+            this.userInfo = userInfo;
+            this.host = host;
+            this.port = port;
+            this.name = name;
+            this.params = params;
+        }
+
+        String getUserInfo() { return userInfo; }
+        String getHost() { return host; }
+        Integer getPort() { return port; }
+        String getName() { return name; }
+        String getParam(String key) { return params.get(key); }
+        boolean hasParam(String key) { return params.containsKey(key); }
+    }
+
+    /**
+     * Cursor over a JSON document. Only the top-level object is decoded; nested values are
+     * skipped over in the same pass and returned as raw text. A pair that fails to parse is
+     * skipped up to the next top-level ',' or '}'.
+     */
+    private static final class JsonScanner {
+        private final String json;
+        private int pos;
+
+        private JsonScanner(String json) {
+            this.json = json;
+        }
+
+        void scanObject(BiConsumer<String, String> consumer) {
+            int open = json.indexOf('{');
+            if (open < 0) {
+                throw invalid();
+            }
+            pos = open + 1;
+            while (true) {
+                // Empty pairs and trailing commas are skipped along with the separators
+                while (pos < json.length() && (json.charAt(pos) == ',' || Character.isWhitespace(json.charAt(pos)))) {
+                    pos++;
+                }
+                if (pos >= json.length() || json.charAt(pos) == '}') {
+                    // End of the object, or a truncated one; anything after it is ignored
+                    return;
+                }
+                try {
+                    if (!readPair(consumer)) {
+                        continue;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Malformed pair, skip it
+                }
+                skipToPairEnd();
+            }
+        }
+
+        /**
+         * Read one pair and pass it to the consumer. Returns false if its value is an object or
+         * array that is never closed; reading then goes on inside it, where the pairs may be the
+         * ones that belong to the top level.
+         */
+        private boolean readPair(BiConsumer<String, String> consumer) {
+            String key = readKey();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            char ch = peek();
+            if (ch == '{' || ch == '[') {
+                int start = pos;
+                if (!skipNested()) {
+                    pos = start + 1;
+                    return false;
+                }
+                consumer.accept(key, json.substring(start, pos));
+                return true;
+            }
+            String value = readValue();
+            if (value != null) {
+                consumer.accept(key, value);
+            }
+            return true;
+        }
+
+        /**
+         * Read a key, quoted or bare
+         */
+        private String readKey() {
+            if (peek() == '"') {
+                pos++;
+                return readString();
+            }
+            int start = pos;
+            while (pos < json.length() && ":,}".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            String key = json.substring(start, pos).trim();
+            if (key.isEmpty()) {
+                throw invalid();
+            }
+            return key;
+        }
+
+        /**
+         * Read a string or literal value; null for JSON null
+         */
+        private String readValue() {
+            if (peek() == '"') {
+                pos++;
+                return readString();
+            }
+
+            // Numbers, booleans, null and unquoted strings run up to the end of the pair
+            int start = pos;
+            while (pos < json.length() && ",}".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = json.substring(start, pos).trim();
+            if (literal.isEmpty()) {
+                throw invalid();
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        /**
+         * Read the rest of a string whose opening quote has been consumed
+         */
+        private String readString() {
+            int start = pos;
+            while (pos < json.length()) {
+                char ch = json.charAt(pos);
+                if (ch == '"') {
+                    return json.substring(start, pos++);
+                }
+                if (ch == '\\') {
+                    return readEscapedString(start);
+                }
+                pos++;
+            }
+            throw invalid();
+        }
+
+        private String readEscapedString(int start) {
+            StringBuilder sb = new StringBuilder(pos - start + 16);
+            sb.append(json, start, pos);
+            while (pos < json.length()) {
+                char ch = json.charAt(pos++);
+                if (ch == '"') {
+                    return sb.toString();
+                }
+                if (ch != '\\') {
+                    sb.append(ch);
+                    continue;
+                }
+
+                char escaped = next();
+                switch (escaped) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        int code = hex4(pos);
+                        if (code < 0) {
+                            // No four hex digits follow; keep the text as it is
+                            sb.append("\\u");
+                        } else {
+                            sb.append((char) code);
+                            pos += 4;
+                        }
+                        break;
+                    default:
+                        // \" \\ \/ and anything unknown stand for the character itself
+                        sb.append(escaped);
+                }
+            }
+            throw invalid();
+        }
+
+        /**
+         * Value of the four hex digits at from, or -1 if there are not four
+         */
+        private int hex4(int from) {
+            if (from + 4 > json.length()) {
+                return -1;
+            }
+            int code = 0;
+            for (int i = from; i < from + 4; i++) {
+                int digit = Character.digit(json.charAt(i), 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                code = (code << 4) + digit;
+            }
+            return code;
+        }
+
+        /**
+         * Skip an object or array; false if the input ends before it is closed
+         */
+        private boolean skipNested() {
+            int depth = 0;
+            while (pos < json.length()) {
+                char ch = json.charAt(pos++);
+                if (ch == '"') {
+                    if (!skipString()) {
+                        return false;
+                    }
+                } else if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if ((ch == '}' || ch == ']') && --depth == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Skip the rest of a string whose opening quote has been consumed; false if the input
+         * ends before the closing quote
+         */
+        private boolean skipString() {
+            while (pos < json.length()) {
+                char ch = json.charAt(pos++);
+                if (ch == '\\') {
+                    pos++;
+                } else if (ch == '"') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Move to the ',' or '}' that ends the current pair, past anything left of it
+         */
+        private void skipToPairEnd() {
+            while (pos < json.length()) {
+                char ch = json.charAt(pos);
+                if (ch == ',' || ch == '}') {
+                    return;
+                }
+                pos++;
+                if (ch == '"') {
+                    int quoteEnd = pos;
+                    if (!skipString()) {
+                        // Unterminated quote: treat it as a plain character
+                        pos = quoteEnd;
+                    }
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            if (pos >= json.length()) {
+                throw invalid();
+            }
+            return json.charAt(pos);
+        }
+
+        private char next() {
+            char ch = peek();
+            pos++;
+            return ch;
+        }
+
+        private void expect(char expected) {
+            if (peek() != expected) {
+                throw invalid();
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException invalid() {
+            return new IllegalArgumentException("Invalid JSON at position " + pos);
+        }
+    }
+}
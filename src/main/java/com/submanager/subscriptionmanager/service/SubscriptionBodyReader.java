@@ -0,0 +1,160 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.NodeProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Streaming reader for subscription bodies.
+ *
+ * The body is read once: it is fingerprinted with SHA-256, Base64-decoded on the fly when it
+ * looks like Base64, and split into lines that are handed to the node filter one at a time.
+ * Only the node URLs are kept, and both the raw size and the line count are capped, so a huge
+ * upstream fails fast instead of being buffered in full.
+ */
+final class SubscriptionBodyReader {
+
+    private static final int SNIFF_LENGTH = 4096;
+
+    private SubscriptionBodyReader() {
+    }
+
+    /**
+     * Read a body to its end and return the node URLs found in it with the body's SHA-256
+     */
+    static Body read(InputStream in, long maxBytes, int maxLines) throws IOException {
+        MessageDigest digest = sha256();
+        BufferedInputStream raw = new BufferedInputStream(
+                new DigestInputStream(new BoundedInputStream(in, maxBytes), digest), SNIFF_LENGTH);
+        InputStream decoded = looksLikeBase64(raw) ? Base64.getMimeDecoder().wrap(raw) : raw;
+
+        List<String> nodeUrls = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(decoded, StandardCharsets.UTF_8));
+        int lineCount = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (++lineCount > maxLines) {
+                throw new IOException("Subscription has more than " + maxLines + " lines");
+            }
+            line = line.trim();
+            if (!line.isEmpty() && NodeProtocol.fromUrl(line) != null) {
+                nodeUrls.add(line);
+            }
+        }
+
+        // The Base64 decoder stops at padding; drain the rest so the hash covers the whole body
+        byte[] skip = new byte[SNIFF_LENGTH];
+        while (raw.read(skip) >= 0) {
+            // discard
+        }
+        return new Body(nodeUrls, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * Peek at the start of the body: Base64 content consists only of the Base64 alphabet and
+     * line breaks, while a plain node list contains "://"
+     */
+    private static boolean looksLikeBase64(BufferedInputStream in) throws IOException {
+        in.mark(SNIFF_LENGTH);
+        byte[] head = new byte[SNIFF_LENGTH];
+        int length = in.readNBytes(head, 0, SNIFF_LENGTH);
+        in.reset();
+
+        boolean sawData = false;
+        for (int i = 0; i < length; i++) {
+            int ch = head[i];
+            if (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n') {
+                continue;
+            }
+            boolean alphabet = (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9')
+                    || ch == '+' || ch == '/' || ch == '=';
+            if (!alphabet) {
+                return false;
+            }
+            sawData = true;
+        }
+        return sawData;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Node URLs of a subscription body and the SHA-256 of its raw bytes
+     */
+    static final class Body {
+        private final List<String> nodeUrls;
+        private final String contentHash;
+
+        private Body(List<String> nodeUrls, String contentHash) {
+            this.nodeUrls = nodeUrls;
+            this.contentHash = contentHash;
+        }
+
+        List<String> getNodeUrls() { return nodeUrls; }
+        String getContentHash() { return contentHash; }
+    }
+
+    /**
+     * Fails the read once more than the allowed number of bytes has come through
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long count;
+
+        private BoundedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws IOException {
+            count += n;
+            if (count > maxBytes) {
+                throw new IOException("Subscription body exceeds " + maxBytes + " bytes");
+            }
+        }
+    }
+}
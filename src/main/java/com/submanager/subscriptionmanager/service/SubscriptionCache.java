@@ -0,0 +1,266 @@
+package com.submanager.subscriptionmanager.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory cache of rendered subscription output, keyed by group token and target format.
+ *
+ * Entries are evicted per group whenever its nodes or settings change; the output does not
+ * depend on the group's sources. Eviction is deferred until the surrounding transaction commits.
+ * Every eviction also moves the group's eviction generation forward. A request reads the current
+ * generation before it looks the group up, and register refuses an entry for a group evicted
+ * since then, so a concurrent request can never cache content read from a snapshot that
+ * predates the change.
+ *
+ * Every entry carries a content version, which doubles as the HTTP validator of the group:
+ * a new entry is created after each eviction, so the version changes exactly when the content
+ * may have changed. The startup epoch is part of the ETag so validators never survive a restart.
+ *
+ * Renditions are kept as UTF-8 bytes; the gzip variant is compressed at most once per version,
+ * on the first request that accepts it.
+ */
+@Component
+public class SubscriptionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionCache.class);
+
+    private final ConcurrentMap<String, Entry> entriesByToken = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> lastModifiedByGroup = new ConcurrentHashMap<>();
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    // Generation of the last eviction of each group; registering and evicting hold the cache lock
+    private final AtomicLong evictionSequence = new AtomicLong();
+    private final Map<Long, Long> evictedAtByGroup = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong compressions = new AtomicLong();
+
+    /**
+     * Get the cached entry of a token, or null if the group has not been resolved yet
+     */
+    public Entry getEntry(String token) {
+        return entriesByToken.get(token);
+    }
+
+    /**
+     * Get the cached rendition of an entry for a target format, or null if it has to be rendered
+     */
+    public Rendition getRendition(Entry entry, String format) {
+        Rendition rendition = entry.renditions.get(format);
+        if (rendition != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return rendition;
+    }
+
+    /**
+     * Current eviction generation, to be read before the group is looked up for register
+     */
+    public long currentGeneration() {
+        return evictionSequence.get();
+    }
+
+    /**
+     * Register a group before rendering it. Content must be stored through the returned entry:
+     * if the group is evicted while rendering, the result lands in a detached entry and is dropped.
+     * Returns null if the group has been evicted after the given generation was read, since the
+     * group data passed in may then predate the change; the caller has to look it up again.
+     */
+    public synchronized Entry register(String token, Long groupId, long activeNodeCount, long generation) {
+        if (evictedAtByGroup.getOrDefault(groupId, 0L) > generation) {
+            return null;
+        }
+        return entriesByToken.computeIfAbsent(token, t -> newEntry(groupId, activeNodeCount));
+    }
+
+    /**
+     * An entry that is not cached, for a request that kept losing the race against evictions.
+     * Content stored through it is dropped with it.
+     */
+    public Entry detached(Long groupId, long activeNodeCount) {
+        return newEntry(groupId, activeNodeCount);
+    }
+
+    private Entry newEntry(Long groupId, long activeNodeCount) {
+        return new Entry(groupId, activeNodeCount, versionSequence.incrementAndGet(), nextLastModified(groupId));
+    }
+
+    /**
+     * Last-Modified has one second resolution, so a new version of a group must always move it
+     * forward by at least a second; otherwise a client revalidating with If-Modified-Since alone
+     * could be told that content changed within the same second is unmodified.
+     */
+    private long nextLastModified(Long groupId) {
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        return lastModifiedByGroup.merge(groupId, now, (previous, current) -> Math.max(current, previous + 1000));
+    }
+
+    /**
+     * Evict all cached output of a group once the current transaction (if any) has committed
+     */
+    public void evictGroup(Long groupId) {
+        if (groupId == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doEvictGroup(groupId);
+                }
+            });
+        } else {
+            doEvictGroup(groupId);
+        }
+    }
+
+    private synchronized void doEvictGroup(Long groupId) {
+        evictedAtByGroup.put(groupId, evictionSequence.incrementAndGet());
+        if (entriesByToken.values().removeIf(entry -> groupId.equals(entry.groupId))) {
+            evictions.incrementAndGet();
+            logger.debug("Evicted cached subscription output for group {}", groupId);
+        }
+    }
+
+    /**
+     * Cache counters, exposed through the REST API
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", requests > 0 ? hitCount * 100.0 / requests : 0);
+        stats.put("evictions", evictions.get());
+        stats.put("compressions", compressions.get());
+        stats.put("cachedGroups", entriesByToken.size());
+        return stats;
+    }
+
+    /**
+     * Rendered output of a single group, one rendition per target format
+     */
+    public class Entry {
+        private final Long groupId;
+        private final long activeNodeCount;
+        private final long version;
+        private final long lastModified;
+        private final ConcurrentMap<String, Rendition> renditions = new ConcurrentHashMap<>();
+
+        private Entry(Long groupId, long activeNodeCount, long version, long lastModified) {
+            this.groupId = groupId;
+            this.activeNodeCount = activeNodeCount;
+            this.version = version;
+            this.lastModified = lastModified;
+        }
+
+        public Long getGroupId() {
+            return groupId;
+        }
+
+        public long getActiveNodeCount() {
+            return activeNodeCount;
+        }
+
+        public Rendition put(String format, String content) {
+            Rendition rendition = new Rendition(content.getBytes(StandardCharsets.UTF_8));
+            renditions.put(format, rendition);
+            return rendition;
+        }
+
+        /**
+         * Strong validator of the rendition of this entry in the given format and content coding.
+         * Each coding is a different representation, so it needs its own validator.
+         */
+        public String getETag(String format, boolean gzip) {
+            return "\"" + epoch + "-" + version + "-" + format + (gzip ? "-gzip" : "") + "\"";
+        }
+
+        /**
+         * Time this version of the group became current, in epoch milliseconds
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Rendered output of a group in one format, with its lazily compressed gzip variant
+     */
+    public class Rendition {
+        private final byte[] bytes;
+        private volatile byte[] gzipBytes;
+
+        private Rendition(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public String getContent() {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public boolean isEmpty() {
+            return bytes.length == 0;
+        }
+
+        public byte[] getGzipBytes() {
+            byte[] compressed = gzipBytes;
+            if (compressed == null) {
+                synchronized (this) {
+                    compressed = gzipBytes;
+                    if (compressed == null) {
+                        compressed = gzip(bytes);
+                        gzipBytes = compressed;
+                        compressions.incrementAndGet();
+                    }
+                }
+            }
+            return compressed;
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        // Compressed once per version and then served many times, so spend CPU on the best ratio
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+}
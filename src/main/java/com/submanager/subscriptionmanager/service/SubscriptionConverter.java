@@ -1,108 +1,125 @@
 package com.submanager.subscriptionmanager.service;
 
+import com.submanager.subscriptionmanager.model.NodeProtocol;
 import com.submanager.subscriptionmanager.model.ProxyNode;
 import org.springframework.stereotype.Service;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class SubscriptionConverter {
 
+    /**
+     * Version of the stored Clash entries. Bump it whenever toClashProxy renders a node differently,
+     * so entries stored by an older version are re-rendered at startup.
+     */
+    public static final int CLASH_RENDER_VERSION = 3;
+
     /**
      * Convert node configs to Clash YAML format
      */
     public String toClashYaml(List<ProxyNode> nodes) {
-        List<Map<String, Object>> proxies = new ArrayList<>();
+        List<String> proxyNames = new ArrayList<>(nodes.size());
+        List<String> proxies = new ArrayList<>(nodes.size());
 
         for (ProxyNode node : nodes) {
-            try {
-                Map<String, Object> proxy = parseNodeToClashProxy(node);
-                if (proxy != null) {
-                    proxies.add(proxy);
-                }
-            } catch (Exception e) {
-                // Skip invalid nodes
-                System.err.println("Failed to parse node: " + node.getConfig());
+            String proxy = isClashProxyCurrent(node.getClashProxy(), node.getClashRenderVersion())
+                    ? node.getClashProxy() : toClashProxy(node);
+            if (!proxy.isEmpty()) {
+                proxyNames.add(node.getName());
+                proxies.add(proxy);
+            }
+        }
+
+        StringWriter out = new StringWriter(512 + proxies.size() * 256);
+        try {
+            writeClashYaml(proxyNames, proxies, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Render the Clash proxy entry of a single node, or an empty string if it has no Clash form.
+     * The result is stored with the node, so rendering a group only concatenates entries.
+     */
+    public String toClashProxy(ProxyNode node) {
+        try {
+            Map<String, Object> proxy = parseNodeToClashProxy(node);
+            return proxy != null ? ClashYamlWriter.formatProxy(proxy) : "";
+        } catch (Exception e) {
+            // Skip invalid nodes
+            System.err.println("Failed to parse node: " + node.getConfig());
+            return "";
+        }
+    }
+
+    /**
+     * Render the Clash entry of a node and store it on the node together with the renderer version
+     */
+    public void renderClashProxy(ProxyNode node) {
+        node.setClashProxy(toClashProxy(node));
+        node.setClashRenderVersion(CLASH_RENDER_VERSION);
+    }
+
+    /**
+     * Whether a stored Clash entry was rendered by the current renderer and can be used as is
+     */
+    public static boolean isClashProxyCurrent(String clashProxy, Integer renderVersion) {
+        return clashProxy != null && renderVersion != null && renderVersion == CLASH_RENDER_VERSION;
+    }
+
+    /**
+     * Write a Clash config from pre-rendered proxy entries and their names, in the same order
+     */
+    public void writeClashYaml(List<String> proxyNames, List<String> proxies, Writer out) throws IOException {
+        ClashYamlWriter.writeHeader(out);
+        if (proxies.isEmpty()) {
+            ClashYamlWriter.writeEmptyProxies(out);
+        } else {
+            ClashYamlWriter.writeProxiesKey(out);
+            for (String proxy : proxies) {
+                out.write(proxy);
             }
         }
 
-        // Build Clash config
-        Map<String, Object> clashConfig = new LinkedHashMap<>();
-
-        // Port settings
-        clashConfig.put("port", 7890);
-        clashConfig.put("socks-port", 7891);
-        clashConfig.put("allow-lan", false);
-        clashConfig.put("mode", "Rule");
-        clashConfig.put("log-level", "info");
-        clashConfig.put("external-controller", "127.0.0.1:9090");
-
-        // Proxies
-        clashConfig.put("proxies", proxies);
-
-        // Proxy groups
-        List<Map<String, Object>> proxyGroups = new ArrayList<>();
-        Map<String, Object> selectGroup = new LinkedHashMap<>();
-        selectGroup.put("name", "PROXY");
-        selectGroup.put("type", "select");
-        List<String> proxyNames = proxies.stream()
-                .map(p -> (String) p.get("name"))
-                .collect(Collectors.toList());
-        proxyNames.add(0, "DIRECT");
-        selectGroup.put("proxies", proxyNames);
-        proxyGroups.add(selectGroup);
-        clashConfig.put("proxy-groups", proxyGroups);
-
-        // Basic rules
-        List<String> rules = Arrays.asList(
-                "DOMAIN-SUFFIX,google.com,PROXY",
-                "DOMAIN-KEYWORD,google,PROXY",
-                "DOMAIN,google.com,PROXY",
-                "DOMAIN-SUFFIX,github.com,PROXY",
-                "GEOIP,CN,DIRECT",
-                "MATCH,PROXY"
-        );
-        clashConfig.put("rules", rules);
-
-        // Convert to YAML
-        DumperOptions options = new DumperOptions();
-        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-        options.setPrettyFlow(true);
-        Yaml yaml = new Yaml(options);
-
-        return yaml.dump(clashConfig);
+        ClashYamlWriter.writeProxyGroups(out, proxyNames);
+        ClashYamlWriter.writeRules(out);
     }
 
     /**
      * Parse node to Clash proxy format using database fields
      */
     private Map<String, Object> parseNodeToClashProxy(ProxyNode node) {
-        String nodeConfig = node.getConfig();
-        if (nodeConfig.startsWith("vmess://")) {
-            return parseVMessToClash(node);
-        } else if (nodeConfig.startsWith("vless://")) {
-            return parseVLESSToClash(node);
-        } else if (nodeConfig.startsWith("trojan://")) {
-            return parseTrojanToClash(node);
-        } else if (nodeConfig.startsWith("ss://")) {
-            return parseShadowsocksToClash(node);
+        NodeProtocol protocol = NodeProtocol.fromUrl(node.getConfig());
+        if (protocol == null) {
+            return null;
         }
-        return null;
+        return switch (protocol) {
+            case VMESS -> parseVMessToClash(node);
+            case VLESS -> parseVLESSToClash(node);
+            case TROJAN -> parseTrojanToClash(node);
+            case SHADOWSOCKS -> parseShadowsocksToClash(node);
+            case HYSTERIA -> parseHysteriaToClash(node);
+            case HYSTERIA2 -> parseHysteria2ToClash(node);
+        };
     }
 
     private Map<String, Object> parseVMessToClash(ProxyNode node) {
         try {
             // Decode vmess:// URL to get defaults
             String vmessUrl = node.getConfig();
-            String encoded = vmessUrl.substring(8); // Remove "vmess://"
+            String encoded = vmessUrl.substring(NodeProtocol.contentStart(vmessUrl)); // Remove "vmess://"
             String decoded = new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
 
             // Parse JSON for fallback values
-            Map<String, Object> vmess = parseJson(decoded);
+            Map<String, String> vmess = NodeUriScanner.parseJson(decoded);
 
             Map<String, Object> proxy = new LinkedHashMap<>();
 
@@ -463,27 +480,107 @@ public class SubscriptionConverter {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> parseJson(String json) {
-        // Simple JSON parser for VMess config
-        json = json.trim();
-        if (!json.startsWith("{") || !json.endsWith("}")) {
-            throw new IllegalArgumentException("Invalid JSON");
+    private Map<String, Object> parseHysteriaToClash(ProxyNode node) {
+        try {
+            // Options without a database field are read from the URL
+            String url = node.getConfig();
+            NodeUriScanner.NodeUri uri = NodeUriScanner.scanUri(url, NodeProtocol.contentStart(url));
+
+            // Rows stored before hysteria links were parsed have no server, port or auth columns
+            String server = node.getServer() != null ? node.getServer() : uri.getHost();
+            Integer port = node.getPort() != null ? node.getPort() : uri.getPort();
+            if (server == null || server.isEmpty() || port == null) {
+                return null;
+            }
+            String auth = node.getUuid() != null ? node.getUuid() : uri.getParam("auth");
+            if (auth == null && uri.getUserInfo() != null) {
+                auth = NodeUriScanner.decode(uri.getUserInfo(), 0, uri.getUserInfo().length());
+            }
+            String protocol = node.getNetwork() != null ? node.getNetwork() : uri.getParam("protocol");
+            String sni = node.getSni() != null ? node.getSni() : uri.getParam("peer");
+
+            Map<String, Object> proxy = new LinkedHashMap<>();
+            proxy.put("name", node.getName());
+            proxy.put("type", "hysteria");
+            proxy.put("server", server);
+            proxy.put("port", port);
+            if (auth != null && !auth.isEmpty()) {
+                proxy.put("auth-str", auth);
+            }
+            if (protocol != null && !protocol.isEmpty()) {
+                proxy.put("protocol", protocol);
+            }
+            if (uri.hasParam("upmbps")) {
+                proxy.put("up", uri.getParam("upmbps") + " Mbps");
+            }
+            if (uri.hasParam("downmbps")) {
+                proxy.put("down", uri.getParam("downmbps") + " Mbps");
+            }
+            if (sni != null && !sni.isEmpty()) {
+                proxy.put("sni", sni);
+            }
+            proxy.put("skip-cert-verify", isTrue(uri.getParam("insecure")));
+            if (uri.hasParam("alpn")) {
+                proxy.put("alpn", Arrays.asList(uri.getParam("alpn").split(",")));
+            }
+            if (uri.hasParam("obfsParam")) {
+                proxy.put("obfs", uri.getParam("obfsParam"));
+            }
+
+            return proxy;
+        } catch (Exception e) {
+            System.err.println("Failed to parse Hysteria to Clash: " + e.getMessage());
+            return null;
         }
+    }
 
-        Map<String, Object> result = new LinkedHashMap<>();
-        json = json.substring(1, json.length() - 1); // Remove { }
+    private Map<String, Object> parseHysteria2ToClash(ProxyNode node) {
+        try {
+            // Options without a database field are read from the URL
+            String url = node.getConfig();
+            NodeUriScanner.NodeUri uri = NodeUriScanner.scanUri(url, NodeProtocol.contentStart(url));
+
+            // Rows stored before hysteria2 links were parsed have no server, port or password columns;
+            // a link without a port uses the Hysteria2 default of 443
+            String server = node.getServer() != null ? node.getServer() : uri.getHost();
+            Integer port = node.getPort() != null ? node.getPort() : uri.getPort();
+            if (port == null) {
+                port = 443;
+            }
+            String password = node.getUuid();
+            if (password == null && uri.getUserInfo() != null) {
+                password = NodeUriScanner.decode(uri.getUserInfo(), 0, uri.getUserInfo().length());
+            }
+            if (server == null || server.isEmpty() || port == null || password == null || password.isEmpty()) {
+                return null;
+            }
+            String sni = node.getSni() != null ? node.getSni() : uri.getParam("sni");
 
-        String[] pairs = json.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)"); // Split by comma not in quotes
-        for (String pair : pairs) {
-            String[] kv = pair.split(":", 2);
-            if (kv.length == 2) {
-                String key = kv[0].trim().replaceAll("\"", "");
-                String value = kv[1].trim().replaceAll("\"", "");
-                result.put(key, value);
+            Map<String, Object> proxy = new LinkedHashMap<>();
+            proxy.put("name", node.getName());
+            proxy.put("type", "hysteria2");
+            proxy.put("server", server);
+            proxy.put("port", port);
+            proxy.put("password", password);
+            if (sni != null && !sni.isEmpty()) {
+                proxy.put("sni", sni);
             }
+            proxy.put("skip-cert-verify", isTrue(uri.getParam("insecure")));
+            if (uri.hasParam("obfs")) {
+                proxy.put("obfs", uri.getParam("obfs"));
+                if (uri.hasParam("obfs-password")) {
+                    proxy.put("obfs-password", uri.getParam("obfs-password"));
+                }
+            }
+
+            return proxy;
+        } catch (Exception e) {
+            System.err.println("Failed to parse Hysteria2 to Clash: " + e.getMessage());
+            return null;
         }
+    }
 
-        return result;
+    private boolean isTrue(String flag) {
+        return "1".equals(flag) || "true".equalsIgnoreCase(flag);
     }
 }
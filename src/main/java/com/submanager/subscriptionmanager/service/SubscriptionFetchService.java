@@ -1,5 +1,6 @@
 package com.submanager.subscriptionmanager.service;
 
+import com.submanager.subscriptionmanager.model.NodeProtocol;
 import com.submanager.subscriptionmanager.model.ProxyNode;
 import com.submanager.subscriptionmanager.model.SubscriptionGroup;
 import com.submanager.subscriptionmanager.model.SubscriptionSource;
@@ -7,19 +8,42 @@ import com.submanager.subscriptionmanager.repository.ProxyNodeRepository;
 import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 @Service
 public class SubscriptionFetchService {
@@ -40,244 +64,565 @@ public class SubscriptionFetchService {
     @Autowired
     private NodeSaveService nodeSaveService;
 
+    @Autowired
+    private NodeIngestService nodeIngestService;
+
+    @Value("${app.subscription.refresh-concurrency:8}")
+    private int refreshConcurrency;
+
+    @Value("${app.subscription.refresh-per-host:2}")
+    private int refreshPerHost;
+
+    @Value("${app.subscription.refresh-timeout-seconds:60}")
+    private int refreshTimeoutSeconds;
+
+    @Value("${app.subscription.max-body-bytes:16777216}")
+    private long maxBodyBytes;
+
+    @Value("${app.subscription.max-body-lines:100000}")
+    private int maxBodyLines;
+
+    @Value("${app.subscription.user-agent:Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36}")
+    private String userAgent;
+
+    @Value("${app.subscription.http2:true}")
+    private boolean http2;
+
+    @Value("${app.subscription.backoff-base-minutes:5}")
+    private int backoffBaseMinutes;
+
+    @Value("${app.subscription.backoff-max-hours:168}")
+    private int backoffMaxHours;
+
+    @Value("${app.subscription.circuit-failure-threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${app.subscription.circuit-open-hours:6}")
+    private int circuitOpenHours;
+
+    private HttpClient httpClient;
+
+    private ExecutorService refreshExecutor;
+
+    private ScheduledExecutorService deadlineTimer;
+
+    @PostConstruct
+    void startExecutors() {
+        refreshExecutor = Executors.newFixedThreadPool(Math.max(1, refreshConcurrency),
+                daemonThreads("subscription-refresh-"));
+        deadlineTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("subscription-deadline-"));
+
+        // One client for all upstreams, so connections (and TLS sessions) are pooled across refreshes
+        httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(CONNECTION_TIMEOUT))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @PreDestroy
+    void stopExecutors() {
+        refreshExecutor.shutdownNow();
+        deadlineTimer.shutdownNow();
+    }
+
     /**
-     * Fetch subscription content from URL
+     * Fetch subscription content of a source and extract its node URLs while streaming the body.
+     * When the validators of a previous fetch are given they are sent as If-None-Match /
+     * If-Modified-Since, and a 304 comes back as a not-modified result.
      */
-    public String fetchSubscriptionContent(String subscriptionUrl) throws Exception {
-        logger.info("Fetching subscription from: {}", subscriptionUrl);
-
-        URL url = new URL(subscriptionUrl);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    public UpstreamContent fetchSubscriptionContent(SubscriptionSource source, String etag, String lastModified) throws Exception {
+        logger.info("Fetching subscription from: {}", source.getUrl());
+        long startedAt = System.nanoTime();
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(source.getUrl()))
+                .timeout(Duration.ofMillis(READ_TIMEOUT))
+                .header("User-Agent", userAgent)
+                .header("Accept-Encoding", "gzip, deflate");
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+        applyRequestHeaders(request, source);
 
+        HttpResponse<InputStream> response;
         try {
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(CONNECTION_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-
-            int responseCode = connection.getResponseCode();
-            if (responseCode != 200) {
-                throw new Exception("HTTP error code: " + responseCode);
+            response = httpClient.send(request.GET().build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (HttpTimeoutException e) {
+            throw new Exception("No response from upstream within " + READ_TIMEOUT / 1000 + "s", e);
+        }
+
+        // Hard deadline for the request and body download: closing the body stream ends any pending
+        // read. Reconciling the parsed nodes afterwards is not covered; it only runs short,
+        // chunked database transactions.
+        InputStream bodyStream = response.body();
+        AtomicBoolean expired = new AtomicBoolean();
+        long remaining = TimeUnit.SECONDS.toNanos(refreshTimeoutSeconds) - (System.nanoTime() - startedAt);
+        ScheduledFuture<?> deadline = deadlineTimer.schedule(() -> {
+            expired.set(true);
+            closeQuietly(bodyStream);
+        }, Math.max(0, remaining), TimeUnit.NANOSECONDS);
+
+        try (InputStream in = bodyStream) {
+            if (response.statusCode() == 304) {
+                return UpstreamContent.notModified();
+            }
+            if (response.statusCode() != 200) {
+                throw new Exception("HTTP error code: " + response.statusCode());
             }
 
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-                return reader.lines().collect(Collectors.joining("\n"));
+            SubscriptionBodyReader.Body body = SubscriptionBodyReader.read(decodeBody(in, response),
+                    maxBodyBytes, maxBodyLines);
+            logger.info("Parsed {} nodes from subscription content", body.getNodeUrls().size());
+            return new UpstreamContent(body.getNodeUrls(), body.getContentHash(),
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+        } catch (IOException e) {
+            if (expired.get()) {
+                throw new Exception("Subscription fetch exceeded " + refreshTimeoutSeconds + "s deadline", e);
             }
+            throw e;
         } finally {
-            connection.disconnect();
+            deadline.cancel(false);
         }
     }
 
     /**
-     * Parse subscription content to node URLs
+     * Apply the source's own request headers, one "Name: value" per line, over the defaults
      */
-    public List<String> parseSubscriptionContent(String content) {
-        List<String> nodeUrls = new ArrayList<>();
+    private void applyRequestHeaders(HttpRequest.Builder request, SubscriptionSource source) {
+        String headers = source.getRequestHeaders();
+        if (headers == null || headers.isBlank()) {
+            return;
+        }
 
-        try {
-            // Try to decode as Base64 first
-            String decoded;
+        for (String line : headers.split("\\r?\\n")) {
+            int colonIndex = line.indexOf(':');
+            if (colonIndex <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colonIndex).trim();
+            String value = line.substring(colonIndex + 1).trim();
             try {
-                decoded = new String(Base64.getDecoder().decode(content.trim()), StandardCharsets.UTF_8);
+                request.setHeader(name, value);
             } catch (IllegalArgumentException e) {
-                // If not Base64, use as is
-                decoded = content;
-            }
-
-            // Split by newlines and filter valid node URLs
-            String[] lines = decoded.split("\\r?\\n");
-            for (String line : lines) {
-                line = line.trim();
-                if (!line.isEmpty() && isValidNodeUrl(line)) {
-                    nodeUrls.add(line);
-                }
+                logger.warn("Ignoring request header {} of subscription source {}: {}", name, source.getId(), e.getMessage());
             }
-
-            logger.info("Parsed {} nodes from subscription content", nodeUrls.size());
-        } catch (Exception e) {
-            logger.error("Error parsing subscription content", e);
         }
-
-        return nodeUrls;
     }
 
     /**
-     * Check if a string is a valid node URL
+     * Undo the Content-Encoding of a response body
      */
-    private boolean isValidNodeUrl(String url) {
-        if (url == null || url.isEmpty()) {
-            return false;
+    private static InputStream decodeBody(InputStream in, HttpResponse<?> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "":
+            case "identity":
+                return in;
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(in);
+            case "deflate":
+                return new InflaterInputStream(in);
+            default:
+                throw new IOException("Unsupported Content-Encoding: " + encoding);
         }
+    }
 
-        String lowerUrl = url.toLowerCase();
-        return lowerUrl.startsWith("vmess://") ||
-               lowerUrl.startsWith("vless://") ||
-               lowerUrl.startsWith("trojan://") ||
-               lowerUrl.startsWith("ss://") ||
-               lowerUrl.startsWith("hysteria://") ||
-               lowerUrl.startsWith("hysteria2://") ||
-               lowerUrl.startsWith("hy2://");
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to do; the reader fails on its next read
+        }
     }
 
     /**
-     * Update nodes from a subscription source
+     * Update nodes from a subscription source by reconciling the stored nodes with the upstream
+     * list: only added, removed and renamed nodes are written. Returns the number of nodes the
+     * source now has.
      */
     public int updateNodesFromSubscription(Long subscriptionSourceId) {
+        return updateNodesFromSubscription(subscriptionSourceId, false);
+    }
+
+    /**
+     * Update nodes from a subscription source. Unless forced, the upstream is asked for changes
+     * since the last successful import, and an unchanged body (304, or the same SHA-256) is not
+     * parsed or reconciled at all. Unforced refreshes of a source whose circuit is open are
+     * skipped until its retry time; the first refresh after that is a half-open probe.
+     *
+     * Deletes, renames and inserts each commit in chunks of their own, so a refresh that fails
+     * partway keeps what it already committed: removed nodes may be gone while new ones are still
+     * missing. The failure is recorded without validators or content hash, so the next refresh
+     * fetches and reconciles the whole body again and completes the source from that state.
+     */
+    public int updateNodesFromSubscription(Long subscriptionSourceId, boolean force) {
         logger.info("Updating nodes from subscription source: {}", subscriptionSourceId);
 
         SubscriptionSource source = subscriptionSourceRepository.findById(subscriptionSourceId)
                 .orElseThrow(() -> new RuntimeException("Subscription source not found"));
 
+        if (!"CLOSED".equals(circuitState(source))) {
+            if (!force && source.getRetryAfter() != null && LocalDateTime.now().isBefore(source.getRetryAfter())) {
+                logger.info("Skipping subscription source {}: circuit open until {}",
+                        subscriptionSourceId, source.getRetryAfter());
+                return source.getNodeCount() != null ? source.getNodeCount() : 0;
+            }
+            logger.info("Probing subscription source {} after {} consecutive failures",
+                    subscriptionSourceId, source.getConsecutiveFailures());
+            nodeSaveService.updateSubscriptionSourceCircuit(subscriptionSourceId, "HALF_OPEN");
+        }
+
+        // Validators are only trusted while the stored nodes reflect the body they describe
+        boolean conditional = !force && "SUCCESS".equals(source.getLastUpdateStatus());
+
         try {
             // Fetch subscription content
-            String content = fetchSubscriptionContent(source.getUrl());
+            UpstreamContent upstream = fetchSubscriptionContent(source,
+                    conditional ? source.getUpstreamEtag() : null,
+                    conditional ? source.getUpstreamLastModified() : null);
+            int currentCount = source.getNodeCount() != null ? source.getNodeCount() : 0;
+
+            if (upstream.isNotModified()) {
+                logger.info("Subscription source {} not modified upstream", subscriptionSourceId);
+                nodeSaveService.updateSubscriptionSourceStatus(subscriptionSourceId, "SUCCESS",
+                    source.getLastErrorMessage(), currentCount, LocalDateTime.now());
+                return currentCount;
+            }
+
+            String contentHash = upstream.getContentHash();
+            if (conditional && contentHash.equals(source.getContentHash())) {
+                logger.info("Subscription source {} content unchanged", subscriptionSourceId);
+                nodeSaveService.updateSubscriptionSourceStatus(subscriptionSourceId, "SUCCESS",
+                    source.getLastErrorMessage(), currentCount, LocalDateTime.now(),
+                    upstream.getEtag(), upstream.getLastModified(), contentHash);
+                return currentCount;
+            }
 
-            // Parse node URLs
-            List<String> nodeUrls = parseSubscriptionContent(content);
+            List<String> nodeUrls = upstream.getNodeUrls();
 
             if (nodeUrls.isEmpty()) {
                 logger.warn("No valid nodes found in subscription: {}", source.getUrl());
                 nodeSaveService.updateSubscriptionSourceStatus(subscriptionSourceId, "SUCCESS",
-                    "No nodes found in subscription", 0, LocalDateTime.now());
+                    "No nodes found in subscription", 0, LocalDateTime.now(), null, null, null);
                 return 0;
             }
 
             SubscriptionGroup group = source.getSubscriptionGroup();
+            String sourcePrefix = source.getName() != null ? source.getName() : "Sub";
 
-            // Delete old nodes from this subscription source before adding new ones
-            try {
-                List<ProxyNode> oldNodes = proxyNodeRepository.findBySubscriptionSourceId(subscriptionSourceId);
-                if (!oldNodes.isEmpty()) {
-                    logger.info("Deleting {} old nodes from subscription source {}", oldNodes.size(), subscriptionSourceId);
-                    proxyNodeRepository.deleteAll(oldNodes);
+            // Index the stored nodes of this source by content key; duplicates queue up in id order
+            Map<String, Deque<ProxyNodeRepository.SourceNodeRow>> storedByKey = new HashMap<>();
+            for (ProxyNodeRepository.SourceNodeRow row : proxyNodeRepository.findSourceNodeRows(subscriptionSourceId)) {
+                String key = row.getContentKey() != null ? row.getContentKey() : NodeIngestService.contentKey(row.getConfig());
+                storedByKey.computeIfAbsent(key, k -> new ArrayDeque<>()).add(row);
+            }
+
+            // Match upstream nodes against stored ones. Unchanged nodes keep their row, id and
+            // health data and are not written at all, unless their name no longer carries the
+            // source prefix or the row predates content keys.
+            Set<Integer> usedNumbers = new HashSet<>();
+            List<ProxyNodeRepository.SourceNodeRow> staleRows = new ArrayList<>();
+            List<String> staleUrls = new ArrayList<>();
+            List<String> newUrls = new ArrayList<>();
+            int keptCount = 0;
+
+            for (String nodeUrl : nodeUrls) {
+                Deque<ProxyNodeRepository.SourceNodeRow> rows = storedByKey.get(NodeIngestService.contentKey(nodeUrl));
+                ProxyNodeRepository.SourceNodeRow row = rows != null ? rows.poll() : null;
+                if (row == null) {
+                    newUrls.add(nodeUrl);
+                    continue;
+                }
+
+                int number = nodeNumber(row.getName(), sourcePrefix);
+                if (number > 0 && usedNumbers.add(number) && row.getContentKey() != null) {
+                    keptCount++;
+                } else {
+                    staleRows.add(row);
+                    staleUrls.add(nodeUrl);
                 }
-            } catch (Exception e) {
-                logger.warn("Failed to delete old nodes: {}", e.getMessage());
             }
 
-            int addedCount = 0;
+            List<Long> removedIds = new ArrayList<>();
+            for (Deque<ProxyNodeRepository.SourceNodeRow> rows : storedByKey.values()) {
+                for (ProxyNodeRepository.SourceNodeRow row : rows) {
+                    removedIds.add(row.getId());
+                }
+            }
+
+            // Remove nodes that are gone upstream first, so their numbers can be reused
+            nodeIngestService.delete(group.getId(), removedIds);
+
             int failedCount = 0;
-            int nodeIndex = 1; // Start node numbering from 1
-            String sourcePrefix = source.getName() != null ? source.getName() : "Sub";
+            int[] nextNumber = {1};
+            List<ProxyNode> renamedNodes = new ArrayList<>(staleRows.size());
+            for (int i = 0; i < staleRows.size(); i++) {
+                ProxyNodeRepository.SourceNodeRow row = staleRows.get(i);
+                ProxyNode node = parseNode(staleUrls.get(i), group, subscriptionSourceId);
+                if (node == null) {
+                    // Cannot be renamed sensibly; leave the stored row as it is
+                    keptCount++;
+                    continue;
+                }
+                int number = nodeNumber(row.getName(), sourcePrefix);
+                if (number <= 0 || !usedNumbers.add(number)) {
+                    number = nextFreeNumber(usedNumbers, nextNumber);
+                }
+                node.setId(row.getId());
+                node.setName(nodeName(sourcePrefix, number, node.getName()));
+                node.setContentKey(NodeIngestService.contentKey(row.getConfig()));
+                renamedNodes.add(node);
+            }
+            nodeIngestService.rename(group.getId(), renamedNodes);
 
-            for (int i = 0; i < nodeUrls.size(); i++) {
-                String nodeUrl = nodeUrls.get(i);
-                try {
-                    ProxyNode node = new ProxyNode();
-                    node.setConfig(nodeUrl);
-                    node.setSubscriptionGroup(group);
-                    node.setSubscriptionSourceId(subscriptionSourceId); // Track the source
-
-                    // Determine node type from URL prefix
-                    String lowerUrl = nodeUrl.toLowerCase();
-                    if (lowerUrl.startsWith("vmess://")) {
-                        node.setType("vmess");
-                    } else if (lowerUrl.startsWith("vless://")) {
-                        node.setType("vless");
-                    } else if (lowerUrl.startsWith("trojan://")) {
-                        node.setType("trojan");
-                    } else if (lowerUrl.startsWith("ss://")) {
-                        node.setType("shadowsocks");
-                    } else if (lowerUrl.startsWith("hysteria://")) {
-                        node.setType("hysteria");
-                    } else if (lowerUrl.startsWith("hysteria2://") || lowerUrl.startsWith("hy2://")) {
-                        node.setType("hysteria2");
-                    } else {
-                        logger.warn("Unknown node type for URL: {}", nodeUrl);
-                        failedCount++;
-                        continue;
-                    }
-
-                    // Try to parse the node details
-                    nodeParser.parseAndPopulateNode(node);
-
-                    // Generate a unique name: SourceName-N or SourceName-N-ParsedName
-                    String parsedName = node.getName();
-                    boolean hasMeaningfulName = parsedName != null &&
-                                               !parsedName.trim().isEmpty() &&
-                                               !parsedName.equals("-") &&
-                                               !parsedName.equals("null");
-
-                    StringBuilder nameBuilder = new StringBuilder();
-                    nameBuilder.append(sourcePrefix).append("-").append(nodeIndex);
-
-                    // Optionally append parsed name if it's meaningful
-                    if (hasMeaningfulName) {
-                        nameBuilder.append("-").append(parsedName);
-                    }
-
-                    node.setName(nameBuilder.toString());
-                    node.setIsActive(true);
-
-                    // Save in a separate transaction to avoid rollback issues
-                    if (nodeSaveService.saveNode(node)) {
-                        addedCount++;
-                        nodeIndex++; // Only increment on successful save
-                        logger.info("Successfully saved node: {} ({})", node.getName(), node.getType());
-                    } else {
-                        failedCount++;
-                        logger.warn("Failed to save node: {}", nodeUrl);
-                    }
-                } catch (Exception e) {
-                    logger.error("Failed to parse node: {}", nodeUrl, e);
+            List<ProxyNode> parsedNodes = new ArrayList<>(newUrls.size());
+            for (String nodeUrl : newUrls) {
+                ProxyNode node = parseNode(nodeUrl, group, subscriptionSourceId);
+                if (node == null) {
                     failedCount++;
+                    continue;
                 }
+                node.setName(nodeName(sourcePrefix, nextFreeNumber(usedNumbers, nextNumber), node.getName()));
+                node.setIsActive(true);
+                parsedNodes.add(node);
             }
 
+            // Store the new nodes in batched inserts
+            NodeIngestService.IngestResult result = nodeIngestService.ingest(group.getId(), parsedNodes);
+            int addedCount = result.getSucceeded();
+            failedCount += result.getFailed();
+            int nodeCount = keptCount + renamedNodes.size() + addedCount;
+
             // Update subscription source status in a separate transaction
             // If all nodes failed, mark as FAILED
-            if (addedCount == 0 && failedCount > 0) {
-                nodeSaveService.updateSubscriptionSourceStatus(subscriptionSourceId, "FAILED",
-                    "All " + failedCount + " nodes failed to import", 0, LocalDateTime.now());
+            // Remember the upstream validators so an unchanged body can be skipped next time
+            if (nodeCount == 0 && failedCount > 0) {
+                recordFailure(source, "All " + failedCount + " nodes failed to import");
             } else {
                 String statusMessage = failedCount > 0 ? failedCount + " nodes failed to import" : null;
                 nodeSaveService.updateSubscriptionSourceStatus(subscriptionSourceId, "SUCCESS",
-                    statusMessage, addedCount, LocalDateTime.now());
+                    statusMessage, nodeCount, LocalDateTime.now(),
+                    upstream.getEtag(), upstream.getLastModified(), contentHash);
             }
 
-            logger.info("Successfully added {} nodes, failed: {}", addedCount, failedCount);
-            return addedCount;
+            logger.info("Reconciled subscription source {}: {} unchanged, {} updated, {} added, {} removed, {} failed",
+                    subscriptionSourceId, keptCount, renamedNodes.size(), addedCount, removedIds.size(), failedCount);
+            return nodeCount;
 
         } catch (Exception e) {
             logger.error("Error updating subscription source: {}", subscriptionSourceId, e);
 
             // Update subscription source with error in a separate transaction
-            nodeSaveService.updateSubscriptionSourceStatus(subscriptionSourceId, "FAILED",
-                e.getMessage(), 0, LocalDateTime.now());
+            recordFailure(source, e.getMessage());
 
             throw new RuntimeException("Failed to update subscription: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Update all subscription sources that need updating
+     * Record a failed refresh and back the source off. Below the failure threshold the retry
+     * delay doubles from backoff-base-minutes but never exceeds the source's own interval; from
+     * the threshold on the circuit is open, and the delay doubles from circuit-open-hours up to
+     * backoff-max-hours.
+     */
+    private void recordFailure(SubscriptionSource source, String errorMessage) {
+        int failures = (source.getConsecutiveFailures() != null ? source.getConsecutiveFailures() : 0) + 1;
+        int threshold = Math.max(1, circuitFailureThreshold);
+        Duration maxDelay = Duration.ofHours(Math.max(1, backoffMaxHours));
+
+        String circuitState;
+        Duration delay;
+        if (failures < threshold) {
+            int intervalHours = source.getUpdateInterval() != null && source.getUpdateInterval() > 0
+                    ? source.getUpdateInterval() : 24;
+            circuitState = "CLOSED";
+            delay = min(doubled(Duration.ofMinutes(Math.max(1, backoffBaseMinutes)), failures - 1),
+                    Duration.ofHours(intervalHours));
+        } else {
+            circuitState = "OPEN";
+            delay = doubled(Duration.ofHours(Math.max(1, circuitOpenHours)), failures - threshold);
+        }
+        delay = min(delay, maxDelay);
+
+        LocalDateTime now = LocalDateTime.now();
+        if ("OPEN".equals(circuitState) && failures == threshold) {
+            logger.warn("Opening circuit of subscription source {} after {} consecutive failures",
+                    source.getId(), failures);
+        }
+        nodeSaveService.recordSubscriptionSourceFailure(source.getId(), errorMessage, now,
+                failures, circuitState, now.plus(delay));
+    }
+
+    private static Duration doubled(Duration base, int times) {
+        return base.multipliedBy(1L << Math.min(Math.max(0, times), 20));
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static String circuitState(SubscriptionSource source) {
+        return source.getCircuitState() != null ? source.getCircuitState() : "CLOSED";
+    }
+
+    /**
+     * Build a node for an upstream URL with its parsed details, or null if its type is unknown
+     */
+    private ProxyNode parseNode(String nodeUrl, SubscriptionGroup group, Long subscriptionSourceId) {
+        NodeProtocol protocol = NodeProtocol.fromUrl(nodeUrl);
+        if (protocol == null) {
+            logger.warn("Unknown node type for URL: {}", nodeUrl);
+            return null;
+        }
+
+        ProxyNode node = new ProxyNode();
+        node.setConfig(nodeUrl);
+        node.setType(protocol.getType());
+        node.setSubscriptionGroup(group);
+        node.setSubscriptionSourceId(subscriptionSourceId); // Track the source
+        nodeParser.parseAndPopulateNode(node, protocol);
+        return node;
+    }
+
+    /**
+     * Generate a unique name: SourceName-N or SourceName-N-ParsedName
+     */
+    private String nodeName(String sourcePrefix, int number, String parsedName) {
+        boolean hasMeaningfulName = parsedName != null &&
+                                   !parsedName.trim().isEmpty() &&
+                                   !parsedName.equals("-") &&
+                                   !parsedName.equals("null");
+
+        StringBuilder nameBuilder = new StringBuilder();
+        nameBuilder.append(sourcePrefix).append("-").append(number);
+
+        // Optionally append parsed name if it's meaningful
+        if (hasMeaningfulName) {
+            nameBuilder.append("-").append(parsedName);
+        }
+        return nameBuilder.toString();
+    }
+
+    /**
+     * The N of a name generated by {@link #nodeName}, or 0 if the name was not generated for this prefix
      */
-    public void updateAllDueSubscriptions() {
-        logger.info("Starting automatic subscription update check");
+    private int nodeNumber(String name, String sourcePrefix) {
+        if (name == null || name.length() <= sourcePrefix.length() + 1
+                || !name.startsWith(sourcePrefix) || name.charAt(sourcePrefix.length()) != '-') {
+            return 0;
+        }
 
-        List<SubscriptionSource> sources = subscriptionSourceRepository.findByAutoUpdateTrueAndIsActiveTrue();
+        int number = 0;
+        int i = sourcePrefix.length() + 1;
+        for (; i < name.length() && Character.isDigit(name.charAt(i)) && number < 100_000_000; i++) {
+            number = number * 10 + (name.charAt(i) - '0');
+        }
+        boolean terminated = i == name.length() || name.charAt(i) == '-';
+        return terminated ? number : 0;
+    }
 
+    /**
+     * Smallest node number not yet taken, scanning upwards from the cursor
+     */
+    private int nextFreeNumber(Set<Integer> usedNumbers, int[] cursor) {
+        while (!usedNumbers.add(cursor[0])) {
+            cursor[0]++;
+        }
+        return cursor[0]++;
+    }
+
+    /**
+     * Refresh the given subscription sources in the background.
+     *
+     * Sources are refreshed concurrently on the refresh pool. Sources on the same upstream host
+     * are split into at most refresh-per-host lanes that run one after another, so a slow host
+     * only holds back its own sources and never gets more than that many parallel requests.
+     * The returned future completes when every source has been refreshed or has failed.
+     * refresh-timeout-seconds bounds each upstream fetch, not the whole refresh of a source.
+     */
+    public CompletableFuture<Void> refreshSources(List<SubscriptionSource> sources) {
+        Map<String, List<Long>> sourcesByHost = new LinkedHashMap<>();
         for (SubscriptionSource source : sources) {
-            try {
-                // Check if update is due
-                if (source.getLastUpdated() == null) {
-                    // Never updated, update now
-                    updateNodesFromSubscription(source.getId());
-                } else {
-                    LocalDateTime nextUpdate = source.getLastUpdated()
-                            .plusHours(source.getUpdateInterval());
+            sourcesByHost.computeIfAbsent(hostOf(source.getUrl()), k -> new ArrayList<>()).add(source.getId());
+        }
 
-                    if (LocalDateTime.now().isAfter(nextUpdate)) {
-                        logger.info("Subscription source {} is due for update", source.getId());
-                        updateNodesFromSubscription(source.getId());
-                    }
+        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (List<Long> sourceIds : sourcesByHost.values()) {
+            int laneCount = Math.min(Math.max(1, refreshPerHost), sourceIds.size());
+            for (int lane = 0; lane < laneCount; lane++) {
+                CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+                for (int i = lane; i < sourceIds.size(); i += laneCount) {
+                    Long sourceId = sourceIds.get(i);
+                    chain = chain.thenRunAsync(() -> refreshDueSource(sourceId), refreshExecutor);
                 }
-            } catch (Exception e) {
-                logger.error("Error updating subscription source {}", source.getId(), e);
+                lanes.add(chain);
             }
         }
+        return CompletableFuture.allOf(lanes.toArray(new CompletableFuture[0]));
+    }
+
+    private void refreshDueSource(Long sourceId) {
+        try {
+            updateNodesFromSubscription(sourceId);
+        } catch (Exception e) {
+            logger.error("Error updating subscription source {}", sourceId, e);
+        }
+    }
+
+    /**
+     * Host part of a subscription URL, used to bound concurrent requests per upstream
+     */
+    private static String hostOf(String subscriptionUrl) {
+        try {
+            String host = URI.create(subscriptionUrl).getHost();
+            if (host != null) {
+                return host.toLowerCase(Locale.ROOT);
+            }
+        } catch (IllegalArgumentException e) {
+            // Fall through: an unparseable URL gets a lane of its own
+        }
+        return subscriptionUrl;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Result of an upstream fetch: either the node URLs of the body with its fingerprint and
+     * validators, or "not modified"
+     */
+    public static class UpstreamContent {
+        private final List<String> nodeUrls;
+        private final String contentHash;
+        private final String etag;
+        private final String lastModified;
+
+        private UpstreamContent(List<String> nodeUrls, String contentHash, String etag, String lastModified) {
+            this.nodeUrls = nodeUrls;
+            this.contentHash = contentHash;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        private static UpstreamContent notModified() {
+            return new UpstreamContent(null, null, null, null);
+        }
 
-        logger.info("Finished automatic subscription update check");
+        public boolean isNotModified() { return nodeUrls == null; }
+        public List<String> getNodeUrls() { return nodeUrls; }
+        public String getContentHash() { return contentHash; }
+        public String getEtag() { return etag; }
+        public String getLastModified() { return lastModified; }
     }
 }
@@ -4,19 +4,50 @@ import com.submanager.subscriptionmanager.model.ProxyNode;
 import com.submanager.subscriptionmanager.model.SubscriptionGroup;
 import com.submanager.subscriptionmanager.repository.ProxyNodeRepository;
 import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class SubscriptionService {
 
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionService.class);
+
+    private static final String FORMAT_V2RAY = "v2ray";
+    private static final String FORMAT_RAW = "raw";
+    private static final String FORMAT_CLASH = "clash";
+    private static final int REGISTER_ATTEMPTS = 3;
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final byte[] LINE_SEPARATOR = {'\n'};
+
+    @Value("${app.subscription.streaming-threshold:5000}")
+    private long streamingThreshold;
+
     @Autowired
     private SubscriptionGroupRepository groupRepository;
 
@@ -26,11 +57,47 @@ public class SubscriptionService {
     @Autowired
     private SubscriptionConverter converter;
 
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    @Autowired
+    private NodeSaveService nodeSaveService;
+
+    @Autowired
+    private NodeBulkService nodeBulkService;
+
+    // Streamed chunks are read in their own short transactions
+    private final TransactionTemplate chunkTransaction;
+
+    public SubscriptionService(PlatformTransactionManager transactionManager) {
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.chunkTransaction.setReadOnly(true);
+    }
+
     // Subscription Group methods
     public List<SubscriptionGroup> getAllGroups() {
         return groupRepository.findAllByOrderByCreatedAtDesc();
     }
 
+    /**
+     * Node, active node and source counts of all groups, by group id, without touching the
+     * groups' lazy collections
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, SubscriptionGroupRepository.GroupCounts> getAllGroupCounts() {
+        Map<Long, SubscriptionGroupRepository.GroupCounts> counts = new HashMap<>();
+        for (SubscriptionGroupRepository.GroupCounts row : groupRepository.findAllGroupCounts()) {
+            counts.put(row.getId(), row);
+        }
+        return counts;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<SubscriptionGroupRepository.GroupCounts> getGroupCounts(Long id) {
+        return groupRepository.findGroupCountsById(id);
+    }
+
     public Optional<SubscriptionGroup> getGroupById(Long id) {
         return groupRepository.findById(id);
     }
@@ -45,11 +112,16 @@ public class SubscriptionService {
 
     public SubscriptionGroup updateGroup(Long id, SubscriptionGroup group) {
         group.setId(id);
+        subscriptionCache.evictGroup(id);
         return groupRepository.save(group);
     }
 
     public void deleteGroup(Long id) {
+        // Delete the nodes with one statement first, so the cascade has no node entities to load
+        // and delete one by one. It runs in this transaction, so a failed group delete keeps them.
+        nodeBulkService.deleteAllOfGroup(id);
         groupRepository.deleteById(id);
+        subscriptionCache.evictGroup(id);
     }
 
     // ProxyNode methods
@@ -66,85 +138,239 @@ public class SubscriptionService {
     }
 
     public ProxyNode createNode(ProxyNode node) {
-        return nodeRepository.save(node);
+        node.setContentKey(NodeIngestService.contentKey(node.getConfig()));
+        converter.renderClashProxy(node);
+        ProxyNode savedNode = nodeRepository.save(node);
+        evictNodeGroup(savedNode);
+        return savedNode;
     }
 
     public ProxyNode updateNode(Long id, ProxyNode node) {
         node.setId(id);
-        return nodeRepository.save(node);
+        node.setContentKey(NodeIngestService.contentKey(node.getConfig()));
+        converter.renderClashProxy(node);
+        ProxyNode savedNode = nodeRepository.save(node);
+        evictNodeGroup(savedNode);
+        return savedNode;
     }
 
     public void deleteNode(Long id) {
+        nodeRepository.findById(id).ifPresent(this::evictNodeGroup);
         nodeRepository.deleteById(id);
     }
 
+    private void evictNodeGroup(ProxyNode node) {
+        if (node.getSubscriptionGroup() != null) {
+            subscriptionCache.evictGroup(node.getSubscriptionGroup().getId());
+        }
+    }
+
     // Subscription content generation
     public String generateSubscriptionContent(String token) {
-        Optional<SubscriptionGroup> groupOpt = groupRepository.findByToken(token);
+        return findActiveGroup(token).map(group -> renderBase64(group.getId())).orElse("");
+    }
+
+    public String generateRawSubscriptionContent(String token) {
+        return findActiveGroup(token).map(group -> renderRaw(group.getId())).orElse("");
+    }
 
-        if (groupOpt.isEmpty() || !groupOpt.get().getIsActive()) {
+    public String generateClashSubscriptionContent(String token) {
+        return findActiveGroup(token).map(group -> renderClash(group.getId())).orElse("");
+    }
+
+    /**
+     * Render a subscription for the given client target, serving repeated polls from the cache
+     */
+    public String generateSubscriptionByTarget(String token, String target) {
+        SubscriptionCache.Entry entry = resolveSubscription(token);
+        if (entry == null) {
             return "";
         }
+        return getRendition(entry, resolveFormat(target)).getContent();
+    }
 
-        SubscriptionGroup group = groupOpt.get();
-        List<ProxyNode> activeNodes = nodeRepository.findBySubscriptionGroupIdAndIsActiveTrueOrderByOrderAsc(group.getId());
+    /**
+     * Resolve the cache entry of an active group, or null if the token is unknown or inactive.
+     * The entry carries the content version used for conditional requests.
+     *
+     * The eviction generation is read before the lookup. If the group is evicted between the
+     * lookup and registering the entry, the lookup may have seen the state before the change, so
+     * it is repeated; after a few lost races the request is served from an uncached entry.
+     */
+    @Transactional(readOnly = true)
+    public SubscriptionCache.Entry resolveSubscription(String token) {
+        SubscriptionCache.Entry entry = subscriptionCache.getEntry(token);
+        if (entry != null) {
+            return entry;
+        }
 
-        if (activeNodes.isEmpty()) {
-            return "";
+        for (int attempt = 1; ; attempt++) {
+            long generation = subscriptionCache.currentGeneration();
+            Optional<SubscriptionGroupRepository.ActiveGroupRef> ref = groupRepository.findActiveGroupRefByToken(token);
+            if (ref.isEmpty()) {
+                return null;
+            }
+            entry = subscriptionCache.register(token, ref.get().getId(), ref.get().getActiveNodeCount(), generation);
+            if (entry != null) {
+                return entry;
+            }
+            if (attempt == REGISTER_ATTEMPTS) {
+                return subscriptionCache.detached(ref.get().getId(), ref.get().getActiveNodeCount());
+            }
         }
+    }
 
-        // Collect all node configs (vmess://, vless://, etc.)
-        String content = activeNodes.stream()
-                .map(ProxyNode::getConfig)
-                .collect(Collectors.joining("\n"));
+    /**
+     * Whether a group is too large to be rendered in memory and must be streamed instead.
+     * Only the line-based formats can be streamed; Clash output is always rendered.
+     */
+    public boolean isStreamed(SubscriptionCache.Entry entry, String format) {
+        return !FORMAT_CLASH.equals(format) && entry.getActiveNodeCount() > streamingThreshold;
+    }
 
-        // Encode to base64
-        return Base64.getEncoder().encodeToString(content.getBytes());
+    /**
+     * Write a subscription straight to the given stream, fetching node configs in keyset chunks.
+     * Memory use is bounded by the chunk size no matter how large the group is. Runs without an
+     * enclosing transaction, and each chunk is read in its own transaction that releases its
+     * connection before the chunk is written, so a slow client never pins a database connection.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void streamSubscription(Long groupId, String format, OutputStream out) throws IOException {
+        OutputStream target = StreamUtils.nonClosing(out);
+        if (!FORMAT_RAW.equals(format)) {
+            target = Base64.getEncoder().wrap(target);
+        }
+
+        try (OutputStream writer = new BufferedOutputStream(target, 16 * 1024)) {
+            boolean first = true;
+            Integer afterPosition = Integer.MIN_VALUE;
+            Long afterId = 0L;
+
+            while (true) {
+                Integer position = afterPosition;
+                Long id = afterId;
+                List<ProxyNodeRepository.ConfigRow> chunk = chunkTransaction.execute(status ->
+                        nodeRepository.findActiveConfigChunk(groupId, position, id, PageRequest.of(0, STREAM_CHUNK_SIZE)));
+
+                for (ProxyNodeRepository.ConfigRow row : chunk) {
+                    if (!first) {
+                        writer.write(LINE_SEPARATOR);
+                    }
+                    writer.write(row.getConfig().getBytes(StandardCharsets.UTF_8));
+                    first = false;
+                }
+
+                if (chunk.size() < STREAM_CHUNK_SIZE) {
+                    break;
+                }
+
+                ProxyNodeRepository.ConfigRow last = chunk.get(chunk.size() - 1);
+                afterPosition = last.getPosition();
+                afterId = last.getId();
+            }
+        }
     }
 
-    public String generateRawSubscriptionContent(String token) {
-        Optional<SubscriptionGroup> groupOpt = groupRepository.findByToken(token);
+    /**
+     * Get the rendition of a resolved group in the given format, rendering it only on a cache miss.
+     * Rendering only reads, so it runs read-only: no flushes and no entity snapshots.
+     */
+    @Transactional(readOnly = true)
+    public SubscriptionCache.Rendition getRendition(SubscriptionCache.Entry entry, String format) {
+        SubscriptionCache.Rendition rendition = subscriptionCache.getRendition(entry, format);
+        if (rendition != null) {
+            return rendition;
+        }
 
-        if (groupOpt.isEmpty() || !groupOpt.get().getIsActive()) {
-            return "";
+        String content;
+        if (FORMAT_CLASH.equals(format)) {
+            content = renderClash(entry.getGroupId());
+        } else if (FORMAT_RAW.equals(format)) {
+            content = renderRaw(entry.getGroupId());
+        } else {
+            content = renderBase64(entry.getGroupId());
         }
 
-        SubscriptionGroup group = groupOpt.get();
-        List<ProxyNode> activeNodes = nodeRepository.findBySubscriptionGroupIdAndIsActiveTrueOrderByOrderAsc(group.getId());
+        return entry.put(format, content);
+    }
 
-        return activeNodes.stream()
-                .map(ProxyNode::getConfig)
-                .collect(Collectors.joining("\n"));
+    /**
+     * Map a client target to its output format; unknown targets default to V2Ray (base64)
+     */
+    public String resolveFormat(String target) {
+        if ("clash".equalsIgnoreCase(target)) {
+            return FORMAT_CLASH;
+        } else if ("raw".equalsIgnoreCase(target)) {
+            return FORMAT_RAW;
+        }
+        return FORMAT_V2RAY;
     }
 
-    public String generateClashSubscriptionContent(String token) {
-        Optional<SubscriptionGroup> groupOpt = groupRepository.findByToken(token);
+    private Optional<SubscriptionGroup> findActiveGroup(String token) {
+        return groupRepository.findByToken(token)
+                .filter(SubscriptionGroup::getIsActive);
+    }
 
-        if (groupOpt.isEmpty() || !groupOpt.get().getIsActive()) {
+    private String renderBase64(Long groupId) {
+        String content = renderRaw(groupId);
+        if (content.isEmpty()) {
             return "";
         }
 
-        SubscriptionGroup group = groupOpt.get();
-        List<ProxyNode> activeNodes = nodeRepository.findBySubscriptionGroupIdAndIsActiveTrueOrderByOrderAsc(group.getId());
+        // Encode to base64
+        return Base64.getEncoder().encodeToString(content.getBytes());
+    }
+
+    private String renderRaw(Long groupId) {
+        // Collect all node configs (vmess://, vless://, etc.)
+        return String.join("\n", nodeRepository.findActiveConfigsByGroupId(groupId));
+    }
+
+    private String renderClash(Long groupId) {
+        List<ProxyNodeRepository.ClashRow> rows = nodeRepository.findActiveClashRowsByGroupId(groupId);
 
-        if (activeNodes.isEmpty()) {
+        if (rows.isEmpty()) {
             return "";
         }
 
-        // Pass the entire ProxyNode objects so the converter can use the database name field
-        return converter.toClashYaml(activeNodes);
+        // Proxy entries are rendered when nodes are saved, so this only concatenates them
+        List<String> proxyNames = new ArrayList<>(rows.size());
+        List<String> proxies = new ArrayList<>(rows.size());
+        for (ProxyNodeRepository.ClashRow row : rows) {
+            String proxy = row.getClashProxy();
+            if (!SubscriptionConverter.isClashProxyCurrent(proxy, row.getClashRenderVersion())) {
+                // Not re-rendered by the startup backfill yet
+                proxy = nodeRepository.findById(row.getId()).map(converter::toClashProxy).orElse("");
+            }
+            if (!proxy.isEmpty()) {
+                proxyNames.add(row.getName());
+                proxies.add(proxy);
+            }
+        }
+
+        StringWriter out = new StringWriter(512 + rows.size() * 256);
+        try {
+            converter.writeClashYaml(proxyNames, proxies, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
     }
 
-    public String generateSubscriptionByTarget(String token, String target) {
-        if ("clash".equalsIgnoreCase(target)) {
-            return generateClashSubscriptionContent(token);
-        } else if ("v2ray".equalsIgnoreCase(target) || "v2rayng".equalsIgnoreCase(target)) {
-            return generateSubscriptionContent(token);
-        } else if ("raw".equalsIgnoreCase(target)) {
-            return generateRawSubscriptionContent(token);
-        } else {
-            // Default to V2Ray format (base64)
-            return generateSubscriptionContent(token);
+    /**
+     * Render the Clash entries of nodes saved before entries were stored with them, or rendered
+     * by an older renderer version
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void backfillClashProxies() {
+        int total = 0;
+        int rendered;
+        while ((rendered = nodeSaveService.renderStaleClashProxies(STREAM_CHUNK_SIZE)) > 0) {
+            total += rendered;
+        }
+        if (total > 0) {
+            logger.info("Rendered Clash proxy entries for {} existing nodes", total);
         }
     }
 }
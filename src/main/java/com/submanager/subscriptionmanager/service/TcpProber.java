@@ -0,0 +1,246 @@
+package com.submanager.subscriptionmanager.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP connect prober for many endpoints at once.
+ *
+ * All connects are non-blocking and driven by one {@link Selector} on the calling thread, so a
+ * batch takes roughly one timeout no matter how many endpoints are dead. At most maxInFlight
+ * connects are open at a time, and at most maxPerHost of them go to the same address, so a
+ * provider hosting many nodes is not hit with a burst of SYNs. Latency is measured with
+ * {@link System#nanoTime()} from the connect call to its completion.
+ */
+final class TcpProber {
+
+    private final int maxInFlight;
+    private final int maxPerHost;
+    private final long timeoutNanos;
+
+    TcpProber(int maxInFlight, int maxPerHost, long timeoutMillis) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxPerHost = Math.max(1, maxPerHost);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+    }
+
+    /**
+     * Probe every target and return one result per target, in the same order
+     */
+    List<Result> probe(List<InetSocketAddress> targets) throws IOException {
+        Result[] results = new Result[targets.size()];
+
+        // Pending targets per host; hosts below their limit wait in a round-robin queue
+        Map<String, Deque<Integer>> pendingByHost = new HashMap<>();
+        for (int i = 0; i < targets.size(); i++) {
+            InetSocketAddress target = targets.get(i);
+            if (target == null || target.isUnresolved()) {
+                results[i] = Result.down(0, "Unresolved host");
+                continue;
+            }
+            pendingByHost.computeIfAbsent(hostKey(target), k -> new ArrayDeque<>()).add(i);
+        }
+        Deque<String> readyHosts = new ArrayDeque<>(pendingByHost.keySet());
+        Map<String, Integer> inFlightByHost = new HashMap<>();
+
+        // Attempts in start order; with one timeout for all, this is also deadline order
+        Deque<Attempt> attempts = new ArrayDeque<>();
+        int inFlight = 0;
+
+        try (Selector selector = Selector.open()) {
+            while (inFlight > 0 || !readyHosts.isEmpty()) {
+                // Start as many connects as the limits allow
+                while (inFlight < maxInFlight && !readyHosts.isEmpty()) {
+                    String host = readyHosts.poll();
+                    Deque<Integer> pending = pendingByHost.get(host);
+                    int index = pending.poll();
+                    int hostInFlight = inFlightByHost.merge(host, 1, Integer::sum);
+
+                    Attempt attempt = start(selector, index, host, targets.get(index), results);
+                    if (attempt != null) {
+                        attempts.add(attempt);
+                        inFlight++;
+                    } else {
+                        hostInFlight = release(inFlightByHost, host);
+                    }
+                    if (!pending.isEmpty() && hostInFlight < maxPerHost) {
+                        readyHosts.add(host);
+                    }
+                }
+                if (inFlight == 0) {
+                    continue;
+                }
+
+                Attempt oldest = firstOpen(attempts);
+                long waitNanos = oldest.deadline - System.nanoTime();
+                if (waitNanos > 0) {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                } else {
+                    selector.selectNow();
+                }
+
+                List<Attempt> finished = new ArrayList<>();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Attempt attempt = (Attempt) key.attachment();
+                    long latency;
+                    try {
+                        ((SocketChannel) key.channel()).finishConnect();
+                        latency = System.nanoTime() - attempt.startedAt;
+                        results[attempt.index] = Result.up(latency);
+                    } catch (IOException e) {
+                        latency = System.nanoTime() - attempt.startedAt;
+                        results[attempt.index] = Result.down(latency, e.getMessage());
+                    }
+                    finished.add(attempt);
+                }
+
+                long now = System.nanoTime();
+                for (Attempt attempt : attempts) {
+                    if (attempt.deadline - now > 0) {
+                        break;
+                    }
+                    if (!attempt.done && results[attempt.index] == null) {
+                        results[attempt.index] = Result.down(now - attempt.startedAt, "Connect timed out");
+                        finished.add(attempt);
+                    }
+                }
+
+                for (Attempt attempt : finished) {
+                    if (attempt.done) {
+                        continue;
+                    }
+                    attempt.done = true;
+                    closeQuietly(attempt.channel);
+                    inFlight--;
+                    int hostInFlight = release(inFlightByHost, attempt.host);
+                    Deque<Integer> pending = pendingByHost.get(attempt.host);
+                    // A host that was at its limit becomes ready again
+                    if (!pending.isEmpty() && hostInFlight == maxPerHost - 1) {
+                        readyHosts.add(attempt.host);
+                    }
+                }
+                while (!attempts.isEmpty() && attempts.peek().done) {
+                    attempts.poll();
+                }
+            }
+        } finally {
+            for (Attempt attempt : attempts) {
+                closeQuietly(attempt.channel);
+            }
+        }
+        return List.of(results);
+    }
+
+    /**
+     * Open a non-blocking connect, or record the result right away if it completes or fails
+     * immediately. Returns the attempt only while it is still pending.
+     */
+    private Attempt start(Selector selector, int index, String host, InetSocketAddress target,
+                          Result[] results) {
+        long startedAt = System.nanoTime();
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (channel.connect(target)) {
+                results[index] = Result.up(System.nanoTime() - startedAt);
+                closeQuietly(channel);
+                return null;
+            }
+            Attempt attempt = new Attempt(index, host, channel, startedAt, startedAt + timeoutNanos);
+            channel.register(selector, SelectionKey.OP_CONNECT, attempt);
+            return attempt;
+        } catch (IOException e) {
+            results[index] = Result.down(System.nanoTime() - startedAt, e.getMessage());
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    private static Attempt firstOpen(Deque<Attempt> attempts) {
+        for (Attempt attempt : attempts) {
+            if (!attempt.done) {
+                return attempt;
+            }
+        }
+        throw new IllegalStateException("No connect in flight");
+    }
+
+    private static int release(Map<String, Integer> inFlightByHost, String host) {
+        Integer remaining = inFlightByHost.computeIfPresent(host, (k, count) -> count > 1 ? count - 1 : null);
+        return remaining != null ? remaining : 0;
+    }
+
+    private static String hostKey(InetSocketAddress target) {
+        return target.getAddress().getHostAddress();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    private static class Attempt {
+        private final int index;
+        private final String host;
+        private final SocketChannel channel;
+        private final long startedAt;
+        private final long deadline;
+        private boolean done;
+
+        private Attempt(int index, String host, SocketChannel channel, long startedAt, long deadline) {
+            this.index = index;
+            this.host = host;
+            this.channel = channel;
+            this.startedAt = startedAt;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Outcome of one probe: reachable or not, and how long the connect took
+     */
+    static final class Result {
+        private final boolean reachable;
+        private final long latencyNanos;
+        private final String error;
+
+        private Result(boolean reachable, long latencyNanos, String error) {
+            this.reachable = reachable;
+            this.latencyNanos = latencyNanos;
+            this.error = error;
+        }
+
+        static Result up(long latencyNanos) {
+            return new Result(true, latencyNanos, null);
+        }
+
+        static Result down(long latencyNanos, String error) {
+            return new Result(false, latencyNanos, error);
+        }
+
+        boolean isReachable() { return reachable; }
+        long getLatencyNanos() { return latencyNanos; }
+        String getError() { return error; }
+    }
+}
@@ -1,38 +1,39 @@
-// Copy to clipboard functionality
-document.addEventListener('DOMContentLoaded', function() {
-    const copyButtons = document.querySelectorAll('.copy-btn');
+// Copy to clipboard functionality, delegated so buttons rendered after page load work too
+document.addEventListener('click', function(e) {
+    const button = e.target.closest('.copy-btn');
+    if (!button) {
+        return;
+    }
 
-    copyButtons.forEach(button => {
-        button.addEventListener('click', function() {
-            const url = this.getAttribute('data-url');
+    const url = button.getAttribute('data-url');
 
-            // Create temporary input
-            const tempInput = document.createElement('input');
-            tempInput.value = url;
-            document.body.appendChild(tempInput);
-            tempInput.select();
+    // Create temporary input
+    const tempInput = document.createElement('input');
+    tempInput.value = url;
+    document.body.appendChild(tempInput);
+    tempInput.select();
 
-            try {
-                document.execCommand('copy');
+    try {
+        document.execCommand('copy');
 
-                // Visual feedback
-                const originalHTML = this.innerHTML;
-                this.innerHTML = '<i class="fas fa-check"></i>';
-                this.classList.add('copied');
+        // Visual feedback
+        const originalHTML = button.innerHTML;
+        button.innerHTML = '<i class="fas fa-check"></i>';
+        button.classList.add('copied');
 
-                setTimeout(() => {
-                    this.innerHTML = originalHTML;
-                    this.classList.remove('copied');
-                }, 2000);
-            } catch (err) {
-                console.error('Failed to copy:', err);
-                alert('Failed to copy URL');
-            }
+        setTimeout(() => {
+            button.innerHTML = originalHTML;
+            button.classList.remove('copied');
+        }, 2000);
+    } catch (err) {
+        console.error('Failed to copy:', err);
+        alert('Failed to copy URL');
+    }
 
-            document.body.removeChild(tempInput);
-        });
-    });
+    document.body.removeChild(tempInput);
+});
 
+document.addEventListener('DOMContentLoaded', function() {
     // Auto-dismiss alerts (only dismissible ones, not batch actions bar)
     const alerts = document.querySelectorAll('.alert.alert-dismissible');
     alerts.forEach(alert => {
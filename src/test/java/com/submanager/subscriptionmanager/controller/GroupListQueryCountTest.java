@@ -0,0 +1,135 @@
+package com.submanager.subscriptionmanager.controller;
+
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
+import com.submanager.subscriptionmanager.service.NodeHealthHistory;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Listing groups and summarizing a group's health run the same number of statements no matter how
+ * many groups, nodes and sources there are: counts come from grouped queries, not from the groups'
+ * collections or their node ids
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+class GroupListQueryCountTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private SubscriptionSourceRepository sourceRepository;
+
+    @Autowired
+    private NodeHealthHistory nodeHealthHistory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void statementCountDoesNotGrowWithTheNumberOfGroups() throws Exception {
+        LoggedInClient client = new LoggedInClient(port, "admin", "admin123");
+
+        createGroups(2);
+        long pageFew = statementsFor(client, "/groups");
+        long apiFew = statementsFor(client, "/api/v1/groups");
+
+        createGroups(18);
+        long pageMany = statementsFor(client, "/groups");
+        long apiMany = statementsFor(client, "/api/v1/groups");
+
+        assertThat(pageMany).isEqualTo(pageFew).isBetween(1L, 3L);
+        assertThat(apiMany).isEqualTo(apiFew).isBetween(1L, 3L);
+
+        // Every group has three nodes, two of them active, and one source
+        assertThat(client.get("/api/v1/groups").body())
+                .contains("\"nodeCount\":3", "\"activeNodeCount\":2", "\"sourceCount\":1")
+                .doesNotContain("\"nodeCount\":0");
+    }
+
+    @Test
+    void groupHealthStatementCountDoesNotGrowWithTheGroupSize() throws Exception {
+        LoggedInClient client = new LoggedInClient(port, "admin", "admin123");
+        Long small = createGroup("small", 3);
+        Long large = createGroup("large", 300);
+        // Probe samples matching the stored statuses, 20ms for the nodes that are up
+        LocalDateTime checkedAt = LocalDateTime.now();
+        jdbcTemplate.query("SELECT id, health_status FROM proxy_nodes WHERE subscription_group_id = ?", rs -> {
+            boolean up = "UP".equals(rs.getString("health_status"));
+            nodeHealthHistory.record(rs.getLong("id"), large, checkedAt, up, up ? 20_000_000L : 0);
+        }, large);
+
+        long smallStatements = statementsFor(client, "/api/v1/groups/" + small + "/health");
+        long largeStatements = statementsFor(client, "/api/v1/groups/" + large + "/health");
+
+        assertThat(largeStatements).isEqualTo(smallStatements).isBetween(1L, 3L);
+        assertThat(client.get("/api/v1/groups/" + large + "/health").body())
+                .contains("\"total\":300", "\"up\":200", "\"down\":100",
+                        "\"availability\":66.6", "\"p50Ms\":20.0", "\"p95Ms\":20.0")
+                .doesNotContain("\"nodes\"");
+    }
+
+    private long statementsFor(LoggedInClient client, String path) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        assertThat(client.get(path).statusCode()).isEqualTo(200);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Long createGroup(String name, int nodes) {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName(name);
+        group = groupRepository.save(group);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int n = 0; n < nodes; n++) {
+            jdbcTemplate.update("INSERT INTO proxy_nodes (name, type, config, subscription_group_id, is_active, "
+                            + "sort_order, created_at, health_status) VALUES (?, 'trojan', ?, ?, TRUE, ?, ?, ?)",
+                    "node-" + n, "trojan://secret@node" + n + ".example.com:443", group.getId(), n, now,
+                    n % 3 == 0 ? "DOWN" : "UP");
+        }
+        return group.getId();
+    }
+
+    private void createGroups(int count) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < count; i++) {
+            SubscriptionGroup group = new SubscriptionGroup();
+            group.setName("group-" + i);
+            group = groupRepository.save(group);
+
+            SubscriptionSource source = new SubscriptionSource();
+            source.setUrl("http://upstream.example.com/" + i);
+            source.setSubscriptionGroup(group);
+            source.setAutoUpdate(false);
+            sourceRepository.save(source);
+
+            for (int n = 0; n < 3; n++) {
+                jdbcTemplate.update("INSERT INTO proxy_nodes (name, type, config, subscription_group_id, is_active, "
+                                + "sort_order, created_at) VALUES (?, 'trojan', ?, ?, ?, ?, ?)",
+                        "node-" + n, "trojan://secret@node" + n + ".example.com:443", group.getId(), n != 0, n, now);
+            }
+        }
+    }
+}
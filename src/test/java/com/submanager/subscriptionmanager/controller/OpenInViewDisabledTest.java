@@ -0,0 +1,129 @@
+package com.submanager.subscriptionmanager.controller;
+
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Views render without a session held open for the request, and a streamed subscription does not
+ * keep a database connection checked out while the client is still reading it
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "app.subscription.streaming-threshold=100")
+@ActiveProfiles("test")
+class OpenInViewDisabledTest {
+
+    private static final int STREAMED_NODES = 30_000;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void noSessionIsBoundToWebRequests() {
+        assertThat(context.getBeansOfType(OpenEntityManagerInViewInterceptor.class)).isEmpty();
+    }
+
+    @Test
+    void pagesRenderWithoutLazyLoading() throws Exception {
+        SubscriptionGroup group = createGroup("pages", 3);
+        Long nodeId = jdbcTemplate.queryForObject(
+                "SELECT MIN(id) FROM proxy_nodes WHERE subscription_group_id = ?", Long.class, group.getId());
+
+        LoggedInClient client = new LoggedInClient(port, "admin", "admin123");
+        assertThat(client.get("/").statusCode()).isEqualTo(200);
+        assertThat(client.get("/groups").statusCode()).isEqualTo(200);
+        assertThat(client.get("/groups/" + group.getId() + "/nodes").statusCode()).isEqualTo(200);
+        assertThat(client.get("/groups/nodes/" + nodeId + "/edit").statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void streamedSubscriptionReleasesItsConnectionWhileTheClientReads() throws Exception {
+        SubscriptionGroup group = createGroup("streamed", STREAMED_NODES);
+        HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+
+        try (Socket socket = new Socket()) {
+            // A small receive window, never drained, keeps the server blocked mid-response
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress("localhost", port), 5000);
+            socket.setSoTimeout(10_000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /sub/" + group.getToken() + "?target=raw HTTP/1.1\r\n"
+                    + "Host: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            byte[] head = new byte[4096];
+            int read = in.read(head);
+            assertThat(new String(head, 0, read, StandardCharsets.US_ASCII)).startsWith("HTTP/1.1 200");
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pool.getHikariPoolMXBean().getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+        }
+
+        // Read in separate chunk transactions, the stream is still complete and in order
+        HttpResponse<String> full = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/sub/" + group.getToken() + "?target=raw")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        String[] lines = full.body().split("\n");
+        assertThat(lines).hasSize(STREAMED_NODES);
+        assertThat(lines[0]).startsWith("trojan://secret@node0.");
+        assertThat(lines[STREAMED_NODES - 1]).startsWith("trojan://secret@node" + (STREAMED_NODES - 1) + ".");
+    }
+
+    private SubscriptionGroup createGroup(String name, int nodeCount) {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName(name);
+        group = groupRepository.save(group);
+
+        String padding = "x".repeat(300);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            rows.add(new Object[] {"node-" + i, "trojan", "trojan://secret@node" + i + ".example.com:443#" + padding,
+                    group.getId(), true, i, now});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO proxy_nodes (name, type, config, subscription_group_id, is_active, sort_order, created_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?)", rows);
+        return group;
+    }
+}
@@ -0,0 +1,166 @@
+package com.submanager.subscriptionmanager.scheduler;
+
+import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
+import com.submanager.subscriptionmanager.service.SubscriptionFetchService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sources are due at lastUpdated + updateInterval, or at the retry time while failing, plus a
+ * random jitter, and the timer refreshes each of them once it is due
+ */
+class SubscriptionUpdateSchedulerTest {
+
+    private final SubscriptionFetchService fetchService = mock(SubscriptionFetchService.class);
+
+    private final SubscriptionSourceRepository sourceRepository = mock(SubscriptionSourceRepository.class);
+
+    private final SubscriptionUpdateScheduler scheduler = new SubscriptionUpdateScheduler();
+
+    // What the repository returns for each source id, as a refresh would leave it
+    private final Map<Long, SubscriptionSource> stored = new ConcurrentHashMap<>();
+
+    // Instant each source was handed to the fetch service
+    private final Map<Long, Instant> refreshedAt = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(scheduler, "subscriptionFetchService", fetchService);
+        ReflectionTestUtils.setField(scheduler, "subscriptionSourceRepository", sourceRepository);
+        when(sourceRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(stored.get(invocation.<Long>getArgument(0))));
+        when(fetchService.refreshSources(anyList())).thenAnswer(invocation -> {
+            Instant now = Instant.now();
+            for (SubscriptionSource source : invocation.<List<SubscriptionSource>>getArgument(0)) {
+                refreshedAt.put(source.getId(), now);
+                stored.put(source.getId(), source(source.getId(), LocalDateTime.now()));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void sourcesAreRefreshedWhenDue() throws Exception {
+        ReflectionTestUtils.setField(scheduler, "jitterSeconds", 0);
+        SubscriptionSource neverUpdated = source(1L, null);
+        SubscriptionSource dueSoon = source(2L, LocalDateTime.now().minusHours(24).plusSeconds(1));
+        when(sourceRepository.findByAutoUpdateTrueAndIsActiveTrue()).thenReturn(List.of(neverUpdated, dueSoon));
+
+        Instant startedAt = Instant.now();
+        scheduler.rebuild();
+
+        verify(fetchService, timeout(5_000).times(2)).refreshSources(anyList());
+        assertThat(Duration.between(startedAt, refreshedAt.get(1L))).isLessThan(Duration.ofMillis(500));
+        assertThat(Duration.between(startedAt, refreshedAt.get(2L))).isGreaterThanOrEqualTo(Duration.ofMillis(900));
+
+        // Both are rescheduled a full interval after the refresh moved lastUpdated
+        Instant nextDay = Instant.now().plus(Duration.ofHours(24));
+        assertThat(awaitDueAt(1L)).isBetween(nextDay.minusSeconds(10), nextDay);
+        assertThat(awaitDueAt(2L)).isBetween(nextDay.minusSeconds(10), nextDay);
+    }
+
+    @Test
+    void failingSourceIsDueAtItsRetryTime() {
+        ReflectionTestUtils.setField(scheduler, "jitterSeconds", 0);
+        LocalDateTime retryAfter = LocalDateTime.now().plusMinutes(30);
+        SubscriptionSource failing = source(1L, LocalDateTime.now().minusHours(23));
+        failing.setConsecutiveFailures(2);
+        failing.setRetryAfter(retryAfter);
+        SubscriptionSource disabled = source(2L, null);
+        disabled.setAutoUpdate(false);
+        stored.put(1L, failing);
+        stored.put(2L, disabled);
+
+        scheduler.sourceChanged(1L);
+        scheduler.sourceChanged(2L);
+
+        assertThat(scheduler.dueAt(1L)).isEqualTo(instant(retryAfter));
+        assertThat(scheduler.dueAt(2L)).isNull();
+
+        scheduler.sourceRemoved(1L);
+        assertThat(scheduler.dueAt(1L)).isNull();
+        verify(fetchService, never()).refreshSources(anyList());
+    }
+
+    @Test
+    void jitterSpreadsSourcesDueAtTheSameTime() {
+        ReflectionTestUtils.setField(scheduler, "jitterSeconds", 300);
+        LocalDateTime lastUpdated = LocalDateTime.now().minusHours(1);
+        List<SubscriptionSource> sources = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            sources.add(source(id, lastUpdated));
+        }
+        when(sourceRepository.findByAutoUpdateTrueAndIsActiveTrue()).thenReturn(sources);
+
+        scheduler.rebuild();
+
+        Instant due = instant(lastUpdated.plusHours(24));
+        Instant earliest = Instant.MAX;
+        Instant latest = Instant.MIN;
+        Set<Instant> distinct = new HashSet<>();
+        for (SubscriptionSource source : sources) {
+            Instant dueAt = scheduler.dueAt(source.getId());
+            assertThat(dueAt).isAfterOrEqualTo(due).isBefore(due.plusSeconds(300));
+            earliest = dueAt.isBefore(earliest) ? dueAt : earliest;
+            latest = dueAt.isAfter(latest) ? dueAt : latest;
+            distinct.add(dueAt);
+        }
+        assertThat(Duration.between(earliest, latest)).isGreaterThan(Duration.ofSeconds(240));
+        assertThat(distinct).hasSizeGreaterThan(450);
+        verify(fetchService, never()).refreshSources(anyList());
+    }
+
+    /**
+     * Due time of a source once its refresh has completed and it was put back in the queue
+     */
+    private Instant awaitDueAt(Long sourceId) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (scheduler.dueAt(sourceId) == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return scheduler.dueAt(sourceId);
+    }
+
+    private static SubscriptionSource source(Long id, LocalDateTime lastUpdated) {
+        SubscriptionSource source = new SubscriptionSource();
+        source.setId(id);
+        source.setUrl("http://upstream.example.com/" + id);
+        source.setLastUpdated(lastUpdated);
+        return source;
+    }
+
+    private static Instant instant(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+}
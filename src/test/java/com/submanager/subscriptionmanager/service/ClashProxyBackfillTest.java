@@ -0,0 +1,92 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stored Clash entries that are missing, stored before versioning or rendered by another renderer
+ * version are re-rendered by the startup backfill; current ones are left alone. Rows stored
+ * without parsed fields are parsed on the way.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ClashProxyBackfillTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void staleEntriesAreRerendered() {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("backfill");
+        Long groupId = groupRepository.save(group).getId();
+
+        long missing = insertTrojan(groupId, "missing", null, null);
+        long legacyEmpty = insertTrojan(groupId, "legacy-empty", "", null);
+        long outdated = insertTrojan(groupId, "outdated", "  - {name: outdated}\n", SubscriptionConverter.CLASH_RENDER_VERSION - 1);
+        long current = insertTrojan(groupId, "current", "  - {name: current}\n", SubscriptionConverter.CLASH_RENDER_VERSION);
+
+        subscriptionService.backfillClashProxies();
+
+        for (long id : new long[] {missing, legacyEmpty, outdated}) {
+            Map<String, Object> row = row(id);
+            assertThat((String) row.get("clash_proxy")).contains("type: trojan").contains("server: trojan.example.com");
+            assertThat(row.get("clash_render_version")).isEqualTo(SubscriptionConverter.CLASH_RENDER_VERSION);
+        }
+        assertThat(row(current).get("clash_proxy")).isEqualTo("  - {name: current}\n");
+    }
+
+    @Test
+    void legacyHysteriaRowsAreParsedBeforeRendering() {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("legacy-hysteria");
+        Long groupId = groupRepository.save(group).getId();
+
+        // Stored before hysteria links were parsed: only the link itself, and an empty entry
+        jdbcTemplate.update("INSERT INTO proxy_nodes (name, type, config, clash_proxy, subscription_group_id, "
+                        + "is_active, sort_order, created_at) VALUES ('hy2', 'hysteria2', ?, '', ?, TRUE, 0, ?)",
+                "hysteria2://secret@hy2.example.com:443/?sni=sni.example.com#hy2", groupId,
+                Timestamp.valueOf(LocalDateTime.now()));
+        long id = jdbcTemplate.queryForObject("SELECT MAX(id) FROM proxy_nodes", Long.class);
+
+        subscriptionService.backfillClashProxies();
+
+        Map<String, Object> node = jdbcTemplate.queryForMap(
+                "SELECT server, port, uuid, sni, clash_proxy FROM proxy_nodes WHERE id = ?", id);
+        assertThat(node.get("server")).isEqualTo("hy2.example.com");
+        assertThat(node.get("port")).isEqualTo(443);
+        assertThat(node.get("uuid")).isEqualTo("secret");
+        assertThat(node.get("sni")).isEqualTo("sni.example.com");
+        assertThat((String) node.get("clash_proxy")).contains("type: hysteria2").contains("password: secret");
+    }
+
+    private long insertTrojan(Long groupId, String name, String clashProxy, Integer renderVersion) {
+        jdbcTemplate.update("INSERT INTO proxy_nodes (name, type, config, server, port, uuid, clash_proxy, "
+                        + "clash_render_version, subscription_group_id, is_active, sort_order, created_at) "
+                        + "VALUES (?, 'trojan', ?, 'trojan.example.com', 443, 'secret', ?, ?, ?, TRUE, 0, ?)",
+                name, "trojan://secret@trojan.example.com:443#" + name, clashProxy, renderVersion, groupId,
+                Timestamp.valueOf(LocalDateTime.now()));
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM proxy_nodes", Long.class);
+    }
+
+    private Map<String, Object> row(long id) {
+        return jdbcTemplate.queryForMap("SELECT clash_proxy, clash_render_version FROM proxy_nodes WHERE id = ?", id);
+    }
+}
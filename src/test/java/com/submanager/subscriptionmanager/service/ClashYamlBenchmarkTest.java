@@ -0,0 +1,108 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Time and allocation of writing Clash YAML for 10,000 nodes: the SnakeYAML map dump the
+ * golden test compares against, the hand-written writer rendering every node, and the writer
+ * concatenating stored proxy entries as subscriptions are served.
+ * Run with mvn test -Pbenchmark; the numbers go to standard output.
+ */
+@Tag("benchmark")
+class ClashYamlBenchmarkTest {
+
+    private static final int NODES = 10_000;
+    private static final int WARMUP_RUNS = 10;
+    private static final int RUNS = 20;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final SubscriptionConverter converter = new SubscriptionConverter();
+
+    private final BaselineClashConverter baseline = new BaselineClashConverter();
+
+    @Test
+    void handWrittenYamlAgainstTheSnakeYamlDump() {
+        List<ProxyNode> nodes = new ArrayList<>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            String name = "🇭🇰 Hong Kong " + i + " | IPLC";
+            nodes.add(switch (i % 4) {
+                case 0 -> ClashYamlGoldenTest.trojan(name, i);
+                case 1 -> ClashYamlGoldenTest.vless(name, i);
+                case 2 -> ClashYamlGoldenTest.shadowsocks(name, i);
+                default -> ClashYamlGoldenTest.vmess(name, i);
+            });
+        }
+        List<String> names = nodes.stream().map(ProxyNode::getName).toList();
+        List<String> proxies = nodes.stream().map(converter::toClashProxy).toList();
+
+        String expected = baseline.toClashYaml(nodes);
+        assertThat(converter.toClashYaml(nodes)).isEqualTo(expected);
+        assertThat(writeStored(names, proxies)).isEqualTo(expected);
+
+        Measurement snakeYaml = measure(() -> baseline.toClashYaml(nodes));
+        Measurement rendered = measure(() -> converter.toClashYaml(nodes));
+        Measurement stored = measure(() -> writeStored(names, proxies));
+
+        System.out.printf("%n%,d nodes, %,d bytes of YAML%n", NODES, expected.length());
+        snakeYaml.print("SnakeYAML dump");
+        rendered.print("writer, rendering nodes");
+        stored.print("writer, stored entries");
+
+        assertThat(rendered.nanos).isLessThan(snakeYaml.nanos);
+        assertThat(stored.nanos).isLessThan(rendered.nanos);
+    }
+
+    private String writeStored(List<String> names, List<String> proxies) {
+        StringWriter out = new StringWriter(512 + proxies.size() * 256);
+        try {
+            converter.writeClashYaml(names, proxies, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Best wall-clock time and average allocation of the calling thread per run, after warmup
+     */
+    private static Measurement measure(Supplier<String> run) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run.get();
+        }
+        long best = Long.MAX_VALUE;
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < RUNS; i++) {
+            long startedAt = System.nanoTime();
+            run.get();
+            best = Math.min(best, System.nanoTime() - startedAt);
+        }
+        return new Measurement(best, (THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore) / RUNS);
+    }
+
+    private static final class Measurement {
+        private final long nanos;
+        private final long allocatedBytes;
+
+        private Measurement(long nanos, long allocatedBytes) {
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        void print(String label) {
+            System.out.printf("%-24s %8.2f ms, %,14d bytes allocated%n", label, nanos / 1e6, allocatedBytes);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The hand-written Clash YAML must be byte-identical to what the SnakeYAML map dump produced,
+ * including for names and values that YAML has to quote or escape
+ */
+class ClashYamlGoldenTest {
+
+    private static final List<String> AWKWARD_NAMES = List.of(
+            "plain",
+            "with space",
+            "colon: inside",
+            "trailing colon:",
+            "- leading dash",
+            "? leading question mark",
+            ": leading colon",
+            "#leading hash",
+            "hash # inside",
+            "'single quoted'",
+            "\"double quoted\"",
+            "it's",
+            "[bracket]",
+            "{brace}",
+            "&anchor",
+            "*alias",
+            "!tag",
+            "|pipe",
+            ">folded",
+            "%percent",
+            "@at",
+            "`backtick",
+            "yes",
+            "No",
+            "true",
+            "null",
+            "~",
+            "123",
+            "0x1F",
+            "1e3",
+            "3.14",
+            "0777",
+            "2024-01-01",
+            "🇭🇰 Hong Kong 01 | IPLC",
+            "🚀",
+            "日本 東京 01",
+            "tab\there",
+            "trailing space ",
+            " leading space",
+            "back\\slash",
+            "comma, separated, list",
+            "A very long node name that goes well past the eighty column width SnakeYAML folds at, "
+                    + "with more words after it so it has to be split over several lines somewhere");
+
+    private final SubscriptionConverter converter = new SubscriptionConverter();
+
+    private final BaselineClashConverter baseline = new BaselineClashConverter();
+
+    @Test
+    void awkwardNamesMatchTheSnakeYamlDump() {
+        List<ProxyNode> nodes = new ArrayList<>();
+        for (int i = 0; i < AWKWARD_NAMES.size(); i++) {
+            String name = AWKWARD_NAMES.get(i);
+            nodes.add(switch (i % 4) {
+                case 0 -> trojan(name, i);
+                case 1 -> vless(name, i);
+                case 2 -> shadowsocks(name, i);
+                default -> vmess(name, i);
+            });
+        }
+
+        assertThat(converter.toClashYaml(nodes)).isEqualTo(baseline.toClashYaml(nodes));
+    }
+
+    @Test
+    void emptyGroupMatchesTheSnakeYamlDump() {
+        assertThat(converter.toClashYaml(List.of())).isEqualTo(baseline.toClashYaml(List.of()));
+    }
+
+    static ProxyNode trojan(String name, int i) {
+        ProxyNode node = node(name, "trojan", "trojan://secret@trojan.example.com:443#" + i);
+        node.setServer("trojan-" + i + ".example.com");
+        node.setPort(443);
+        node.setUuid(i % 8 == 0 ? "p@ss:word #" + i : "yes");
+        node.setSni(i % 8 == 0 ? "sni.example.com" : null);
+        if (i % 8 == 4) {
+            node.setNetwork("ws");
+            node.setPath("/ws?ed=2048");
+            node.setHost("cdn.example.com");
+        } else if (i % 12 == 8) {
+            node.setNetwork("grpc");
+            node.setPath("grpc: service");
+        }
+        return node;
+    }
+
+    static ProxyNode vless(String name, int i) {
+        ProxyNode node = node(name, "vless", "vless://uuid@vless.example.com:443#" + i);
+        node.setServer("vless-" + i + ".example.com");
+        node.setPort(8443);
+        node.setUuid("b831381d-6324-4d53-ad4f-8cda48b30811");
+        switch (i % 3) {
+            case 0 -> {
+                node.setSecurity("reality");
+                node.setPublicKey("jNXHt1yRo0vDuchQlIP6Z0ZvjT3KtzVI-T4E7RoLJS0");
+                node.setShortId("0123abcd");
+                node.setSni("www.microsoft.com");
+                node.setFlow("xtls-rprx-vision");
+            }
+            case 1 -> {
+                node.setNetwork("h2");
+                node.setPath("/a,/b");
+                node.setHost("h2-a.example.com,h2-b.example.com");
+                node.setSecurity("tls");
+            }
+            default -> {
+                node.setNetwork("ws");
+                node.setPath("/");
+                node.setHost("null");
+                node.setTls(true);
+            }
+        }
+        return node;
+    }
+
+    static ProxyNode shadowsocks(String name, int i) {
+        ProxyNode node = node(name, "ss", "ss://YWVzLTI1Ni1nY206c2VjcmV0@ss.example.com:8388#" + i);
+        node.setServer(i % 3 == 0 ? "2001:db8::1" : "ss-" + i + ".example.com");
+        node.setPort(8388);
+        node.setCipher(i % 2 == 0 ? "chacha20-ietf-poly1305" : null);
+        node.setUuid(i % 3 == 0 ? "'quoted' \"pass\"" : "123456");
+        return node;
+    }
+
+    static ProxyNode vmess(String name, int i) {
+        String json = "{\"v\":\"2\",\"ps\":\"vmess\",\"add\":\"vmess.example.com\",\"port\":\"443\","
+                + "\"id\":\"b831381d-6324-4d53-ad4f-8cda48b30811\",\"aid\":\"0\",\"net\":\"ws\","
+                + "\"type\":\"none\",\"host\":\"ws.example.com\",\"path\":\"/ray\",\"tls\":\"tls\"}";
+        ProxyNode node = node(name, "vmess",
+                "vmess://" + Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8)));
+        node.setServer("vmess-" + i + ".example.com");
+        node.setPort(443);
+        node.setUuid("b831381d-6324-4d53-ad4f-8cda48b30811");
+        node.setAlterId(0);
+        node.setCipher("auto");
+        if (i % 8 == 3) {
+            node.setNetwork("grpc");
+            node.setPath("");
+        } else {
+            node.setNetwork("ws");
+            node.setPath("/ray?ed=2048");
+            node.setHost("ws.example.com");
+        }
+        node.setTls(i % 2 == 1);
+        node.setSni(i % 8 == 7 ? "true" : null);
+        return node;
+    }
+
+    private static ProxyNode node(String name, String type, String config) {
+        ProxyNode node = new ProxyNode();
+        node.setName(name);
+        node.setType(type);
+        node.setConfig(config);
+        return node;
+    }
+}
@@ -0,0 +1,78 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Deleting a group removes its nodes in the same transaction as the group: both go, or, when
+ * the transaction rolls back, both stay
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class GroupDeleteTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void groupAndNodesAreDeletedTogether() {
+        Long groupId = createGroup("deleted", 5);
+
+        subscriptionService.deleteGroup(groupId);
+
+        assertThat(groupRepository.existsById(groupId)).isFalse();
+        assertThat(nodeCount(groupId)).isZero();
+    }
+
+    @Test
+    void rolledBackDeleteKeepsTheNodes() {
+        Long groupId = createGroup("kept", 5);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            subscriptionService.deleteGroup(groupId);
+            status.setRollbackOnly();
+        });
+
+        assertThat(groupRepository.existsById(groupId)).isTrue();
+        assertThat(nodeCount(groupId)).isEqualTo(5);
+    }
+
+    private Long createGroup(String name, int nodes) {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName(name);
+        Long groupId = groupRepository.save(group).getId();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int n = 0; n < nodes; n++) {
+            jdbcTemplate.update("INSERT INTO proxy_nodes (name, type, config, subscription_group_id, is_active, "
+                            + "sort_order, created_at) VALUES (?, 'trojan', ?, ?, TRUE, ?, ?)",
+                    "node-" + n, "trojan://secret@node" + n + ".example.com:443", groupId, n, now);
+        }
+        return groupId;
+    }
+
+    private int nodeCount(Long groupId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM proxy_nodes WHERE subscription_group_id = ?", Integer.class, groupId);
+    }
+}
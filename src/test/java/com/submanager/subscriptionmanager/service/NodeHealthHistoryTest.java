@@ -0,0 +1,166 @@
+package com.submanager.subscriptionmanager.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Only status changes and one sample per store interval reach the samples table, while the
+ * in-memory ring keeps every probe; expired samples are purged in chunks until none are left.
+ * Group statistics follow the samples entering and leaving the rings of the group's nodes.
+ */
+@SpringBootTest(properties = {
+        "app.health.history-store-interval-minutes=60",
+        "app.health.history-purge-chunk-size=5"
+})
+@ActiveProfiles("test")
+class NodeHealthHistoryTest {
+
+    private static final long GROUP_ID = 1_000_000L;
+
+    // app.health.history-size
+    private static final int HISTORY_SIZE = 32;
+
+    @Autowired
+    private NodeHealthHistory nodeHealthHistory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void onlyStatusChangesAndIntervalSamplesAreStored() {
+        long nodeId = 1_000_001L;
+        LocalDateTime start = LocalDateTime.now().withNano(0);
+
+        // Six probes ten minutes apart: the first one and the one an hour later are stored
+        for (int i = 0; i <= 6; i++) {
+            nodeHealthHistory.record(nodeId, GROUP_ID, start.plusMinutes(10L * i), true, TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        // Down, still down, and up again: both changes are stored
+        nodeHealthHistory.record(nodeId, GROUP_ID, start.plusMinutes(70), false, 0);
+        nodeHealthHistory.record(nodeId, GROUP_ID, start.plusMinutes(80), false, 0);
+        nodeHealthHistory.record(nodeId, GROUP_ID, start.plusMinutes(90), true, TimeUnit.MILLISECONDS.toNanos(20));
+        nodeHealthHistory.flush();
+
+        List<Timestamp> stored = jdbcTemplate.queryForList(
+                "SELECT checked_at FROM node_health_samples WHERE node_id = ? ORDER BY checked_at", Timestamp.class, nodeId);
+        assertThat(stored).extracting(Timestamp::toLocalDateTime).containsExactly(
+                start, start.plusMinutes(60), start.plusMinutes(70), start.plusMinutes(90));
+
+        NodeHealthHistory.NodeHealthStats stats = nodeHealthHistory.getNodeStats(List.of(nodeId)).get(nodeId);
+        assertThat(stats.getSamples()).isEqualTo(10);
+        assertThat(stats.getStatus()).isEqualTo("UP");
+    }
+
+    @Test
+    void expiredSamplesArePurgedInChunks() {
+        long nodeId = 1_000_002L;
+        Timestamp expired = Timestamp.valueOf(LocalDateTime.now().minusDays(30).withNano(0));
+        Timestamp recent = Timestamp.valueOf(LocalDateTime.now().minusHours(1).withNano(0));
+        for (int i = 0; i < 23; i++) {
+            insertSample(nodeId, expired);
+        }
+        insertSample(nodeId, recent);
+
+        nodeHealthHistory.purge();
+
+        List<Timestamp> left = jdbcTemplate.queryForList(
+                "SELECT checked_at FROM node_health_samples WHERE node_id = ?", Timestamp.class, nodeId);
+        assertThat(left).extracting(Timestamp::toLocalDateTime).containsExactly(recent.toLocalDateTime());
+    }
+
+    @Test
+    void groupStatsMatchTheRingsOfItsNodes() {
+        long groupId = 2_000_000L;
+        long otherGroupId = 2_000_001L;
+        List<Long> nodeIds = new ArrayList<>();
+        for (long id = 2_000_100L; id < 2_000_120L; id++) {
+            nodeIds.add(id);
+        }
+        Map<Long, Deque<Integer>> expected = new HashMap<>();
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.now().withNano(0);
+
+        // Enough rounds for every ring to wrap around, with a fifth of the probes failing
+        for (int round = 0; round < 3 * HISTORY_SIZE; round++) {
+            for (Long nodeId : nodeIds) {
+                boolean up = random.nextInt(5) > 0;
+                int micros = 1_000 + random.nextInt(300_000);
+                nodeHealthHistory.record(nodeId, groupId, start.plusSeconds(round), up,
+                        TimeUnit.MICROSECONDS.toNanos(micros));
+                Deque<Integer> ring = expected.computeIfAbsent(nodeId, id -> new ArrayDeque<>());
+                ring.addLast(up ? micros : -1);
+                if (ring.size() > HISTORY_SIZE) {
+                    ring.removeFirst();
+                }
+            }
+        }
+        nodeHealthHistory.record(3_000_000L, otherGroupId, start, false, 0);
+        assertGroupStats(nodeHealthHistory.getGroupStats(groupId), expected.values());
+
+        // Forgotten nodes leave the group statistics
+        nodeHealthHistory.forget(nodeIds.subList(0, 5));
+        nodeIds.subList(0, 5).forEach(expected::remove);
+        assertGroupStats(nodeHealthHistory.getGroupStats(groupId), expected.values());
+
+        assertThat(nodeHealthHistory.getGroupStats(otherGroupId).getAvailability()).isZero();
+        nodeHealthHistory.forget(nodeIds);
+        assertThat(nodeHealthHistory.getGroupStats(groupId)).isNull();
+    }
+
+    private static void assertGroupStats(NodeHealthHistory.GroupHealthStats stats, Collection<Deque<Integer>> rings) {
+        List<Integer> up = new ArrayList<>();
+        long samples = 0;
+        long jitterSum = 0;
+        long jitterCount = 0;
+        for (Deque<Integer> ring : rings) {
+            int previous = -1;
+            for (int latency : ring) {
+                samples++;
+                if (latency < 0) {
+                    continue;
+                }
+                up.add(latency);
+                if (previous >= 0) {
+                    jitterSum += Math.abs(latency - previous);
+                    jitterCount++;
+                }
+                previous = latency;
+            }
+        }
+        Collections.sort(up);
+
+        assertThat(stats.getSamples()).isEqualTo(samples);
+        assertThat(stats.getAvailability()).isCloseTo(up.size() * 100.0 / samples, within(1e-9));
+        assertThat(stats.getJitterMs()).isCloseTo(jitterSum / (double) jitterCount / 1000, within(0.051));
+        // Percentiles come from histogram buckets within 1% of their latencies
+        for (int percent : new int[] {50, 95}) {
+            double exact = up.get((int) Math.ceil(percent / 100.0 * up.size()) - 1) / 1000.0;
+            double actual = percent == 50 ? stats.getP50Ms() : stats.getP95Ms();
+            assertThat(actual).isCloseTo(exact, within(exact * 0.01 + 0.051));
+        }
+    }
+
+    private void insertSample(long nodeId, Timestamp checkedAt) {
+        jdbcTemplate.update("INSERT INTO node_health_samples (node_id, checked_at, reachable, latency_micros) "
+                + "VALUES (?, ?, TRUE, 20000)", nodeId, checkedAt);
+    }
+}
@@ -0,0 +1,92 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.NodeProtocol;
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ingest rate of imported nodes into a new group, for several batch sizes; a batch size of one
+ * commits every node on its own, as imports did before batching.
+ * Run with mvn test -Pbenchmark; the numbers go to standard output.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+class NodeIngestBenchmarkTest {
+
+    private static final int NODES = 20_000;
+    private static final int[] BATCH_SIZES = {1, 100, 500, 2000};
+
+    @Autowired
+    private NodeIngestService nodeIngestService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private NodeParser nodeParser;
+
+    @Test
+    void ingestRatePerBatchSize() {
+        Object configured = ReflectionTestUtils.getField(nodeIngestService, "batchSize");
+        // Warm up the insert path and the Clash renderer
+        ingest(500, 5_000);
+
+        System.out.printf("%n%,d nodes per ingest%n", NODES);
+        try {
+            for (int batchSize : BATCH_SIZES) {
+                long nanos = ingest(batchSize, NODES);
+                System.out.printf("batch size %,5d  %,8d ms  %,10.0f nodes/s%n",
+                        batchSize, TimeUnit.NANOSECONDS.toMillis(nanos), NODES * 1e9 / nanos);
+            }
+        } finally {
+            ReflectionTestUtils.setField(nodeIngestService, "batchSize", configured);
+        }
+    }
+
+    private long ingest(int batchSize, int count) {
+        ReflectionTestUtils.setField(nodeIngestService, "batchSize", batchSize);
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("ingest-" + batchSize);
+        Long groupId = groupRepository.save(group).getId();
+        List<ProxyNode> nodes = nodes(count);
+
+        long startedAt = System.nanoTime();
+        NodeIngestService.IngestResult result = nodeIngestService.ingest(groupId, nodes);
+        long nanos = System.nanoTime() - startedAt;
+
+        assertThat(result.getSucceeded()).isEqualTo(count);
+        return nanos;
+    }
+
+    private List<ProxyNode> nodes(int count) {
+        List<ProxyNode> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String url = i % 2 == 0
+                    ? "trojan://secret-" + i + "@hk-" + i + ".example.com:443?sni=hk.example.com#HK%20" + i
+                    : "vless://b831381d-6324-4d53-ad4f-8cda48b30811@jp-" + i + ".example.com:443"
+                            + "?security=tls&type=ws&host=cdn.example.com&path=%2Fws#JP%20" + i;
+            NodeProtocol protocol = NodeProtocol.fromUrl(url);
+            ProxyNode node = new ProxyNode();
+            node.setConfig(url);
+            node.setType(protocol.getType());
+            nodeParser.parseAndPopulateNode(node, protocol);
+            node.setOrder(i);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,78 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Rows that fail validation or the insert are reported by their position in the ingested list,
+ * including when the batch they were in failed and was retried row by row, and the rest of that
+ * batch is stored exactly once
+ */
+@SpringBootTest(properties = "app.subscription.ingest-batch-size=4")
+@ActiveProfiles("test")
+class NodeIngestServiceTest {
+
+    @Autowired
+    private NodeIngestService nodeIngestService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void failedRowsAreReportedByTheirIndexAfterTheBatchIsRetried() {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("ingest");
+        Long groupId = groupRepository.save(group).getId();
+
+        List<ProxyNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            nodes.add(node("node-" + i));
+        }
+        nodes.get(1).setName(" ");
+        // Longer than their columns, so only the database rejects them, each in a different batch
+        nodes.get(3).setServer("s".repeat(300) + ".example.com");
+        nodes.get(7).setType("t".repeat(60));
+        nodes.get(9).setConfig("");
+
+        NodeIngestService.IngestResult result = nodeIngestService.ingest(groupId, nodes);
+
+        assertThat(result.getTotal()).isEqualTo(10);
+        assertThat(result.getSucceeded()).isEqualTo(6);
+        assertThat(result.getErrors())
+                .extracting(NodeIngestService.RowError::getIndex, NodeIngestService.RowError::getMessage)
+                .containsExactly(
+                        tuple(1, "Name is required"),
+                        tuple(3, "Failed to save node"),
+                        tuple(7, "Failed to save node"),
+                        tuple(9, "Config is required"));
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT name FROM proxy_nodes WHERE subscription_group_id = ? ORDER BY name", String.class, groupId))
+                .containsExactly("node-0", "node-2", "node-4", "node-5", "node-6", "node-8");
+    }
+
+    private static ProxyNode node(String name) {
+        ProxyNode node = new ProxyNode();
+        node.setName(name);
+        node.setType("trojan");
+        node.setConfig("trojan://secret@" + name + ".example.com:443#" + name);
+        node.setServer(name + ".example.com");
+        node.setPort(443);
+        node.setUuid("secret");
+        return node;
+    }
+}
@@ -0,0 +1,126 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.submanager.subscriptionmanager.model.NodeProtocol;
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Share-link parse throughput per protocol, through the same NodeParser entry point as a
+ * subscription refresh, with Jackson decoding the same vmess JSON as a reference.
+ * Run with mvn test -Pbenchmark; the numbers go to standard output.
+ */
+@Tag("benchmark")
+class NodeParseBenchmarkTest {
+
+    private static final int LINKS = 20_000;
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 10;
+
+    private final NodeParser nodeParser = new NodeParser();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void parseThroughputPerProtocol() throws Exception {
+        Map<String, List<String>> linksByProtocol = new LinkedHashMap<>();
+        linksByProtocol.put("vmess", links(i -> "vmess://" + base64(vmessJson(i))));
+        linksByProtocol.put("vless", links(i -> "vless://b831381d-6324-4d53-ad4f-8cda48b30811@jp-" + i
+                + ".example.com:443?encryption=none&security=reality&sni=www.microsoft.com&fp=chrome"
+                + "&pbk=jNXHt1yRo0vDuchQlIP6Z0ZvjT3KtzVI-T4E7RoLJS0&sid=0123abcd&type=tcp&flow=xtls-rprx-vision"
+                + "#%F0%9F%87%AF%F0%9F%87%B5%20JP%20" + i));
+        linksByProtocol.put("trojan", links(i -> "trojan://secret-" + i + "@hk-" + i + ".example.com:443"
+                + "?security=tls&sni=hk.example.com&type=ws&host=cdn.example.com&path=%2Fws%3Fed%3D2048"
+                + "#HK%20" + i + "%20%7C%20IPLC"));
+        linksByProtocol.put("ss", links(i -> "ss://" + base64("chacha20-ietf-poly1305:pass-" + i)
+                + "@sg-" + i + ".example.com:8388/?plugin=obfs-local%3Bobfs%3Dhttp#SG%20" + i));
+        linksByProtocol.put("hysteria", links(i -> "hysteria://us-" + i + ".example.com:443"
+                + "?protocol=udp&auth=secret&peer=us.example.com&upmbps=100&downmbps=500&alpn=h3#US%20" + i));
+        linksByProtocol.put("hysteria2", links(i -> "hysteria2://secret-" + i + "@de-" + i + ".example.com:443"
+                + "?sni=de.example.com&obfs=salamander&obfs-password=pass&insecure=0#DE%20" + i));
+
+        System.out.printf("%n%,d links per protocol%n", LINKS);
+        for (Map.Entry<String, List<String>> entry : linksByProtocol.entrySet()) {
+            List<String> links = entry.getValue();
+            NodeProtocol protocol = NodeProtocol.fromUrl(links.get(0));
+            ProxyNode sample = parse(links.get(1), protocol);
+            assertThat(sample.getServer()).as(entry.getKey()).endsWith("-1.example.com");
+
+            long nanos = best(() -> {
+                for (String link : links) {
+                    parse(link, protocol);
+                }
+            });
+            print(entry.getKey(), nanos);
+        }
+
+        List<String> json = links(NodeParseBenchmarkTest::vmessJson);
+        print("vmess JSON, scanner", best(() -> json.forEach(NodeUriScanner::parseJson)));
+        print("vmess JSON, Jackson", best(() -> {
+            for (String object : json) {
+                objectMapper.readTree(object);
+            }
+        }));
+    }
+
+    private ProxyNode parse(String link, NodeProtocol protocol) {
+        ProxyNode node = new ProxyNode();
+        node.setConfig(link);
+        nodeParser.parseAndPopulateNode(node, protocol);
+        return node;
+    }
+
+    /**
+     * Best wall-clock time of a run over all links, after warmup
+     */
+    private static long best(Run run) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long startedAt = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - startedAt);
+        }
+        return best;
+    }
+
+    private static void print(String label, long nanos) {
+        System.out.printf("%-20s %8.0f ns/link %,12.0f links/s%n", label, nanos / (double) LINKS, LINKS * 1e9 / nanos);
+    }
+
+    private static List<String> links(IntFunction<String> link) {
+        List<String> links = new ArrayList<>(LINKS);
+        for (int i = 0; i < LINKS; i++) {
+            links.add(link.apply(i));
+        }
+        return links;
+    }
+
+    private static String vmessJson(int i) {
+        return "{\"v\":\"2\",\"ps\":\"\\ud83c\\uddfa\\ud83c\\uddf8 US " + i + "\",\"add\":\"us-" + i
+                + ".example.com\",\"port\":\"443\",\"id\":\"b831381d-6324-4d53-ad4f-8cda48b30811\",\"aid\":\"0\","
+                + "\"scy\":\"auto\",\"net\":\"ws\",\"type\":\"none\",\"host\":\"cdn.example.com\","
+                + "\"path\":\"\\/ray?ed=2048\",\"tls\":\"tls\",\"sni\":\"cdn.example.com\",\"alpn\":\"h2,http/1.1\"}";
+    }
+
+    private static String base64(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+}
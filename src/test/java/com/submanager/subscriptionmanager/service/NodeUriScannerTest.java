@@ -0,0 +1,111 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * The vmess JSON scanner reads well-formed objects exactly and keeps every readable pair of the
+ * malformed ones found in real subscriptions
+ */
+class NodeUriScannerTest {
+
+    @Test
+    void wellFormedObjectIsDecoded() {
+        Map<String, String> fields = NodeUriScanner.parseJson(
+                "{\"v\":\"2\",\"ps\":\"HK \\u9999\\u6e2f\",\"add\":\"hk.example.com\",\"port\":443,"
+                        + "\"path\":\"\\/ray\",\"tls\":null,\"headers\":{\"a\":[1,\"}\"]}}");
+
+        assertThat(fields).containsOnly(
+                entry("v", "2"),
+                entry("ps", "HK 香港"),
+                entry("add", "hk.example.com"),
+                entry("port", "443"),
+                entry("path", "/ray"),
+                entry("headers", "{\"a\":[1,\"}\"]}"));
+    }
+
+    @Test
+    void trailingGarbageAfterTheObjectIsIgnored() {
+        assertThat(NodeUriScanner.parseJson("{\"add\":\"a.example.com\",\"port\":\"443\"}\n\u0000\u0000garbage"))
+                .containsOnly(entry("add", "a.example.com"), entry("port", "443"));
+    }
+
+    @Test
+    void leadingByteOrderMarkAndWhitespaceAreSkipped() {
+        assertThat(NodeUriScanner.parseJson("\uFEFF \r\n{\"add\":\"a.example.com\"}"))
+                .containsOnly(entry("add", "a.example.com"));
+    }
+
+    @Test
+    void unquotedValuesRunToTheEndOfThePair() {
+        assertThat(NodeUriScanner.parseJson("{\"port\": 443 ,\"aid\":0,\"net\":ws,\"tls\": tls }"))
+                .containsOnly(entry("port", "443"), entry("aid", "0"), entry("net", "ws"), entry("tls", "tls"));
+    }
+
+    @Test
+    void bareKeysAreAccepted() {
+        assertThat(NodeUriScanner.parseJson("{v:\"2\", add:\"a.example.com\", port:8080}"))
+                .containsOnly(entry("v", "2"), entry("add", "a.example.com"), entry("port", "8080"));
+    }
+
+    @Test
+    void oddEscapesAreKept() {
+        assertThat(NodeUriScanner.parseJson("{\"path\":\"\\u12zz\\x\\/a\",\"ps\":\"tail\\u00\"}"))
+                .containsOnly(entry("path", "\\u12zzx/a"), entry("ps", "tail\\u00"));
+    }
+
+    @Test
+    void malformedPairsAreSkipped() {
+        Map<String, String> fields = NodeUriScanner.parseJson(
+                "{\"add\":\"a.example.com\",\"junk\",\"aid\":,,\"id\":\"uuid\"trailing,"
+                        + "\"nested\":{\"open\":1,\"port\":\"443\"");
+
+        // The unclosed nested object is read as if its pairs were top-level ones
+        assertThat(fields).containsOnly(
+                entry("add", "a.example.com"), entry("id", "uuid"), entry("open", "1"), entry("port", "443"));
+    }
+
+    @Test
+    void unescapedQuoteInsideAStringOnlyLosesThatValue() {
+        assertThat(NodeUriScanner.parseJson("{\"ps\":\"my \"best\" node\",\"add\":\"a.example.com\"}"))
+                .containsOnly(entry("ps", "my "), entry("add", "a.example.com"));
+    }
+
+    @Test
+    void truncatedObjectKeepsTheCompletePairs() {
+        assertThat(NodeUriScanner.parseJson("{\"add\":\"a.example.com\",\"port\":\"443\",\"ps\":\"cut"))
+                .containsOnly(entry("add", "a.example.com"), entry("port", "443"));
+    }
+
+    @Test
+    void inputWithoutAnObjectIsRejected() {
+        assertThatThrownBy(() -> NodeUriScanner.parseJson("not json"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void vmessLinkWithMalformedJsonIsStillParsed() {
+        String json = "{\"v\":\"2\",\"ps\":\"JP 01\",\"add\":\"jp.example.com\",\"port\":443,"
+                + "\"id\":\"b831381d-6324-4d53-ad4f-8cda48b30811\",\"aid\":0,\"net\":\"ws\","
+                + "\"path\":\"\\/ray\\q\",\"host\":\"cdn.example.com\",\"tls\":\"tls\",}\r\n";
+        ProxyNode node = new ProxyNode();
+        node.setConfig("vmess://" + Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8)));
+
+        new NodeParser().parseAndPopulateNode(node);
+
+        assertThat(node.getName()).isEqualTo("JP 01");
+        assertThat(node.getServer()).isEqualTo("jp.example.com");
+        assertThat(node.getPort()).isEqualTo(443);
+        assertThat(node.getUuid()).isEqualTo("b831381d-6324-4d53-ad4f-8cda48b30811");
+        assertThat(node.getPath()).isEqualTo("/rayq");
+        assertThat(node.getTls()).isTrue();
+    }
+}
@@ -0,0 +1,147 @@
+package com.submanager.subscriptionmanager.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Plain and Base64 bodies yield the same node URLs, the byte and line caps fail the read, and
+ * the hash covers every raw byte of the body, including what follows the Base64 padding
+ */
+class SubscriptionBodyReaderTest {
+
+    private static final long MAX_BYTES = 1 << 20;
+    private static final int MAX_LINES = 10_000;
+
+    @Test
+    void plainBodyKeepsOnlyNodeLines() throws Exception {
+        String body = "# comment\r\n\r\n  trojan://secret@a.example.com:443#a  \r\nnot a node\n"
+                + "vless://uuid@b.example.com:443?security=tls#b\nhttp://example.com/page\n"
+                + "ss://YWVzLTI1Ni1nY206c2VjcmV0@c.example.com:8388#c";
+
+        SubscriptionBodyReader.Body result = read(bytes(body));
+
+        assertThat(result.getNodeUrls()).containsExactly(
+                "trojan://secret@a.example.com:443#a",
+                "vless://uuid@b.example.com:443?security=tls#b",
+                "ss://YWVzLTI1Ni1nY206c2VjcmV0@c.example.com:8388#c");
+    }
+
+    @Test
+    void base64BodyIsDecodedPastTheSniffWindow() throws Exception {
+        List<String> urls = nodeUrls(500);
+        // Line-wrapped like most providers send it, and far longer than the sniffed head
+        byte[] encoded = Base64.getMimeEncoder().encode(bytes(String.join("\n", urls)));
+        assertThat(encoded.length).isGreaterThan(4096);
+
+        assertThat(read(encoded).getNodeUrls()).isEqualTo(urls);
+    }
+
+    @Test
+    void plainAndBase64BodiesYieldTheSameNodes() throws Exception {
+        String plain = String.join("\n", nodeUrls(20));
+        byte[] encoded = Base64.getEncoder().encode(bytes(plain));
+
+        assertThat(read(encoded).getNodeUrls()).isEqualTo(read(bytes(plain)).getNodeUrls());
+    }
+
+    @Test
+    void bodyOverTheByteCapFails() throws Exception {
+        byte[] body = bytes(String.join("\n", nodeUrls(100)));
+
+        assertThat(SubscriptionBodyReader.read(new ByteArrayInputStream(body), body.length, MAX_LINES)
+                .getNodeUrls()).hasSize(100);
+        assertThatThrownBy(() -> SubscriptionBodyReader.read(new ByteArrayInputStream(body), body.length - 1, MAX_LINES))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("exceeds " + (body.length - 1) + " bytes");
+    }
+
+    @Test
+    void encodedBodyOverTheByteCapFails() {
+        byte[] encoded = Base64.getMimeEncoder().encode(bytes(String.join("\n", nodeUrls(100))));
+
+        // The cap applies to the raw bytes, not to the smaller decoded content
+        assertThatThrownBy(() -> SubscriptionBodyReader.read(new ByteArrayInputStream(encoded),
+                encoded.length * 3L / 4, MAX_LINES))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("bytes");
+    }
+
+    @Test
+    void bodyOverTheLineCapFails() throws Exception {
+        byte[] body = bytes(String.join("\n", nodeUrls(50)));
+        byte[] encoded = Base64.getEncoder().encode(body);
+
+        assertThat(SubscriptionBodyReader.read(new ByteArrayInputStream(body), MAX_BYTES, 50).getNodeUrls()).hasSize(50);
+        assertThatThrownBy(() -> SubscriptionBodyReader.read(new ByteArrayInputStream(body), MAX_BYTES, 49))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("more than 49 lines");
+        // Lines are counted after decoding
+        assertThatThrownBy(() -> SubscriptionBodyReader.read(new ByteArrayInputStream(encoded), MAX_BYTES, 49))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("more than 49 lines");
+    }
+
+    @Test
+    void hashCoversThePlainBody() throws Exception {
+        byte[] body = bytes(String.join("\n", nodeUrls(300)) + "\ntrailing text\n");
+
+        assertThat(read(body).getContentHash()).isEqualTo(sha256(body));
+    }
+
+    @Test
+    void hashCoversBytesAfterTheBase64Padding() throws Exception {
+        // Content whose length is not a multiple of three encodes with '=' padding, where the
+        // decoder stops; the tail after it is longer than the reader's buffer
+        String content = String.join("\n", nodeUrls(100)) + "\n#";
+        assertThat(bytes(content).length % 3).isNotZero();
+        byte[] head = Base64.getEncoder().encode(bytes(content));
+        assertThat(new String(head, StandardCharsets.US_ASCII)).endsWith("=");
+
+        byte[] withTail = concat(head, bytes("\r\n" + "QUJD".repeat(4096) + "\r\n"));
+        byte[] otherTail = concat(head, bytes("\r\n" + "QUJD".repeat(4096) + "REVG\r\n"));
+
+        SubscriptionBodyReader.Body result = read(withTail);
+        assertThat(result.getNodeUrls()).isEqualTo(nodeUrls(100));
+        assertThat(result.getContentHash()).isEqualTo(sha256(withTail));
+        // Bodies that only differ after the padding are not mistaken for one another
+        assertThat(read(otherTail).getContentHash()).isNotEqualTo(result.getContentHash());
+    }
+
+    private static SubscriptionBodyReader.Body read(byte[] body) throws IOException {
+        return SubscriptionBodyReader.read(new ByteArrayInputStream(body), MAX_BYTES, MAX_LINES);
+    }
+
+    private static List<String> nodeUrls(int count) {
+        List<String> urls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            urls.add("trojan://secret-" + i + "@node" + i + ".example.com:443?sni=sni.example.com#node-" + i);
+        }
+        return urls;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static String sha256(byte[] body) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+    }
+}
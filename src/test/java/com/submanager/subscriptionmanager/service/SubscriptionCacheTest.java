@@ -0,0 +1,97 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+
+/**
+ * An entry is only registered if its group has not been evicted since the request read the
+ * eviction generation, so a lookup that raced with a change never ends up cached
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SubscriptionCacheTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    @SpyBean
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void registerIsRefusedForAGroupEvictedAfterTheGenerationWasRead() {
+        SubscriptionCache cache = new SubscriptionCache();
+        long generation = cache.currentGeneration();
+
+        cache.evictGroup(1L);
+
+        assertThat(cache.register("token-1", 1L, 3, generation)).isNull();
+        assertThat(cache.getEntry("token-1")).isNull();
+        // Another group is not affected by the eviction
+        assertThat(cache.register("token-2", 2L, 3, generation)).isNotNull();
+        // A lookup started after the eviction may register
+        assertThat(cache.register("token-1", 1L, 3, cache.currentGeneration())).isNotNull();
+        assertThat(cache.getEntry("token-1")).isNotNull();
+    }
+
+    @Test
+    void detachedEntryIsNotCached() {
+        SubscriptionCache cache = new SubscriptionCache();
+
+        SubscriptionCache.Entry entry = cache.detached(1L, 3);
+        entry.put("clash", "proxies: []");
+
+        assertThat(entry.getGroupId()).isEqualTo(1L);
+        assertThat(cache.getStats()).containsEntry("cachedGroups", 0);
+    }
+
+    @Test
+    void groupDeactivatedDuringTheLookupIsNotCached() {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("raced");
+        group = groupRepository.save(group);
+        Long groupId = group.getId();
+        String token = group.getToken();
+        AtomicBoolean raced = new AtomicBoolean();
+
+        // The first lookup still sees the group active, then the group is deactivated and evicted
+        // by another thread before the request registers its entry
+        // The spy delegates to the repository proxy through its default answer
+        Answer<?> lookup = mockingDetails(groupRepository).getMockCreationSettings().getDefaultAnswer();
+        doAnswer(invocation -> {
+            Object ref = lookup.answer(invocation);
+            if (raced.getAndSet(true)) {
+                return ref;
+            }
+            Thread change = new Thread(() -> {
+                jdbcTemplate.update("UPDATE subscription_groups SET is_active = FALSE WHERE id = ?", groupId);
+                subscriptionCache.evictGroup(groupId);
+            });
+            change.start();
+            change.join();
+            return ref;
+        }).when(groupRepository).findActiveGroupRefByToken(anyString());
+
+        assertThat(subscriptionService.resolveSubscription(token)).isNull();
+        assertThat(subscriptionCache.getEntry(token)).isNull();
+    }
+}
@@ -0,0 +1,162 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Failing refreshes back a source off with doubling delays, open its circuit at the failure
+ * threshold, and skip unforced refreshes until the retry time; the next refresh is a half-open
+ * probe that closes the circuit on success and reopens it with a longer delay on failure
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SubscriptionCircuitTest {
+
+    private static final String A = "trojan://secret@a.example.com:443#A";
+
+    @Autowired
+    private SubscriptionFetchService subscriptionFetchService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private SubscriptionSourceRepository sourceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private HttpServer server;
+
+    private volatile int status = 500;
+
+    // Circuit state of the source as each request reached the upstream
+    private final List<String> circuitStates = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void circuitOpensAndClosesAfterASuccessfulProbe() throws Exception {
+        SubscriptionSource source = createSource();
+
+        // Below the threshold of 5 the delay doubles from 5 minutes and the circuit stays closed
+        long[] backoffMinutes = {5, 10, 20, 40};
+        for (int i = 0; i < backoffMinutes.length; i++) {
+            refreshFailing(source.getId());
+            assertFailure(source.getId(), i + 1, "CLOSED", Duration.ofMinutes(backoffMinutes[i]));
+        }
+
+        refreshFailing(source.getId());
+        assertFailure(source.getId(), 5, "OPEN", Duration.ofHours(6));
+        assertThat(circuitStates).containsOnly("CLOSED").hasSize(5);
+
+        // Open until the retry time: nothing is fetched
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isZero();
+        assertThat(circuitStates).hasSize(5);
+        assertFailure(source.getId(), 5, "OPEN", Duration.ofHours(6));
+
+        // A failed probe reopens the circuit for twice as long
+        retryNow(source.getId());
+        refreshFailing(source.getId());
+        assertThat(circuitStates.get(5)).isEqualTo("HALF_OPEN");
+        assertFailure(source.getId(), 6, "OPEN", Duration.ofHours(12));
+
+        // A successful probe closes it and ends the streak
+        retryNow(source.getId());
+        status = 200;
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(1);
+        assertThat(circuitStates.get(6)).isEqualTo("HALF_OPEN");
+        SubscriptionSource closed = sourceRepository.findById(source.getId()).orElseThrow();
+        assertThat(closed.getCircuitState()).isEqualTo("CLOSED");
+        assertThat(closed.getConsecutiveFailures()).isZero();
+        assertThat(closed.getRetryAfter()).isNull();
+        assertThat(closed.getLastUpdateStatus()).isEqualTo("SUCCESS");
+    }
+
+    @Test
+    void forcedRefreshGoesThroughAnOpenCircuit() throws Exception {
+        SubscriptionSource source = createSource();
+        jdbcTemplate.update("UPDATE subscription_sources SET consecutive_failures = 10, circuit_state = 'OPEN',"
+                + " retry_after = ? WHERE id = ?", Timestamp.valueOf(LocalDateTime.now().plusDays(3)), source.getId());
+
+        assertThatThrownBy(() -> subscriptionFetchService.updateNodesFromSubscription(source.getId(), true))
+                .hasMessageContaining("HTTP error code: 500");
+
+        // 6 hours doubled six times is past the limit, so the delay stops at backoff-max-hours
+        assertThat(circuitStates).containsExactly("HALF_OPEN");
+        assertFailure(source.getId(), 11, "OPEN", Duration.ofHours(168));
+    }
+
+    private void refreshFailing(Long sourceId) {
+        assertThatThrownBy(() -> subscriptionFetchService.updateNodesFromSubscription(sourceId))
+                .hasMessageContaining("HTTP error code: 500");
+    }
+
+    private void assertFailure(Long sourceId, int failures, String circuitState, Duration delay) {
+        SubscriptionSource source = sourceRepository.findById(sourceId).orElseThrow();
+        assertThat(source.getLastUpdateStatus()).isEqualTo("FAILED");
+        assertThat(source.getConsecutiveFailures()).isEqualTo(failures);
+        assertThat(source.getCircuitState()).isEqualTo(circuitState);
+        assertThat(Duration.between(source.getLastUpdated(), source.getRetryAfter())).isEqualTo(delay);
+    }
+
+    private void retryNow(Long sourceId) {
+        jdbcTemplate.update("UPDATE subscription_sources SET retry_after = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), sourceId);
+    }
+
+    private SubscriptionSource createSource() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/sub", exchange -> {
+            circuitStates.add(jdbcTemplate.queryForObject(
+                    "SELECT circuit_state FROM subscription_sources WHERE url LIKE ?", String.class,
+                    "%:" + server.getAddress().getPort() + "/sub"));
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+            byte[] bytes = A.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("circuit");
+        group = groupRepository.save(group);
+
+        SubscriptionSource source = new SubscriptionSource();
+        source.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/sub");
+        source.setName("src");
+        source.setSubscriptionGroup(group);
+        source.setAutoUpdate(false);
+        return sourceRepository.save(source);
+    }
+}
@@ -0,0 +1,180 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unforced refreshes after a successful import send the stored validators, and a 304 or a body
+ * with the same hash leaves the stored nodes alone; forced refreshes and refreshes after a
+ * failure fetch and reconcile the whole body
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SubscriptionConditionalFetchTest {
+
+    private static final String A = "trojan://secret@a.example.com:443#A";
+    private static final String B = "trojan://secret@b.example.com:443#B";
+    private static final String LAST_MODIFIED = "Wed, 01 Jan 2025 00:00:00 GMT";
+
+    @Autowired
+    private SubscriptionFetchService subscriptionFetchService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private SubscriptionSourceRepository sourceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private HttpServer server;
+
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+    private volatile int status = 200;
+
+    private volatile String etag = "\"v1\"";
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void unchangedUpstreamIsNotReconciled() throws Exception {
+        SubscriptionSource source = createSource();
+
+        // Never refreshed, so the first fetch is unconditional
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(2);
+        assertThat(lastRequest().ifNoneMatch).isNull();
+        String contentHash = sourceRepository.findById(source.getId()).orElseThrow().getContentHash();
+        assertThat(contentHash).isNotNull();
+
+        // A node that disappears from the table only comes back when the body is reconciled
+        deleteNode(source.getId(), B);
+
+        // 304: the validators match and nothing is parsed
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(2);
+        assertThat(lastRequest().ifNoneMatch).isEqualTo("\"v1\"");
+        assertThat(lastRequest().ifModifiedSince).isEqualTo(LAST_MODIFIED);
+        assertThat(configs(source.getId())).containsOnly(A);
+        assertThat(sourceRepository.findById(source.getId()).orElseThrow().getLastUpdateStatus()).isEqualTo("SUCCESS");
+
+        // A new ETag on the same bytes: the body is downloaded, but its hash matches
+        etag = "\"v2\"";
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(2);
+        assertThat(lastRequest().status).isEqualTo(200);
+        assertThat(configs(source.getId())).containsOnly(A);
+        SubscriptionSource skipped = sourceRepository.findById(source.getId()).orElseThrow();
+        assertThat(skipped.getUpstreamEtag()).isEqualTo("\"v2\"");
+        assertThat(skipped.getContentHash()).isEqualTo(contentHash);
+
+        // Forced: no validators, and the reconcile restores the deleted node
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId(), true)).isEqualTo(2);
+        assertThat(lastRequest().ifNoneMatch).isNull();
+        assertThat(lastRequest().ifModifiedSince).isNull();
+        assertThat(configs(source.getId())).containsOnly(A, B);
+        assertThat(requests).hasSize(4);
+    }
+
+    @Test
+    void refreshAfterAFailureIsUnconditional() throws Exception {
+        SubscriptionSource source = createSource();
+        subscriptionFetchService.updateNodesFromSubscription(source.getId());
+        deleteNode(source.getId(), B);
+
+        status = 500;
+        assertThatThrownBy(() -> subscriptionFetchService.updateNodesFromSubscription(source.getId()))
+                .hasMessageContaining("HTTP error code: 500");
+        SubscriptionSource failed = sourceRepository.findById(source.getId()).orElseThrow();
+        assertThat(failed.getLastUpdateStatus()).isEqualTo("FAILED");
+        assertThat(failed.getUpstreamEtag()).isNull();
+        assertThat(failed.getUpstreamLastModified()).isNull();
+        assertThat(failed.getContentHash()).isNull();
+
+        status = 200;
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(2);
+        assertThat(lastRequest().ifNoneMatch).isNull();
+        assertThat(lastRequest().ifModifiedSince).isNull();
+        assertThat(configs(source.getId())).containsOnly(A, B);
+        assertThat(sourceRepository.findById(source.getId()).orElseThrow().getUpstreamEtag()).isEqualTo("\"v1\"");
+    }
+
+    private SubscriptionSource createSource() throws Exception {
+        byte[] bytes = String.join("\n", A, B).getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/sub", exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            int code = status == 200 && etag.equals(ifNoneMatch) ? 304 : status;
+            requests.add(new Request(ifNoneMatch, exchange.getRequestHeaders().getFirst("If-Modified-Since"), code));
+
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            if (code != 200) {
+                exchange.sendResponseHeaders(code, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("conditional");
+        group = groupRepository.save(group);
+
+        SubscriptionSource source = new SubscriptionSource();
+        source.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/sub");
+        source.setName("src");
+        source.setSubscriptionGroup(group);
+        source.setAutoUpdate(false);
+        return sourceRepository.save(source);
+    }
+
+    private Request lastRequest() {
+        return requests.get(requests.size() - 1);
+    }
+
+    private void deleteNode(Long sourceId, String config) {
+        jdbcTemplate.update("DELETE FROM proxy_nodes WHERE subscription_source_id = ? AND config = ?", sourceId, config);
+    }
+
+    private List<String> configs(Long sourceId) {
+        return jdbcTemplate.queryForList("SELECT config FROM proxy_nodes WHERE subscription_source_id = ?",
+                String.class, sourceId);
+    }
+
+    private static final class Request {
+        private final String ifNoneMatch;
+        private final String ifModifiedSince;
+        private final int status;
+
+        private Request(String ifNoneMatch, String ifModifiedSince, int status) {
+            this.ifNoneMatch = ifNoneMatch;
+            this.ifModifiedSince = ifModifiedSince;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.NodeProtocol;
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubscriptionConverterTest {
+
+    private final SubscriptionConverter converter = new SubscriptionConverter();
+
+    @Test
+    void hysteriaWithoutParsedColumnsFallsBackToTheUrl() {
+        String proxy = converter.toClashProxy(legacyNode("hysteria",
+                "hysteria://hy.example.com:8443?protocol=udp&auth=s3cret&peer=sni.example.com&upmbps=50&downmbps=100#hy"));
+
+        assertThat(proxy)
+                .contains("type: hysteria")
+                .contains("server: hy.example.com")
+                .contains("port: 8443")
+                .contains("auth-str: s3cret")
+                .contains("protocol: udp")
+                .contains("sni: sni.example.com");
+    }
+
+    @Test
+    void hysteria2WithoutParsedColumnsFallsBackToTheUrl() {
+        String proxy = converter.toClashProxy(legacyNode("hysteria2",
+                "hysteria2://pa%24%24@hy2.example.com:443/?sni=sni.example.com&insecure=1#hy2"));
+
+        assertThat(proxy)
+                .contains("type: hysteria2")
+                .contains("server: hy2.example.com")
+                .contains("port: 443")
+                .contains("password: pa$$")
+                .contains("sni: sni.example.com")
+                .contains("skip-cert-verify: true");
+    }
+
+    @Test
+    void hysteria2WithoutAPortDefaultsTo443() {
+        String link = "hysteria2://secret@hy2.example.com/?sni=sni.example.com#hy2";
+        assertThat(converter.toClashProxy(legacyNode("hysteria2", link))).contains("port: 443");
+
+        ProxyNode parsed = legacyNode("hysteria2", link);
+        new NodeParser().parseAndPopulateNode(parsed, NodeProtocol.fromUrl(link));
+        assertThat(parsed.getServer()).isEqualTo("hy2.example.com");
+        assertThat(parsed.getPort()).isEqualTo(443);
+        assertThat(converter.toClashProxy(parsed)).contains("port: 443").contains("password: secret");
+    }
+
+    @Test
+    void incompleteHysteriaLinksAreSkipped() {
+        assertThat(converter.toClashProxy(legacyNode("hysteria", "hysteria://hy.example.com?auth=s3cret#no-port"))).isEmpty();
+        assertThat(converter.toClashProxy(legacyNode("hysteria2", "hysteria2://hy2.example.com:443#no-password"))).isEmpty();
+    }
+
+    @Test
+    void parsedColumnsTakePrecedenceOverTheUrl() {
+        ProxyNode node = legacyNode("hysteria2", "hysteria2://old@old.example.com:443#hy2");
+        node.setServer("new.example.com");
+        node.setPort(8443);
+        node.setUuid("new");
+
+        assertThat(converter.toClashProxy(node))
+                .contains("server: new.example.com")
+                .contains("port: 8443")
+                .contains("password: new");
+    }
+
+    private static ProxyNode legacyNode(String type, String config) {
+        ProxyNode node = new ProxyNode();
+        node.setName(type + "-node");
+        node.setType(type);
+        node.setConfig(config);
+        return node;
+    }
+}
@@ -0,0 +1,214 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+/**
+ * A refresh reconciles the stored nodes of a source with the upstream list: unchanged nodes keep
+ * their row untouched, removed ones are deleted, new ones inserted, and only rows whose name lost
+ * the source numbering are rewritten. A refresh that fails halfway keeps what it committed, stores
+ * no validators, and the next refresh of the same body finishes the reconcile.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SubscriptionReconcileTest {
+
+    private static final String A = "trojan://secret@a.example.com:443#A";
+    private static final String B = "trojan://secret@b.example.com:443#B";
+    private static final String C = "trojan://secret@c.example.com:443#C";
+    private static final String D = "trojan://secret@d.example.com:443#D";
+
+    // Marks rows the refresh has not written
+    private static final Timestamp UNTOUCHED = Timestamp.valueOf(LocalDateTime.of(2000, 1, 1, 0, 0));
+
+    @Autowired
+    private SubscriptionFetchService subscriptionFetchService;
+
+    @SpyBean
+    private NodeIngestService nodeIngestService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private SubscriptionSourceRepository sourceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private HttpServer server;
+
+    private volatile String body;
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void onlyAddedRemovedAndRenamedNodesAreWritten() throws Exception {
+        SubscriptionSource source = createSource();
+
+        body = String.join("\n", A, B, C);
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId(), true)).isEqualTo(3);
+        Map<String, Long> firstIds = idsByConfig(source.getId());
+        assertThat(names(source.getId())).containsOnly(
+                Map.entry(A, "src-1-A"), Map.entry(B, "src-2-B"), Map.entry(C, "src-3-C"));
+
+        jdbcTemplate.update("UPDATE proxy_nodes SET updated_at = ? WHERE subscription_source_id = ?",
+                UNTOUCHED, source.getId());
+        // An edited name no longer carries the source numbering, so C has to be renamed
+        jdbcTemplate.update("UPDATE proxy_nodes SET name = 'edited' WHERE id = ?", firstIds.get(C));
+
+        body = String.join("\n", A, C, D);
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(3);
+
+        Map<String, Long> secondIds = idsByConfig(source.getId());
+        assertThat(secondIds).containsOnlyKeys(A, C, D);
+        assertThat(secondIds.get(A)).isEqualTo(firstIds.get(A));
+        assertThat(secondIds.get(C)).isEqualTo(firstIds.get(C));
+        assertThat(secondIds.get(D)).isNotIn(firstIds.values());
+
+        // B's number is free again: the renamed C takes it, the new D comes after
+        assertThat(names(source.getId())).containsOnly(
+                Map.entry(A, "src-1-A"), Map.entry(C, "src-2-C"), Map.entry(D, "src-3-D"));
+        assertThat(updatedAt(secondIds.get(A))).isEqualTo(UNTOUCHED);
+        assertThat(updatedAt(secondIds.get(C))).isNotEqualTo(UNTOUCHED);
+        assertThat(updatedAt(secondIds.get(D))).isNotEqualTo(UNTOUCHED);
+
+        SubscriptionSource refreshed = sourceRepository.findById(source.getId()).orElseThrow();
+        assertThat(refreshed.getLastUpdateStatus()).isEqualTo("SUCCESS");
+        assertThat(refreshed.getNodeCount()).isEqualTo(3);
+    }
+
+    @Test
+    void unchangedListWritesNoNode() throws Exception {
+        SubscriptionSource source = createSource();
+
+        body = String.join("\n", A, B);
+        subscriptionFetchService.updateNodesFromSubscription(source.getId(), true);
+        jdbcTemplate.update("UPDATE proxy_nodes SET updated_at = ? WHERE subscription_source_id = ?",
+                UNTOUCHED, source.getId());
+
+        // Reordered, so the body hash differs and the list is reconciled rather than skipped
+        body = String.join("\n", B, A);
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(2);
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM proxy_nodes WHERE subscription_source_id = ? AND updated_at <> ?",
+                Integer.class, source.getId(), UNTOUCHED)).isZero();
+        assertThat(idsByConfig(source.getId())).containsOnlyKeys(A, B);
+    }
+
+    @Test
+    void refreshFailingAfterTheDeletesIsRetriedInFull() throws Exception {
+        SubscriptionSource source = createSource();
+
+        body = String.join("\n", A, B, C);
+        subscriptionFetchService.updateNodesFromSubscription(source.getId(), true);
+        Map<String, Long> firstIds = idsByConfig(source.getId());
+
+        // The deletes and renames commit, then the insert of the new node fails
+        body = String.join("\n", A, C, D);
+        doThrow(new IllegalStateException("database unavailable"))
+                .when(nodeIngestService).ingest(anyLong(), anyList());
+        assertThatThrownBy(() -> subscriptionFetchService.updateNodesFromSubscription(source.getId()))
+                .hasMessageContaining("database unavailable");
+
+        assertThat(idsByConfig(source.getId())).containsOnlyKeys(A, C);
+        SubscriptionSource failed = sourceRepository.findById(source.getId()).orElseThrow();
+        assertThat(failed.getLastUpdateStatus()).isEqualTo("FAILED");
+        assertThat(failed.getContentHash()).isNull();
+        assertThat(failed.getUpstreamEtag()).isNull();
+
+        // The same body is fetched and reconciled again rather than skipped as unchanged
+        reset(nodeIngestService);
+        assertThat(subscriptionFetchService.updateNodesFromSubscription(source.getId())).isEqualTo(3);
+
+        Map<String, Long> ids = idsByConfig(source.getId());
+        assertThat(ids).containsOnlyKeys(A, C, D);
+        assertThat(ids.get(A)).isEqualTo(firstIds.get(A));
+        assertThat(ids.get(C)).isEqualTo(firstIds.get(C));
+        assertThat(names(source.getId())).containsOnly(
+                Map.entry(A, "src-1-A"), Map.entry(C, "src-3-C"), Map.entry(D, "src-2-D"));
+        SubscriptionSource refreshed = sourceRepository.findById(source.getId()).orElseThrow();
+        assertThat(refreshed.getLastUpdateStatus()).isEqualTo("SUCCESS");
+        assertThat(refreshed.getContentHash()).isNotNull();
+        assertThat(refreshed.getUpstreamEtag()).isEqualTo(etag(body));
+    }
+
+    private SubscriptionSource createSource() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/sub", exchange -> {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", etag(body));
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("reconcile");
+        group = groupRepository.save(group);
+
+        SubscriptionSource source = new SubscriptionSource();
+        source.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/sub");
+        source.setName("src");
+        source.setSubscriptionGroup(group);
+        source.setAutoUpdate(false);
+        return sourceRepository.save(source);
+    }
+
+    private static String etag(String body) {
+        return "\"" + Integer.toHexString(body.hashCode()) + "\"";
+    }
+
+    private Map<String, Long> idsByConfig(Long sourceId) {
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query("SELECT id, config FROM proxy_nodes WHERE subscription_source_id = ?",
+                rs -> {
+                    ids.put(rs.getString("config"), rs.getLong("id"));
+                }, sourceId);
+        return ids;
+    }
+
+    private Map<String, String> names(Long sourceId) {
+        Map<String, String> names = new HashMap<>();
+        jdbcTemplate.query("SELECT name, config FROM proxy_nodes WHERE subscription_source_id = ?",
+                rs -> {
+                    names.put(rs.getString("config"), rs.getString("name"));
+                }, sourceId);
+        return names;
+    }
+
+    private Timestamp updatedAt(Long id) {
+        return jdbcTemplate.queryForObject("SELECT updated_at FROM proxy_nodes WHERE id = ?", Timestamp.class, id);
+    }
+}
@@ -0,0 +1,177 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.model.SubscriptionSource;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import com.submanager.subscriptionmanager.repository.SubscriptionSourceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Refreshes against local upstreams with injected latency: sources on different hosts are fetched
+ * concurrently, a body that stalls is cut off by the fetch deadline, and consecutive fetches from
+ * one upstream share a pooled connection
+ */
+@SpringBootTest(properties = "app.subscription.refresh-timeout-seconds=3")
+@ActiveProfiles("test")
+class SubscriptionRefreshTest {
+
+    @Autowired
+    private SubscriptionFetchService subscriptionFetchService;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private SubscriptionSourceRepository sourceRepository;
+
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopServers() {
+        servers.forEach(server -> server.stop(0));
+        handlers.shutdownNow();
+    }
+
+    @Test
+    void wallTimeIsBoundedByTheSlowestSource() throws Exception {
+        long[] delaysMs = {500, 500, 500, 500, 500, 1500};
+        SubscriptionGroup group = createGroup("concurrent");
+
+        List<SubscriptionSource> sources = new ArrayList<>();
+        for (int i = 0; i < delaysMs.length; i++) {
+            // One upstream host per source, so per-host lanes do not serialize them
+            String host = "127.0.0." + (i + 1);
+            long delayMs = delaysMs[i];
+            int port = startServer(host, exchange -> {
+                sleep(delayMs);
+                byte[] body = ("trojan://secret@node.example.com:" + (1000 + delayMs) + "#node\n").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            sources.add(createSource(group, "http://" + host + ":" + port + "/sub"));
+        }
+
+        long startedAt = System.nanoTime();
+        subscriptionFetchService.refreshSources(sources).get(30, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        // Sequential fetches would take the sum of the delays, 4s
+        assertThat(elapsedMs).isBetween(1500L, 2700L);
+        for (SubscriptionSource source : sources) {
+            SubscriptionSource refreshed = sourceRepository.findById(source.getId()).orElseThrow();
+            assertThat(refreshed.getLastUpdateStatus()).isEqualTo("SUCCESS");
+            assertThat(refreshed.getNodeCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void stalledBodyIsCutOffAtTheFetchDeadline() throws Exception {
+        SubscriptionGroup group = createGroup("stalled");
+        int port = startServer("127.0.0.1", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write("trojan://secret@node.example.com:443#first\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            sleep(30_000);
+            out.close();
+        });
+        SubscriptionSource source = createSource(group, "http://127.0.0.1:" + port + "/sub");
+
+        long startedAt = System.nanoTime();
+        subscriptionFetchService.refreshSources(List.of(source)).get(30, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertThat(elapsedMs).isBetween(3000L, 6000L);
+        SubscriptionSource refreshed = sourceRepository.findById(source.getId()).orElseThrow();
+        assertThat(refreshed.getLastUpdateStatus()).isEqualTo("FAILED");
+        assertThat(refreshed.getLastErrorMessage()).contains("deadline");
+    }
+
+    @Test
+    void connectionsAreReusedAcrossFetches() throws Exception {
+        // Each accepted connection has its own client port
+        Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+        int port = startServer("127.0.0.1", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "trojan://secret@node.example.com:443#node\n".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        SubscriptionSource source = new SubscriptionSource();
+        source.setUrl("http://127.0.0.1:" + port + "/sub");
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(subscriptionFetchService.fetchSubscriptionContent(source, null, null).getNodeUrls()).hasSize(1);
+        }
+
+        assertThat(clientPorts).hasSize(1);
+    }
+
+    private int startServer(String host, Handler handler) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, 0), 0);
+        server.createContext("/sub", exchange -> {
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(handlers);
+        server.start();
+        servers.add(server);
+        return server.getAddress().getPort();
+    }
+
+    private SubscriptionGroup createGroup(String name) {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName(name);
+        return groupRepository.save(group);
+    }
+
+    private SubscriptionSource createSource(SubscriptionGroup group, String url) {
+        SubscriptionSource source = new SubscriptionSource();
+        source.setUrl(url);
+        source.setName("src");
+        source.setSubscriptionGroup(group);
+        source.setAutoUpdate(false);
+        return sourceRepository.save(source);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+}
@@ -0,0 +1,180 @@
+package com.submanager.subscriptionmanager.service;
+
+import com.submanager.subscriptionmanager.model.NodeProtocol;
+import com.submanager.subscriptionmanager.model.ProxyNode;
+import com.submanager.subscriptionmanager.model.SubscriptionGroup;
+import com.submanager.subscriptionmanager.repository.SubscriptionGroupRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes on the wire and CPU per request of a 10,000-node group, with and without gzip, for a
+ * rendition served from the cache, one rendered after an eviction, and a streamed group.
+ * Run with mvn test -Pbenchmark; the numbers go to standard output.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+class SubscriptionServingBenchmarkTest {
+
+    private static final int NODES = 10_000;
+    private static final int WARM_REQUESTS = 2_000;
+    private static final int COLD_REQUESTS = 10;
+    private static final int STREAMED_REQUESTS = 10;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    @Autowired
+    private SubscriptionGroupRepository groupRepository;
+
+    @Autowired
+    private NodeIngestService nodeIngestService;
+
+    @Autowired
+    private NodeParser nodeParser;
+
+    @Test
+    void servingTenThousandNodes() throws Exception {
+        SubscriptionGroup group = new SubscriptionGroup();
+        group.setName("benchmark");
+        group = groupRepository.save(group);
+        assertThat(nodeIngestService.ingest(group.getId(), nodes(NODES)).getSucceeded()).isEqualTo(NODES);
+        String token = group.getToken();
+        Long groupId = group.getId();
+
+        // Clash output is rendered once per version and then served from the cache
+        SubscriptionCache.Rendition clash = serve(token, "clash");
+        int identityBytes = clash.getBytes().length;
+        int gzipBytes = clash.getGzipBytes().length;
+        for (int i = 0; i < WARM_REQUESTS; i++) {
+            serve(token, "clash").getGzipBytes();
+        }
+        long warmNanos = cpuNanos(WARM_REQUESTS, () -> serve(token, "clash").getGzipBytes());
+        long coldNanos = cpuNanos(COLD_REQUESTS, () -> {
+            subscriptionCache.evictGroup(groupId);
+            serve(token, "clash").getGzipBytes();
+        });
+
+        // Past the streaming threshold, v2ray output is written straight from the database
+        SubscriptionCache.Entry entry = subscriptionService.resolveSubscription(token);
+        assertThat(subscriptionService.isStreamed(entry, "v2ray")).isTrue();
+        long streamedIdentityBytes = stream(groupId, false);
+        long streamedGzipBytes = stream(groupId, true);
+        long streamedIdentityNanos = cpuNanos(STREAMED_REQUESTS, () -> stream(groupId, false));
+        long streamedGzipNanos = cpuNanos(STREAMED_REQUESTS, () -> stream(groupId, true));
+
+        System.out.printf("%n%,d nodes%n", NODES);
+        System.out.printf("clash:  %,11d bytes, gzip %,9d bytes (%.1f%% saved)%n",
+                identityBytes, gzipBytes, saved(identityBytes, gzipBytes));
+        System.out.printf("clash:  cached %,9.1f us CPU/request, after eviction %,9.1f us CPU/request%n",
+                warmNanos / 1000.0, coldNanos / 1000.0);
+        System.out.printf("v2ray:  %,11d bytes, gzip %,9d bytes (%.1f%% saved), streamed%n",
+                streamedIdentityBytes, streamedGzipBytes, saved(streamedIdentityBytes, streamedGzipBytes));
+        System.out.printf("v2ray:  %,9.1f us CPU/request, gzip %,9.1f us CPU/request%n",
+                streamedIdentityNanos / 1000.0, streamedGzipNanos / 1000.0);
+
+        assertThat(gzipBytes).isLessThan(identityBytes / 3);
+        assertThat(streamedGzipBytes).isLessThan(streamedIdentityBytes / 2);
+        // A cached response costs a small fraction of rendering and compressing the group
+        assertThat(warmNanos).isLessThan(coldNanos / 20);
+    }
+
+    private SubscriptionCache.Rendition serve(String token, String format) {
+        return subscriptionService.getRendition(subscriptionService.resolveSubscription(token), format);
+    }
+
+    private long stream(Long groupId, boolean gzip) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        if (gzip) {
+            GZIPOutputStream out = new GZIPOutputStream(counter, 8192);
+            subscriptionService.streamSubscription(groupId, "v2ray", out);
+            out.finish();
+        } else {
+            subscriptionService.streamSubscription(groupId, "v2ray", counter);
+        }
+        return counter.count;
+    }
+
+    /**
+     * Average CPU time of the calling thread per run of the request
+     */
+    private static long cpuNanos(int runs, Request request) throws Exception {
+        long startedAt = THREADS.getCurrentThreadCpuTime();
+        for (int i = 0; i < runs; i++) {
+            request.run();
+        }
+        return (THREADS.getCurrentThreadCpuTime() - startedAt) / runs;
+    }
+
+    private static double saved(long identity, long gzip) {
+        return 100.0 - gzip * 100.0 / identity;
+    }
+
+    private List<ProxyNode> nodes(int count) {
+        List<ProxyNode> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String url = switch (i % 4) {
+                case 0 -> "trojan://secret-" + i + "@hk-" + i + ".example.com:443?sni=hk.example.com"
+                        + "#%F0%9F%87%AD%F0%9F%87%B0%20HK%20" + i + "%20%7C%20IPLC";
+                case 1 -> "vless://b831381d-6324-4d53-ad4f-8cda48b30811@jp-" + i + ".example.com:443"
+                        + "?security=reality&sni=www.microsoft.com&pbk=jNXHt1yRo0vDuchQlIP6Z0ZvjT3KtzVI-T4E7RoLJS0"
+                        + "&sid=0123abcd&flow=xtls-rprx-vision#JP%20" + i;
+                case 2 -> "ss://" + Base64.getEncoder().encodeToString(
+                        ("chacha20-ietf-poly1305:pass-" + i).getBytes(StandardCharsets.UTF_8))
+                        + "@sg-" + i + ".example.com:8388#SG%20" + i;
+                default -> "vmess://" + Base64.getEncoder().encodeToString(("{\"v\":\"2\",\"ps\":\"US " + i
+                        + "\",\"add\":\"us-" + i + ".example.com\",\"port\":\"443\","
+                        + "\"id\":\"b831381d-6324-4d53-ad4f-8cda48b30811\",\"aid\":\"0\",\"net\":\"ws\","
+                        + "\"host\":\"cdn.example.com\",\"path\":\"/ray\",\"tls\":\"tls\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+            };
+            NodeProtocol protocol = NodeProtocol.fromUrl(url);
+            ProxyNode node = new ProxyNode();
+            node.setConfig(url);
+            node.setType(protocol.getType());
+            nodeParser.parseAndPopulateNode(node, protocol);
+            node.setOrder(i);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private interface Request {
+        void run() throws Exception;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
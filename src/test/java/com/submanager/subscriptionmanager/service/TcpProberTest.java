@@ -0,0 +1,143 @@
+package com.submanager.subscriptionmanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A batch of probes against loopback listeners and black-holed ports takes about one timeout,
+ * however many of the targets never answer.
+ *
+ * The batch tests are benchmarks, run with mvn test -Pbenchmark. They need Linux: the targets
+ * listen on thousands of 127.x.y.z addresses, which only Linux routes to loopback without
+ * configuring aliases, and a port is black-holed by overflowing its accept queue, after which
+ * Linux drops further SYNs instead of refusing them. They also measure wall-clock time.
+ */
+class TcpProberTest {
+
+    private static final int LIVE = 2000;
+    private static final int BLACK_HOLED = 1000;
+    private static final long TIMEOUT_MS = 1000;
+    // Slack over the expected duration, for setting up and polling thousands of connects
+    private static final long SLACK_MS = 1500;
+
+    private final List<Closeable> resources = new ArrayList<>();
+
+    @AfterEach
+    void closeSockets() {
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                // Best effort
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    @EnabledOnOs(OS.LINUX)
+    void batchWithDeadTargetsTakesAboutOneTimeout() throws Exception {
+        List<InetSocketAddress> targets = new ArrayList<>();
+        for (int i = 0; i < LIVE; i++) {
+            targets.add(listen(loopback(1, i), 128));
+        }
+        for (int i = 0; i < BLACK_HOLED; i++) {
+            targets.add(blackHole(loopback(2, i)));
+        }
+        // Let the connects that fill the accept queues complete
+        Thread.sleep(500);
+
+        long startedAt = System.nanoTime();
+        List<TcpProber.Result> results = new TcpProber(1024, 8, TIMEOUT_MS).probe(targets);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        System.out.printf("%n%,d live and %,d black-holed targets probed in %,d ms%n", LIVE, BLACK_HOLED, elapsedMs);
+
+        // Probed one after another, the black-holed ports alone would take 1000 timeouts
+        assertThat(elapsedMs).isBetween(TIMEOUT_MS, TIMEOUT_MS + SLACK_MS);
+        for (int i = 0; i < LIVE; i++) {
+            assertThat(results.get(i).isReachable()).isTrue();
+        }
+        for (int i = LIVE; i < LIVE + BLACK_HOLED; i++) {
+            assertThat(results.get(i).isReachable()).isFalse();
+            assertThat(results.get(i).getError()).isEqualTo("Connect timed out");
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    @EnabledOnOs(OS.LINUX)
+    void inFlightCeilingSplitsTheBatchIntoTimeoutRounds() throws Exception {
+        List<InetSocketAddress> targets = new ArrayList<>();
+        for (int i = 0; i < BLACK_HOLED; i++) {
+            targets.add(blackHole(loopback(3, i)));
+        }
+        Thread.sleep(500);
+
+        long startedAt = System.nanoTime();
+        new TcpProber(BLACK_HOLED / 2, 8, TIMEOUT_MS).probe(targets);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        System.out.printf("%n%,d black-holed targets, %,d in flight, probed in %,d ms%n",
+                BLACK_HOLED, BLACK_HOLED / 2, elapsedMs);
+
+        assertThat(elapsedMs).isBetween(2 * TIMEOUT_MS, 2 * TIMEOUT_MS + SLACK_MS);
+    }
+
+    @Test
+    void closedPortIsRefusedWithoutWaitingForTheTimeout() throws Exception {
+        InetSocketAddress closed;
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            closed = (InetSocketAddress) server.getLocalAddress();
+        }
+
+        long startedAt = System.nanoTime();
+        List<TcpProber.Result> results = new TcpProber(1024, 8, TIMEOUT_MS).probe(List.of(closed));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertThat(results.get(0).isReachable()).isFalse();
+        assertThat(results.get(0).getError()).containsIgnoringCase("refused");
+        assertThat(elapsedMs).isLessThan(TIMEOUT_MS / 2);
+    }
+
+    /**
+     * The i-th loopback address of a block, 127.block.x.y, on an ephemeral port
+     */
+    private static InetSocketAddress loopback(int block, int i) {
+        return new InetSocketAddress("127." + block + "." + (i / 250) + "." + (i % 250 + 1), 0);
+    }
+
+    private InetSocketAddress listen(InetSocketAddress address, int backlog) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        resources.add(server);
+        server.bind(address, backlog);
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * A listener that never accepts, with its accept queue filled so further SYNs are dropped
+     */
+    private InetSocketAddress blackHole(InetSocketAddress address) throws IOException {
+        InetSocketAddress bound = listen(address, 1);
+        for (int i = 0; i < 4; i++) {
+            SocketChannel filler = SocketChannel.open();
+            resources.add(filler);
+            filler.configureBlocking(false);
+            filler.connect(bound);
+        }
+        return bound;
+    }
+}